@@ -32,6 +32,7 @@ import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -48,6 +49,8 @@ import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -67,10 +70,12 @@ import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
 import javax.swing.undo.UndoableEdit;
 
+import org.ragna.core.ArticleRankIndex.RankedTextPosition;
 import org.ragna.core.PadDocument.DocumentType;
 import org.ragna.core.TextSearcher.DocumentTextPosition;
 import org.ragna.front.AboutDialog;
 import org.ragna.front.ArticleEditor;
+import org.ragna.front.ArticleJumpPanel;
 import org.ragna.front.DisplayManager;
 import org.ragna.front.DisplayManager.DisplayModus;
 import org.ragna.front.DisplayManager.DocumentDisplay;
@@ -79,7 +84,10 @@ import org.ragna.front.DisplayManager.FocusableView;
 import org.ragna.front.DocumentEncryptionDialog;
 import org.ragna.front.DocumentEncryptionDialog.TerminationType;
 import org.ragna.front.DocumentToolboxDialog;
+import org.ragna.front.FileLocationListPanel;
+import org.ragna.front.FileSearchPanel;
 import org.ragna.front.GUIService;
+import org.ragna.front.MergeConflictPanel;
 import org.ragna.front.PreferencesDialog;
 import org.ragna.front.PrintSelectorDialog;
 import org.ragna.front.ResolveMirrorDialog;
@@ -91,12 +99,17 @@ import org.ragna.front.util.MessageDialog;
 import org.ragna.front.util.MessageDialog.MessageType;
 import org.ragna.front.util.ResourceLoader;
 import org.ragna.front.util.SetStackMenu;
+import org.ragna.io.DocumentFileSearcher;
+import org.ragna.io.DocumentFileSearcher.FileTextPosition;
 import org.ragna.io.IO_Manager;
 import org.ragna.io.IO_Manager.StreamDirection;
 import org.ragna.io.IO_Manager.SystemFileType;
+import org.ragna.io.MirrorJournal;
+import org.ragna.io.SessionSnapshot;
 import org.ragna.util.ActionManager;
 import org.ragna.util.PersistentOptions;
 
+import kse.com.fhash.main.Functions;
 import kse.utilclass.gui.ColorChooserDialog;
 import kse.utilclass.gui.FontChooser;
 import kse.utilclass.misc.Log;
@@ -128,6 +141,7 @@ public class ActionHandler extends ActionManager {
 //   private Map<UUID, MirrorFileAdapter> mirrorAdapterMap = new Hashtable<>();
    private MirrorHandler mirrorHandler = new MirrorHandler();
    private PadArticle[] articleStack;
+   private volatile DocumentFileSearcher runningFileSearch;
 
    private ActionHandler () {
       super();
@@ -190,6 +204,8 @@ public class ActionHandler extends ActionManager {
          addAction(ActionNames.ACTION_PRINT);
          addAction(ActionNames.ACTION_SORT);
          addAction(ActionNames.ACTION_SEARCH);
+         addAction(ActionNames.ACTION_GOTO_ARTICLE);
+         addAction(ActionNames.ACTION_SEARCH_FILES);
          addAction(ActionNames.ACTION_SEARCH_WEB);
          addAction(ActionNames.ACTION_TRANSLATE_WEB);
          addAction(ActionNames.ACTION_LINEWRAP_HARD);
@@ -288,7 +304,8 @@ public class ActionHandler extends ActionManager {
    }
    
    /** Closes all globally registered documents. Also stores a session-list
-    * to global options.
+    * to global options and, if opted, a session snapshot of the closed
+    * documents.
     * Function may get interrupted by user interaction with consequence that
     * the document registry is not empty after completion of this method.
     * 
@@ -297,6 +314,7 @@ public class ActionHandler extends ActionManager {
    public boolean collectiveDocumentClose () {
 	  DocumentRegistry registry = Global.getDocumentRegistry();
       SetStackMenu sessionList = new SetStackMenu();
+      List<PadDocument> closedList = new ArrayList<>();
       Global.getMirrorFileManager().pause();
       
       try {
@@ -310,6 +328,7 @@ public class ActionHandler extends ActionManager {
         	  if (!closeDocument(document, true, false)) {
         		  return false;
         	  }
+        	  closedList.add(document);
           }
 
           // if file is new (no path) then try to save it (define path)
@@ -345,11 +364,14 @@ public class ActionHandler extends ActionManager {
              // or a dialog thread was interrupted
              return false;
           }
+          closedList.add(document);
       }
       } finally {
           Global.getMirrorFileManager().resume();
       }
 
+      writeSessionSnapshot(closedList);
+
       if (!sessionList.isEmpty()) {
 	      // put the session list to program options
 	      String content = sessionList.getStringContent(';');
@@ -362,6 +384,36 @@ public class ActionHandler extends ActionManager {
       return true;
    }
    
+   /** Writes the session snapshot file for the given closed documents
+    * if the option "sessionSnapshot" is set. Documents which are modified
+    * (closed unsaved), have no external file or are mirror or backup
+    * copies are excluded. Otherwise an existing snapshot file is deleted.
+    * 
+    * @param documents {@code List<PadDocument>} closed documents
+    */
+   private void writeSessionSnapshot (List<PadDocument> documents) {
+	  File file = new File(Global.getApplicationDirectory(), SessionSnapshot.FILE_NAME);
+	  List<PadDocument> list = new ArrayList<>();
+	  if (Global.getOptions().isOptionSet("sessionSnapshot")) {
+		  for (PadDocument document : documents) {
+			  String filepath = document.getExternalPath();
+			  if (filepath != null && !document.isModified() && !Global.isMirrorFilepath(filepath) 
+				  && !document.isBackupCopy()) {
+				  list.add(document);
+			  }
+		  }
+	  }
+	  
+	  try {
+		  if (list.isEmpty() || SessionSnapshot.write(file, list) == 0) {
+			  file.delete();
+		  }
+	  } catch (IOException e) {
+		  Log.log(3, "(ActionHandler.writeSessionSnapshot) unable to write session snapshot: " + e);
+		  file.delete();
+	  }
+   }
+   
    /** This task controls all registered (open in display) documents for
     * any mirror files and handles cases via GUI interaction.
     */
@@ -418,6 +470,98 @@ public class ActionHandler extends ActionManager {
       }
    }
    
+   /** This task restores the documents of a session from their files. The
+    * files are first probed for encryption and the passphrases of encrypted
+    * files are requested from the user, where each entered passphrase is 
+    * tried on all pending files. Then all files are restored from the
+    * session snapshot, or decrypted and parsed if the snapshot is not valid
+    * for them, concurrently and the documents are registered in session order. 
+    * Finally the mirrors of all registered documents are controlled.
+    */
+   private class SessionRestoreTask implements Runnable, SessionLoader.Client {
+      private List<String> paths;
+
+      /** Creates a new restore task for the given document files. 
+       * 
+       * @param paths {@code List<String>} document files to open
+       */
+      SessionRestoreTask (List<String> paths) {
+    	 Objects.requireNonNull(paths);
+         this.paths = paths;
+      }
+
+      @Override
+      public void run () {
+    	 long start = System.currentTimeMillis();
+    	 SessionLoader loader = new SessionLoader(IO_Manager.get(), this);
+    	 
+    	 // probe the session files and request passphrases for encrypted files
+    	 loader.probe(paths);
+    	 loader.unlock();
+    	 
+    	 // restore from snapshot or decrypt and parse all files concurrently
+    	 SessionSnapshot snapshot = Global.getOptions().isOptionSet("sessionSnapshot") ? 
+    			 SessionSnapshot.open(new File(Global.getApplicationDirectory(), SessionSnapshot.FILE_NAME)) : null;
+    	 List<File> files = loader.getFiles();
+    	 List<Future<PadDocument>> results = loader.open(snapshot);
+    	 
+    	 // register the documents in session order
+    	 try {
+	    	 for (int i = 0; i < files.size(); i++) {
+	    		 String filepath = files.get(i).getAbsolutePath();
+	    		 try {
+	    			 PadDocument document = results.get(i).get();
+	    			 if (document != null) {
+	    				 registerAndDisplayDocument(document, filepath, false);
+	    			 }
+	    		 } catch (ExecutionException e) {
+	    	         GUIService.infoMessage("dlg.title.fail.loading.file", "msg.failure.open.document", e.getCause());
+	    	         Global.getRecentFilesStack().remove(filepath);
+	    		 }
+	    	 }
+    	 } catch (InterruptedException e) {
+    		 for (Future<PadDocument> f : results) {
+    			 f.cancel(true);
+    		 }
+    		 return;
+    	 }
+    	 Log.log(3, "(ActionHandler.SessionRestoreTask) restored " + files.size() + " session files, " 
+    			 + (System.currentTimeMillis() - start) + " ms");
+    	 
+    	 // control the mirrors of all documents
+    	 new ControlDocumentMirrorsTask().run();
+      }
+
+      @Override
+      public boolean isPermitted (File file) {
+    	 return GUIService.checkFilepathPermitted(file);
+      }
+
+      @Override
+      public byte[] findKey (File file) throws IOException {
+    	 return findRegisteredKey(file);
+      }
+
+      @Override
+      public char[] requestPassphrase (File first, int count) {
+    	 String hstr = displayText(count > 1 ? "msg.input.password.session" : "msg.input.password");
+    	 hstr = Util.substituteText(hstr, "$name", first.getAbsolutePath());
+    	 hstr = Util.substituteText(hstr, "$count", String.valueOf(count));
+    	 return GUIService.userPasswordInput(null, "dlg.password.access", hstr, null);
+      }
+
+      @Override
+      public void passphraseRejected () {
+    	 GUIService.failureMessage("msg.failure.input.passphrase", null);
+      }
+
+      @Override
+      public void fileFailed (File file, Throwable e) {
+    	 GUIService.infoMessage("dlg.title.fail.loading.file", 
+    			 displayText("msg.failure.open.document") + "<br>" + file.getAbsolutePath(), e);
+      }
+   }
+   
    /** Task to save a single PadDocument to its serialisation file.
     * No confirmation message is given. 
     */
@@ -435,6 +579,71 @@ public class ActionHandler extends ActionManager {
        }
    }
    
+   /** Task to search the document files of a directory tree and to display
+    * the result list. 
+    */
+   private class FileSearchTask implements Runnable {
+	   private DocumentFileSearcher searcher;
+	   private File directory;
+	   private String searchVal;
+	   
+	   FileSearchTask (DocumentFileSearcher searcher, File dir, String searchVal) {
+		   Objects.requireNonNull(searcher);
+		   Objects.requireNonNull(dir);
+		   this.searcher = searcher;
+		   this.directory = dir;
+		   this.searchVal = searchVal;
+	   }
+	   
+	   @Override
+	   public void run () {
+		   Global.getStatusBar().putMessage(displayText("msg.filesearch.running") + " " + directory);
+		   int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		   List<FileTextPosition> posList;
+		   runningFileSearch = searcher;
+		   try {
+			   posList = searcher.search(directory, threads);
+		   } catch (InterruptedException e) {
+			   return;
+		   } finally {
+			   runningFileSearch = null;
+			   Global.getStatusBar().clearMessage();
+		   }
+		   if (searcher.isCancelled()) {
+			   Log.log(6, "(ActionHandler.FileSearchTask) file search cancelled: " + directory);
+			   return;
+		   }
+		   int unsearched = searcher.getLockedFiles().size() + searcher.getFailedFiles().size();
+		   
+		   GUIService.executeOnEDT(new Runnable() {
+			   @Override
+			   public void run () {
+				   if (posList.isEmpty()) {
+					   GUIService.infoMessage(null, Global.res.getDisplay("msg.findtext-nothing"));
+					   return;
+				   }
+				   
+				   FileLocationListPanel listPanel = new FileLocationListPanel(posList, searchVal, 
+						   directory, unsearched);
+				   listPanel.addListSelectionListener(new ListSelectionListener() {
+					   @Override
+					   public void valueChanged (ListSelectionEvent e) {
+						   FileTextPosition pos = listPanel.getSelectedItem();
+						   if (pos != null && !e.getValueIsAdjusting()) {
+							   ((ActionExecutor)executor).showFileTextPosition(pos, searchVal.length());
+						   }
+					   }
+				   });
+				   String title = Global.res.getDisplay("dlg.find-locations");
+				   MessageDialog dlg = new MessageDialog(null, title, listPanel, 
+						   MessageType.noIcon, DialogButtonBar.CLOSE_BUTTON, false);
+				   dlg.setResizable(true);
+				   dlg.show();
+			   }
+		   });
+	   }
+   }
+   
    /** Opens the documents of the most recent program session if they are not
     * yet open. This method schedules worker-tasks and returns immediately.
     */
@@ -445,8 +654,19 @@ public class ActionHandler extends ActionManager {
       sessionList.loadStringContent(content, ';');
       int size = sessionList.size();
       
-      // create and start open tasks for each session file (worker threads) 
+      // restore all session files in a single task which controls mirrors at the end 
       Log.debug(10, "(ActionHandler) opening session content: ".concat(content));
+      if ((size > 1 && Global.getOptions().isOptionSet("parallelSessionOpen"))
+    	  || (size > 0 && Global.getOptions().isOptionSet("sessionSnapshot"))) {
+    	  List<String> paths = new ArrayList<>();
+    	  for (Object obj : sessionList.getList()) {
+    		  paths.add((String)obj);
+    	  }
+    	  scheduleWorkerTask(new SessionRestoreTask(paths), "restore session documents");
+    	  return;
+      }
+      
+      // create and start open tasks for each session file (worker threads) 
       for (Object obj : sessionList.getList()) {
          String path = (String)obj;
          Runnable task = new OpenDocumentFromPathTask(path, size == 1);
@@ -743,25 +963,36 @@ public class ActionHandler extends ActionManager {
       File file = new File(filepath);
       PadDocument document = null;
 
-      DocumentRegistry registry = Global.getDocumentRegistry();
-      for (PadDocument doc : registry) {
-    	  byte[] k = doc.getPassphrase();
+      try {
+    	  byte[] k = findRegisteredKey(file);
     	  if (k != null) {
-    		  try {
-	    		  if (IO_Manager.get().isValidSecretKey(file, k)) {
-	    			  document = openDocumentFromPath(filepath, k, controlMirrors);
-	    			  return document;
-	    		  }
-    	      } catch (IOException e) {
-    	          GUIService.infoMessage("dlg.title.fail.loading.file", "msg.failure.open.document", e);
-    	      }
+    		  return openDocumentFromPath(filepath, k, controlMirrors);
     	  }
+      } catch (IOException e) {
+          GUIService.infoMessage("dlg.title.fail.loading.file", "msg.failure.open.document", e);
       }
 
 	  document = openDocumentFromPath(filepath, null, controlMirrors);
       return document;
    }   
    
+   /** Returns the passphrase of a registered document which is valid to
+    * decrypt the given file.
+    * 
+    * @param file File encrypted document file
+    * @return byte[] passphrase or null if not found
+    * @throws IOException
+    */
+   private static byte[] findRegisteredKey (File file) throws IOException {
+      for (PadDocument doc : Global.getDocumentRegistry()) {
+    	  byte[] k = doc.getPassphrase();
+    	  if (k != null && IO_Manager.get().isValidSecretKey(file, k)) {
+    		  return k;
+    	  }
+      }
+      return null;
+   }
+   
    /** Registers the given document at the document registry and thus brings it 
     * to display. Optionally the mirrors for the document are controlled.
     * If the document is already registered, a GUI message is shown and mirrors
@@ -820,6 +1051,7 @@ public class ActionHandler extends ActionManager {
    private void removeDocumentFromMirrorSystem (String identifier) {
       if (identifier != null) {
           Global.getMirrorFileManager().removeMirrorable(identifier);
+          MirrorJournal.remove(identifier);
       }
    }
    
@@ -831,6 +1063,7 @@ public class ActionHandler extends ActionManager {
 	   String name = mirrorAdapterIdentifier(document);
        Global.getMirrorFileManager().setMirrorableSaved(name);
        Global.getMirrorFileManager().removeCurrentMirror(name);
+       MirrorJournal.reset(name);
    }
 
    /** Removes all history mirrors of the given document in the mirror system.
@@ -839,6 +1072,7 @@ public class ActionHandler extends ActionManager {
     */
    public void removeHistoryMirrorsOfDocument (PadDocument document) {
 	   Global.getMirrorFileManager().removeHistoryMirrors(mirrorAdapterIdentifier(document));
+	   MirrorJournal.removeStaleJournals(mirrorAdapterIdentifier(document));
    }
 
    /** Checks whether history mirrors are available for the given document and
@@ -862,13 +1096,25 @@ public class ActionHandler extends ActionManager {
        // get the latest history mirror file
        File topMirror = mirrors.get(0);
        
+       // compare the mirror with the document (including a journal replay)
+       PadDocument mirrorDoc = null;
+       DocumentDiff diff = null;
+       try {
+    	   mirrorDoc = ioMan.openDocument(topMirror, document.getEncoding(), document.getPassphrase());
+    	   if (mirrorDoc != null) {
+    		   diff = DocumentDiff.compare(document, mirrorDoc);
+    	   }
+       } catch (Exception e) {
+    	   Log.log(5, "(ActionHandler.controlDocumentMirrors) unable to compare mirror: " + e);
+       }
+       
        // call mirror resolve dialog and receive answers
        ResolveMirrorDialog dialog;
        int option = 0;
        File origFile = null;
        try {
            Global.getDocumentRegistry().setSelectedDocument(document.getUUID());
-    	   dialog = new ResolveMirrorDialog(document, topMirror);
+    	   dialog = new ResolveMirrorDialog(document, topMirror, diff);
     	   dialog.show();
            option = dialog.getUserOption();
            origFile = dialog.getOriginalFile();
@@ -881,9 +1127,38 @@ public class ActionHandler extends ActionManager {
        // action to take upon answer
        switch (option) {
        case ResolveMirrorDialog.REPLACE_ACTION:
+       case ResolveMirrorDialog.MERGE_ACTION:
            try {
+              if (option == ResolveMirrorDialog.MERGE_ACTION) {
+            	  // replace the document file with the merge of document and mirror
+            	  if (mirrorDoc == null) break;
+            	  PadDocument merged;
+            	  try {
+            		  merged = mergeWithMirror(document, mirrorDoc, origFile, topMirror);
+            	  } catch (IllegalArgumentException e) {
+            		  // merge not constructible: report and offer the mirror choices again
+            		  Log.log(1, "(ActionHandler.controlDocumentMirrors) unable to merge mirror: " + e);
+            		  GUIService.failureMessage(title, displayText("msg.failure.mirror.merge"), e);
+            		  controlDocumentMirrors(document);
+            		  return;
+            	  }
+            	  if (merged == null) {
+            		  // merge refused or cancelled: offer the mirror choices again
+            		  controlDocumentMirrors(document);
+            		  return;
+            	  }
+            	  ioMan.saveDocument(merged, origFile, merged.getEncoding());
+
               // replace the document file with its latest history mirror file
-          	  ioMan.copyFile(topMirror, origFile);
+              // (including the replay of its journal if available)
+              } else if (MirrorJournal.hasStaleJournal(identifier)) {
+            	  PadDocument mdoc = mirrorDoc != null ? mirrorDoc 
+            			  : ioMan.openDocument(topMirror, document.getEncoding(), document.getPassphrase());
+            	  if (mdoc == null) break;
+            	  ioMan.saveDocument(mdoc, origFile, mdoc.getEncoding());
+              } else {
+            	  ioMan.copyFile(topMirror, origFile);
+              }
 
               // de-register document
               Global.getDocumentRegistry().remove(document);
@@ -908,6 +1183,88 @@ public class ActionHandler extends ActionManager {
        }
    } // controlDocumentMirrors
    
+   /** Merges the changes made in the given document and in its mirror since
+    * their common base version and returns the merged document. If there are
+    * conflicting changes, the user decides for each conflict whether document
+    * or mirror prevails. The merge is refused if there is no history version
+    * of the document to serve as common base.
+    * 
+    * @param document {@code PadDocument} the reference document
+    * @param mirrorDoc {@code PadDocument} the mirror document
+    * @param origFile File the document's storage file
+    * @param mirror File the mirror file
+    * @return {@code PadDocument} merged document or null if the merge was
+    *         refused or cancelled by the user
+    * @throws IOException
+    * @throws InterruptedException
+    * @throws IllegalArgumentException if the merged article list cannot
+    *         form a document
+    */
+   private PadDocument mergeWithMirror (PadDocument document, PadDocument mirrorDoc, File origFile, File mirror) 
+		   throws IOException, InterruptedException {
+	   PadDocument base = findMergeBase(document, origFile, mirror);
+	   if (base == null) {
+		   // without a common base every deletion would appear as a resurrection
+		   Log.log(3, "(ActionHandler.mergeWithMirror) no merge base for " + origFile);
+		   GUIService.infoMessage("dlg.mirror.resolve", displayText("msg.merge.nobase"));
+		   return null;
+	   }
+	   DocumentMerge merge = DocumentMerge.merge(base, document, mirrorDoc);
+	   List<DocumentMerge.Conflict> conflicts = merge.getConflicts();
+	   Log.log(5, "(ActionHandler.mergeWithMirror) merged changes: " + merge.getMergedChanges() 
+	   		+ ", conflicts: " + conflicts.size());
+
+	   if (!conflicts.isEmpty()) {
+		   // let the user decide each conflict
+		   String text = displayText("msg.merge.conflicts");
+		   text = Util.substituteText(text, "$count", String.valueOf(conflicts.size()));
+		   MergeConflictPanel panel = new MergeConflictPanel(conflicts, text);
+		   if (!MessageDialog.showConfirmMessage(Global.mainframe, displayText("dlg.mirror.resolve"), 
+				   panel, DialogButtonBar.OK_CANCEL_BUTTON)) {
+			   return null;
+		   }
+		   panel.applyChoices();
+	   }
+	   return merge.createDocument();
+   }
+   
+   /** Returns the assumed common base version of a document and its mirror.
+    * This is the youngest history version of the document file which is
+    * older than the file and not younger than the mirror.
+    * 
+    * @param document {@code PadDocument} the reference document
+    * @param origFile File the document's storage file
+    * @param mirror File the mirror file
+    * @return {@code PadDocument} or null if no such version is available
+    * @throws IOException
+    * @throws InterruptedException
+    */
+   private PadDocument findMergeBase (PadDocument document, File origFile, File mirror) 
+		   throws IOException, InterruptedException {
+	   long time = Math.min(mirror.lastModified(), origFile.lastModified() - 1);
+	   File[] history = IO_Manager.get().getFileHistory(origFile);
+	   if (history != null) {
+		   for (File f : history) {
+			   if (f.lastModified() > time) continue;
+			   
+			   // open the history version from a temporary file
+			   File dataF = File.createTempFile("npad-", ".tmp");
+			   try {
+				   IO_Manager.get().restoreFile(f, dataF);
+				   PadDocument base = IO_Manager.get().openDocument(dataF, document.getEncoding(), document.getPassphrase());
+				   if (base != null) {
+					   Log.debug(5, "(ActionHandler.findMergeBase) using history version " + f.getName());
+					   return base;
+				   }
+			   } finally {
+				   dataF.delete();
+			   }
+			   break;
+		   }
+	   }
+	   return null;
+   }
+   
    /** Loads to display a document from the given serialisation file so that
     * its UUID appears as new (deviant from the original) and its display is set
     * to READ-ONLY. The document file is not modified by this action, its 
@@ -929,10 +1286,21 @@ public class ActionHandler extends ActionManager {
   		 
 		 // store the source document in a temporary file
 		 File dataF = File.createTempFile("npad-", ".tmp");
-		 IO_Manager.get().copyFile(file,  dataF);
+		 IO_Manager.get().restoreFile(file, dataF);
 		 
   		 // load the copy file (document) and modify some properties
 		 PadDocument mdoc = IO_Manager.get().openDocument(dataF, encoding, key);
+		 boolean isMirror = Global.isMirrorFilepath(file.getAbsolutePath());
+		 if (isMirror) {
+			 mdoc = MirrorJournal.recover(mdoc);
+		 }
+		 
+		 // inform about the article changes between the versions (older first)
+		 if (origDoc != null) {
+			 DocumentDiff diff = isMirror ? DocumentDiff.compare(origDoc, mdoc) 
+					 : DocumentDiff.compare(mdoc, origDoc);
+			 Global.getStatusBar().putMessage(diff.getSummaryText(), 20000, null);
+		 }
 		 mdoc.setUUID(new UUID());
 		 mdoc.setReadOnly(true);
 		 mdoc.setBackupFile(file.lastModified());
@@ -1484,6 +1852,8 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
       public static final String EDIT_COLOR_FGR = "edit.color.foreground";
       
       public static final String ACTION_SEARCH = "action.search";
+      public static final String ACTION_GOTO_ARTICLE = "action.goto.article";
+      public static final String ACTION_SEARCH_FILES = "action.search.files";
       public static final String ACTION_SEARCH_WEB = "action.search.web";
       public static final String ACTION_TRANSLATE_WEB = "action.translate.web";
       public static final String ACTION_PRINT = "action.print";
@@ -2014,11 +2384,23 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
 	    			 TextSearcher search = new TextSearcher(panel.getMaxSearchResults(),
 	    					 panel.isCaseSensitive(), panel.isWholeWordOnly());
 	    			 List<DocumentTextPosition> posList;
-	    			 switch (panel.getScope()) {
-	    			 case 0:  posList = search.findPositionsInSession(searchVal); break;
-	    			 case 1:  posList = search.findPositionsInDocument(document, searchVal); break;
-	    			 case 2:  posList = search.findPositionsInArticle(article, searchVal); break;
-	    			 default: posList = new ArrayList<>();
+	    			 if (panel.isRankedSearch()) {
+	    				 // relevance ranked list of articles
+	    				 ArticleRankIndex index = ArticleRankIndex.get();
+	    				 int max = panel.getMaxSearchResults();
+		    			 switch (panel.getScope()) {
+		    			 case 0:  posList = new ArrayList<>(index.search(searchVal, null, null, max)); break;
+		    			 case 1:  posList = new ArrayList<>(index.search(searchVal, document, null, max)); break;
+		    			 case 2:  posList = new ArrayList<>(index.search(searchVal, document, article, max)); break;
+		    			 default: posList = new ArrayList<>();
+		    			 }
+	    			 } else {
+		    			 switch (panel.getScope()) {
+		    			 case 0:  posList = search.findPositionsInSession(searchVal); break;
+		    			 case 1:  posList = search.findPositionsInDocument(document, searchVal); break;
+		    			 case 2:  posList = search.findPositionsInArticle(article, searchVal); break;
+		    			 default: posList = new ArrayList<>();
+		    			 }
 	    			 }
 
 	    			 // process search result
@@ -2040,7 +2422,9 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
 							@Override
 							public void valueChanged (ListSelectionEvent e) {
 								DocumentTextPosition pos = listPanel.getSelectedItem();
-								if (pos != null) {
+								if (pos instanceof RankedTextPosition) {
+									showDocumentTextPosition(pos, ((RankedTextPosition)pos).getMatchLength());
+								} else if (pos != null) {
 									showDocumentTextPosition(pos, searchVal.length());
 								}
 							}
@@ -2056,6 +2440,57 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
              }
          }
          
+         else if ( cmd.equals( ActionNames.ACTION_SEARCH_FILES ) ) {
+        	 // a running search may be cancelled by the user
+        	 DocumentFileSearcher running = runningFileSearch;
+        	 if (running != null) {
+        		 if (GUIService.userConfirm(displayText("msg.filesearch.cancel"))) {
+        			 running.cancel();
+        		 }
+        		 return;
+        	 }
+        	 
+        	 FileSearchPanel panel = new FileSearchPanel();
+        	 String title = Global.res.getDisplay("dlg.filesearch");
+        	 boolean ok = MessageDialog.showConfirmMessage(Global.mainframe, title, 
+        			 panel, DialogButtonBar.OK_CANCEL_BUTTON);
+        	 String searchVal = panel.getInputText();
+        	 File dir = panel.getDirectory();
+        	 char[] pass = panel.getPassword();
+        	 
+        	 if (ok && !searchVal.isEmpty() && dir != null && dir.isDirectory()) {
+        		 Log.log(6, "(ActionHandler.Executor) FILE SEARCH for [" + searchVal + "] in " + dir);
+        		 DocumentFileSearcher searcher = new DocumentFileSearcher(searchVal, 
+        				 panel.isCaseSensitive(), panel.isWholeWordOnly(), panel.getMaxSearchResults());
+        		 
+        		 // keys for encrypted files: user input and keys of open documents
+        		 if (pass != null) {
+        			 searcher.addKey(Functions.makeEncryptKey(pass));
+        		 }
+        		 for (PadDocument doc : Global.getDocumentRegistry()) {
+        			 searcher.addKey(doc.getPassphrase());
+        		 }
+        		 scheduleWorkerTask(new FileSearchTask(searcher, dir, searchVal), 
+        				 "search in files: " + dir);
+        	 }
+        	 if (pass != null) {
+        		 Util.destroy(pass);
+        	 }
+         }
+         
+         else if ( cmd.equals( ActionNames.ACTION_GOTO_ARTICLE ) ) {
+        	 if (Global.getDocumentRegistry().size() > 0) {
+        		 ArticleJumpPanel panel = new ArticleJumpPanel();
+	        	 String title = Global.res.getDisplay("dlg.goto-article");
+	        	 boolean ok = MessageDialog.showConfirmMessage(Global.mainframe, title, 
+	        			 panel, DialogButtonBar.OK_CANCEL_BUTTON);
+	        	 PadArticle target = panel.getSelectedArticle();
+	        	 if (ok && target != null) {
+	        		 showArticle(target);
+	        	 }
+        	 }
+         }
+         
          else if ( cmd.equals( ActionNames.ACTION_SEARCH_WEB ) ||
         		   cmd.equals( ActionNames.ACTION_TRANSLATE_WEB )) {
         	 
@@ -2160,6 +2595,43 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
 		ArticleEditor editor = displayManager.getSelectedEditor();
 		editor.setTextSelection(pos.getCursorPos(), pos.getCursorPos() + length);
 	  }
+
+	  /** Displays the text position of a file search result. The document
+	   * file is opened if it is not yet registered. 
+	   * 
+	   * @param pos {@code FileTextPosition}
+	   * @param length int length of the text selection
+	   */
+	  protected void showFileTextPosition (FileTextPosition pos, int length) {
+		PadDocument doc = null;
+		String path = pos.getFile().getAbsolutePath();
+		for (PadDocument d : Global.getDocumentRegistry()) {
+			if (path.equals(d.getExternalPath())) {
+				doc = d;
+				break;
+			}
+		}
+		if (doc == null) {
+			doc = openDocumentFromPath(path, true);
+		}
+		if (doc == null || pos.getArticleIndex() >= doc.getArticleCount()) return;
+		
+		PadArticle art = doc.getArticle(pos.getArticleIndex());
+		showDocumentTextPosition(new DocumentTextPosition(doc, art, pos.getPosition()), length);
+	  }
+
+	  /** Displays the given article as selected in its document display.
+	   * 
+	   * @param article {@code PadArticle}
+	   */
+	  protected void showArticle (PadArticle article) {
+		PadDocument doc = article.getDocument();
+		if (doc == null) return;
+		DocumentDisplay display = displayManager.getDisplay(doc);
+		if (display == null) return;
+		displayManager.setSelectedDisplay(display);
+		doc.setSelectedArticle(article);
+	  }
    } // ActionExecutor
 
    /** This handler listens to the document registry and services the mirror-file
@@ -2202,6 +2674,7 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
         	mirman.removeHistoryMirrors(oldIdentifier);
         	mirman.removeCurrentMirror(oldIdentifier);
         	mirman.removeMirrorable(oldIdentifier);
+        	MirrorJournal.remove(oldIdentifier);
         	
         	mirman.addMirrorable(new MirrorFileAdapter(doc));
         	if (hadMirror) {
@@ -2241,6 +2714,8 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
 
    private class MirrorFileAdapter implements MirrorFileManager.Mirrorable {
       private PadDocument document;
+      private MirrorJournal journal;
+      private MirrorScheduler scheduler;
       private int modifyNumber;
       private long modifyTime;
       
@@ -2252,6 +2727,14 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
       public MirrorFileAdapter (PadDocument document) {
     	 Objects.requireNonNull(document, "document is null");
          this.document = document;
+         
+         // changes are journaled between full mirrors if opted
+         if (Global.getOptions().isOptionSet("mirrorJournal")) {
+        	 journal = MirrorJournal.get(document, mirrorAdapterIdentifier(document));
+         }
+         if (Global.getOptions().isOptionSet("adaptiveMirroring")) {
+        	 scheduler = new MirrorScheduler();
+         }
       }
    
       /** Creates an adapter with an empty Treepad document of the given
@@ -2272,12 +2755,35 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
          return mirrorAdapterIdentifier(document);
       }
    
+      /** Returns the modify number of the document for the mirror system.
+       * With an active journal, changes are appended to the journal and the
+       * modify number (which causes a full mirror) only increases when a
+       * compaction of the journal is due. With a scheduler, the increase
+       * is withheld until the scheduler releases the change.
+       */
       @Override
       public int getModifyNumber () {
          long time = document.getModifyTime(); 
          if (time != modifyTime) {
-            modifyNumber++;
             modifyTime = time;
+            
+            if (journal != null && !journal.isCompactionDue()) {
+               try {
+                  journal.flush();
+                  return modifyNumber;
+               } catch (IOException e) {
+                  Log.log(5, "(ActionHandler.MirrorFileAdapter) journal failure, writing full mirror: " + e);
+               }
+            }
+            if (scheduler == null) {
+               modifyNumber++;
+            } else {
+               scheduler.changed(System.currentTimeMillis());
+            }
+         }
+         
+         if (scheduler != null && scheduler.release(time)) {
+            modifyNumber++;
          }
          return modifyNumber;
       }
@@ -2287,8 +2793,41 @@ private boolean clipboardSecurityConfirmed (PadDocument document) {
    
       @Override
       public void mirrorWrite (OutputStream out) throws IOException {
+    	 long start = System.currentTimeMillis();
     	 document.savePreferences(false);
-         IO_Manager.get().saveDocument(document, out, document.getEncoding());
+    	 if (journal != null) {
+    		 journal.beginCompaction();
+    	 }
+    	 
+    	 // write the full mirror and count its size
+    	 long[] count = new long[1];
+    	 OutputStream cout = new FilterOutputStream(out) {
+    		 @Override
+    		 public void write (byte[] b, int off, int len) throws IOException {
+    			 out.write(b, off, len);
+    			 count[0] += len;
+    		 }
+
+    		 @Override
+    		 public void write (int b) throws IOException {
+    			 out.write(b);
+    			 count[0]++;
+    		 }
+    	 };
+         IO_Manager.get().saveDocument(document, cout, document.getEncoding(), 
+        		 IO_Manager.WritePurpose.MIRROR);
+         cout.flush();
+         if (journal != null) {
+        	 journal.endCompaction(count[0]);
+         }
+         
+         // record the mirror cost for scheduling and display its latency
+         long end = System.currentTimeMillis();
+         if (scheduler != null) {
+        	 scheduler.mirrorWritten(start, end);
+         }
+         Global.getStatusBar().setMirrorCell(displayText("msg.mirror.latency") + (end - start) + " ms");
+         
          String text = displayText("msg.mirror.written").concat(document.getShortTitle());
          if (Global.isDebug()) {
         	 Global.getStatusBar().putMessage(text, 10000, UnixColor.Indigo);
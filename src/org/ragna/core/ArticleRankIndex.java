@@ -0,0 +1,354 @@
+/*
+*  File: ArticleRankIndex.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.ragna.core.TextSearcher.DocumentTextPosition;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.Util;
+
+/** A relevance ranked full-text index over the titles and contents of all
+ * articles of the documents in the global {@code DocumentRegistry}. The
+ * index holds a tokenised inverted list of word terms with their frequencies
+ * per article and scores search queries by the Okapi BM25 function. Terms
+ * in article titles receive a boost factor.
+ *
+ * <p>The index follows document and article events. Modified articles are
+ * only marked invalid and re-indexed at the next search, so that typing
+ * in an editor does not cause indexing work.
+ */
+public class ArticleRankIndex extends RegistryArticleIndex {
+	/** BM25 term frequency saturation parameter. */
+	public static final double K1 = 1.2;
+	/** BM25 document length normalisation parameter. */
+	public static final double B = 0.75;
+	/** Multiplier for the frequency of terms occurring in article titles. */
+	public static final int TITLE_BOOST = 3;
+
+	private static final int SNIPPET_LEAD = 30;
+	private static final int SNIPPET_LENGTH = 90;
+
+	private static ArticleRankIndex instance;
+
+	/** Postings list: term -> set of article entries containing the term. */
+	private Map<String, Set<ArticleEntry>> postings = new HashMap<>();
+	private Map<PadArticle, ArticleEntry> entries = new IdentityHashMap<>();
+	private Set<PadArticle> invalid = Collections.newSetFromMap(new IdentityHashMap<>());
+	private long totalLength;
+
+	/** Returns the singleton instance of the rank index. The index is
+	 * created and attached to the document registry on the first call.
+	 *
+	 * @return {@code ArticleRankIndex}
+	 */
+	public static ArticleRankIndex get () {
+		if (instance == null) {
+			instance = new ArticleRankIndex();
+		}
+		return instance;
+	}
+
+	private ArticleRankIndex () {
+		super(true);
+		attach();
+	}
+
+	/** Splits the given text into a list of normalised word terms. A term is
+	 * a maximal sequence of letters or digits, converted to lower case.
+	 *
+	 * @param text String
+	 * @return {@code List<String>}
+	 */
+	public static List<String> tokenize (String text) {
+		List<String> list = new ArrayList<>();
+		if (text == null) return list;
+
+		int len = text.length();
+		int start = -1;
+		for (int i = 0; i <= len; i++) {
+			boolean inWord = i < len && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord) {
+				if (start < 0) start = i;
+			} else if (start > -1) {
+				list.add(text.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+		return list;
+	}
+
+	@Override
+	protected synchronized void articleChanged (PadArticle article) {
+		invalid.add(article);
+	}
+
+	@Override
+	protected synchronized void articleRemoved (PadArticle article) {
+		invalid.remove(article);
+		ArticleEntry entry = entries.remove(article);
+		if (entry != null) {
+			unlistTerms(entry);
+		}
+	}
+
+	private void unlistTerms (ArticleEntry entry) {
+		for (String term : entry.termFreq.keySet()) {
+			Set<ArticleEntry> set = postings.get(term);
+			if (set != null) {
+				set.remove(entry);
+				if (set.isEmpty()) {
+					postings.remove(term);
+				}
+			}
+		}
+		totalLength -= entry.length;
+	}
+
+	/** Re-indexes all articles which have been marked invalid since the last
+	 * call.
+	 */
+	private void update () {
+		if (invalid.isEmpty()) return;
+		long time = System.currentTimeMillis();
+		int count = invalid.size();
+
+		for (PadArticle art : invalid) {
+			ArticleEntry entry = entries.remove(art);
+			if (entry != null) {
+				unlistTerms(entry);
+			}
+			PadDocument doc = art.getDocument();
+			if (doc == null) continue;
+
+			entry = new ArticleEntry(doc, art);
+			entries.put(art, entry);
+			for (String term : entry.termFreq.keySet()) {
+				Set<ArticleEntry> set = postings.get(term);
+				if (set == null) {
+					set = new LinkedHashSet<>();
+					postings.put(term, set);
+				}
+				set.add(entry);
+			}
+			totalLength += entry.length;
+		}
+		invalid.clear();
+		Log.debug(8, "(ArticleRankIndex.update) indexed " + count + " articles, time = "
+				+ (System.currentTimeMillis() - time) + " ms");
+	}
+
+	/** Returns the number of articles currently indexed.
+	 *
+	 * @return int
+	 */
+	public synchronized int size () {
+		update();
+		return entries.size();
+	}
+
+	/** Searches the index for articles which are relevant to the given query
+	 * and returns the best scoring articles in descending order of score.
+	 * The query is tokenised into words and each article containing at least
+	 * one of them is scored. The search scope is restricted to the given
+	 * document or article if they are not null.
+	 *
+	 * @param query String search words
+	 * @param document {@code PadDocument} document scope, may be null
+	 * @param article {@code PadArticle} article scope, may be null
+	 * @param maximum int maximum number of results (top-k)
+	 * @return {@code List<RankedTextPosition>}
+	 */
+	public synchronized List<RankedTextPosition> search (String query, PadDocument document,
+			PadArticle article, int maximum) {
+		Objects.requireNonNull(query, "query is null");
+		Util.requirePositive(maximum);
+		update();
+
+		List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+		int n = entries.size();
+		if (terms.isEmpty() || n == 0) {
+			return new ArrayList<>();
+		}
+		double avgLength = Math.max(1.0, (double)totalLength / n);
+
+		// accumulate BM25 scores for all articles containing a query term
+		Map<ArticleEntry, double[]> scores = new HashMap<>();
+		for (String term : terms) {
+			Set<ArticleEntry> set = postings.get(term);
+			if (set == null) continue;
+
+			double df = set.size();
+			double idf = Math.log(1.0 + (n - df + 0.5) / (df + 0.5));
+			for (ArticleEntry entry : set) {
+				if (document != null && entry.document != document) continue;
+				if (article != null && entry.article != article) continue;
+
+				double tf = entry.termFreq.get(term);
+				double norm = K1 * (1.0 - B + B * entry.length / avgLength);
+				double value = idf * tf * (K1 + 1.0) / (tf + norm);
+				double[] score = scores.get(entry);
+				if (score == null) {
+					scores.put(entry, new double[] {value});
+				} else {
+					score[0] += value;
+				}
+			}
+		}
+
+		// select top-k with a bounded min-heap
+		PriorityQueue<Map.Entry<ArticleEntry, double[]>> heap = new PriorityQueue<>(maximum + 1,
+				(a, b) -> Double.compare(a.getValue()[0], b.getValue()[0]));
+		for (Map.Entry<ArticleEntry, double[]> e : scores.entrySet()) {
+			if (heap.size() < maximum) {
+				heap.add(e);
+			} else if (e.getValue()[0] > heap.peek().getValue()[0]) {
+				heap.poll();
+				heap.add(e);
+			}
+		}
+
+		// create result list in descending order
+		RankedTextPosition[] result = new RankedTextPosition[heap.size()];
+		for (int i = result.length-1; i > -1; i--) {
+			Map.Entry<ArticleEntry, double[]> e = heap.poll();
+			result[i] = createPosition(e.getKey(), terms, e.getValue()[0]);
+		}
+
+		Log.debug(8, "(ArticleRankIndex.search) found " + scores.size() + " articles for "
+				+ terms + ", delivered " + result.length);
+		List<RankedTextPosition> list = new ArrayList<>(result.length);
+		Collections.addAll(list, result);
+		return list;
+	}
+
+	/** Creates the result position for an article. The position refers to
+	 * the first occurrence in the article content of the query term
+	 * which is rarest in the index.
+	 */
+	private RankedTextPosition createPosition (ArticleEntry entry, List<String> terms, double score) {
+		String hitTerm = null;
+		int hitDf = Integer.MAX_VALUE;
+		for (String term : terms) {
+			Set<ArticleEntry> set = postings.get(term);
+			if (set != null && set.size() < hitDf && entry.termFreq.containsKey(term)) {
+				hitTerm = term;
+				hitDf = set.size();
+			}
+		}
+
+		String text = entry.article.getContent();
+		int position = 0, length = 0;
+		if (hitTerm != null && text != null) {
+			int[] posArr = TextSearcher.findArticleTextPositions(entry.article, hitTerm, false, true);
+			if (posArr.length > 0) {
+				position = posArr[0];
+				length = hitTerm.length();
+			}
+		}
+		return new RankedTextPosition(entry.document, entry.article, position, length,
+				score, createSnippet(text, position));
+	}
+
+	private static String createSnippet (String text, int position) {
+		if (text == null || text.isEmpty()) return "";
+		int start = Math.max(0, position - SNIPPET_LEAD);
+		int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+		String hs = text.substring(start, end).replaceAll("\\s+", " ").trim();
+		if (start > 0) hs = "..." + hs;
+		if (end < text.length()) hs = hs + "...";
+		return hs;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** Index data of a single article: weighted term frequencies and the
+	 * weighted length in terms.
+	 */
+	private static class ArticleEntry {
+		final PadDocument document;
+		final PadArticle article;
+		final Map<String, Integer> termFreq = new HashMap<>();
+		final int length;
+
+		ArticleEntry (PadDocument document, PadArticle article) {
+			this.document = document;
+			this.article = article;
+			int count = 0;
+
+			for (String term : tokenize(article.getTitle())) {
+				termFreq.merge(term, TITLE_BOOST, Integer::sum);
+				count += TITLE_BOOST;
+			}
+			for (String term : tokenize(article.getContent())) {
+				termFreq.merge(term, 1, Integer::sum);
+				count++;
+			}
+			length = count;
+		}
+	}
+
+	/** A document text position which additionally carries the relevance
+	 * score of its article, the length of the matched term and a text
+	 * snippet around the position.
+	 */
+	public static class RankedTextPosition extends DocumentTextPosition {
+		private double score;
+		private int length;
+		private String snippet;
+
+		/** Creates a new ranked text position.
+		 *
+		 * @param document {@code PadDocument}
+		 * @param article {@code PadArticle}
+		 * @param position int cursor position
+		 * @param length int length of the matched term
+		 * @param score double relevance score
+		 * @param snippet String text around the position
+		 */
+		public RankedTextPosition (PadDocument document, PadArticle article, int position,
+				int length, double score, String snippet) {
+			super(document, article, position);
+			this.length = length;
+			this.score = score;
+			this.snippet = snippet == null ? "" : snippet;
+		}
+
+		public double getScore () {return score;}
+
+		public int getMatchLength () {return length;}
+
+		public String getSnippet () {return snippet;}
+	}
+}
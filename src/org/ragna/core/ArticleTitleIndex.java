@@ -0,0 +1,257 @@
+/*
+*  File: ArticleTitleIndex.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.Util;
+
+/** An in-memory index of the titles of all articles of the documents in the
+ * global {@code DocumentRegistry}, serving quick navigation to articles by
+ * title ("go to article"). Titles are normalised (lower case, no diacritics,
+ * single blanks) and kept in a sorted array which answers prefix queries by
+ * binary search. Other titles match if they contain the query characters
+ * as a subsequence, ranked by word-start, substring and compactness of the
+ * match.
+ *
+ * <p>The index follows document and article events. The sorted array is
+ * rebuilt lazily on the next query after a change. Results of the last query
+ * are kept as candidates, so that a query which extends the previous one
+ * (typing) only scans the previous matches.
+ */
+public class ArticleTitleIndex extends RegistryArticleIndex {
+
+	private static ArticleTitleIndex instance;
+
+	private Map<PadArticle, Entry> entries = new IdentityHashMap<>();
+	private Entry[] sorted = new Entry[0];
+	private boolean dirty;
+
+	// candidate cache from the previous query
+	private String lastQuery;
+	private Entry[] lastMatches;
+
+	/** Returns the singleton instance of the title index. The index is
+	 * created and attached to the document registry on the first call.
+	 *
+	 * @return {@code ArticleTitleIndex}
+	 */
+	public static ArticleTitleIndex get () {
+		if (instance == null) {
+			instance = new ArticleTitleIndex();
+		}
+		return instance;
+	}
+
+	private ArticleTitleIndex () {
+		super(false);
+		attach();
+	}
+
+	/** Returns the normalised form of the given text for title matching.
+	 * The text is set to lower case, diacritic marks are removed and
+	 * sequences of whitespace are replaced by a single blank.
+	 *
+	 * @param text String, may be null
+	 * @return String
+	 */
+	public static String normalise (String text) {
+		if (text == null) return "";
+		String hs = Normalizer.normalize(text.trim().toLowerCase(), Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(hs.length());
+		boolean blank = false;
+		for (int i = 0; i < hs.length(); i++) {
+			char c = hs.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+			if (Character.isWhitespace(c)) {
+				if (!blank) sb.append(' ');
+				blank = true;
+			} else {
+				sb.append(c);
+				blank = false;
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	protected synchronized void articleChanged (PadArticle article) {
+		PadDocument doc = article.getDocument();
+		if (doc != null) {
+			entries.put(article, new Entry(doc, article));
+			dirty = true;
+		}
+	}
+
+	@Override
+	protected synchronized void articleRemoved (PadArticle article) {
+		if (entries.remove(article) != null) {
+			dirty = true;
+		}
+	}
+
+	/** Rebuilds the sorted title array if the index has been modified since
+	 * the last query.
+	 */
+	private void update () {
+		if (!dirty) return;
+		sorted = entries.values().toArray(new Entry[entries.size()]);
+		Arrays.sort(sorted, Comparator.comparing((Entry e) -> e.key));
+		lastQuery = null;
+		lastMatches = null;
+		dirty = false;
+	}
+
+	/** Returns the number of article titles currently indexed.
+	 *
+	 * @return int
+	 */
+	public synchronized int size () {
+		return entries.size();
+	}
+
+	/** Returns the articles whose titles match the given query, best matches
+	 * first. Titles starting with the query are listed first in alphabetical
+	 * order, followed by titles containing the query characters in sequence,
+	 * ranked by quality of the match. An empty query renders an empty list.
+	 *
+	 * @param query String title search text
+	 * @param maximum int maximum number of results
+	 * @return {@code List<PadArticle>}
+	 */
+	public synchronized List<PadArticle> find (String query, int maximum) {
+		Objects.requireNonNull(query, "query is null");
+		Util.requirePositive(maximum);
+		long time = System.nanoTime();
+		update();
+
+		List<PadArticle> result = new ArrayList<>();
+		String q = normalise(query);
+		if (q.isEmpty()) return result;
+
+		// prefix matches from the sorted array
+		int index = lowerBound(q);
+		for (int i = index; i < sorted.length && result.size() < maximum; i++) {
+			if (!sorted[i].key.startsWith(q)) break;
+			result.add(sorted[i].article);
+		}
+
+		// fuzzy matches (subsequence) on the candidate set
+		Entry[] candidates = lastQuery != null && q.startsWith(lastQuery) ? lastMatches : sorted;
+		List<Entry> matches = new ArrayList<>();
+		List<long[]> ranks = new ArrayList<>();
+		for (Entry e : candidates) {
+			long rank = matchRank(e.key, q);
+			if (rank > -1) {
+				matches.add(e);
+				if (!e.key.startsWith(q)) {
+					ranks.add(new long[] {rank, matches.size()-1});
+				}
+			}
+		}
+		lastQuery = q;
+		lastMatches = matches.toArray(new Entry[matches.size()]);
+
+		if (result.size() < maximum) {
+			ranks.sort((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]));
+			for (int i = 0; i < ranks.size() && result.size() < maximum; i++) {
+				result.add(lastMatches[(int)ranks.get(i)[1]].article);
+			}
+		}
+
+		Log.debug(10, "(ArticleTitleIndex.find) query [" + q + "] from " + candidates.length
+				+ " candidates, " + matches.size() + " matches, time = "
+				+ (System.nanoTime() - time) / 1000 + " us");
+		return result;
+	}
+
+	/** Returns the index of the first element in the sorted array which is
+	 * not lower than the given key.
+	 */
+	private int lowerBound (String key) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid].key.compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/** Returns a ranking value for the match of query in title or -1 if the
+	 * query is not a subsequence of the title. Higher values mean better
+	 * matches: a substring at a word start ranks above a substring, which
+	 * ranks above a subsequence; a shorter span of the match ranks higher
+	 * within a class.
+	 */
+	private static long matchRank (String title, String query) {
+		int pos = title.indexOf(query);
+		if (pos > -1) {
+			boolean wordStart = pos == 0 || !Character.isLetterOrDigit(title.charAt(pos-1));
+			return (wordStart ? 3L : 2L) << 32;
+		}
+
+		// subsequence scan with span measure
+		int first = -1, t = 0;
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			while (t < title.length() && title.charAt(t) != c) t++;
+			if (t == title.length()) return -1;
+			if (first < 0) first = t;
+			t++;
+		}
+		int span = t - first;
+		return (1L << 32) + (Integer.MAX_VALUE - span);
+	}
+
+//  *********  INNER CLASSES  *********
+
+	private static class Entry {
+		final PadDocument document;
+		final PadArticle article;
+		final String key;
+
+		Entry (PadDocument document, PadArticle article) {
+			this.document = document;
+			this.article = article;
+			this.key = normalise(article.getTitle());
+		}
+
+		@Override
+		public String toString () {
+			return key + " (" + document.getShortTitle() + ")";
+		}
+	}
+}
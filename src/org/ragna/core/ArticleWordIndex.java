@@ -0,0 +1,202 @@
+/*
+*  File: ArticleWordIndex.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/** A word-tokenised index of the text content of a single {@code PadArticle}.
+ * The index maps each lower-cased word (a maximal run of letters or digits)
+ * to the ascending array of its start offsets in the text. Whole-word
+ * searches are thereby answered by a direct lookup instead of a substring
+ * scan with subsequent boundary filtering.
+ *
+ * <p>Indices are created on demand by {@code get(PadArticle)} and cached
+ * per article instance. A cached index is discarded when the article
+ * reports a content modification; articles themselves are only weakly
+ * referenced.
+ */
+public class ArticleWordIndex {
+
+	private static final Map<PadArticle, ArticleWordIndex> cache =
+			Collections.synchronizedMap(new WeakHashMap<>());
+	private static final PropertyChangeListener contentListener = new ContentListener();
+
+	private static final int[] EMPTY = new int[0];
+
+	private WeakReference<PadArticle> article;
+	private Map<String, int[]> words;
+	private int textLength;
+
+	/** Creates a word index for the given article text.
+	 *
+	 * @param article {@code PadArticle} owner of the text
+	 * @param text String article text
+	 */
+	private ArticleWordIndex (PadArticle article, String text) {
+		this.article = new WeakReference<>(article);
+		textLength = text.length();
+		words = new HashMap<>();
+
+		// collect word start offsets, arrays carry their fill count at index 0
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+			if (i == length) break;
+			int start = i;
+			while (i < length && Character.isLetterOrDigit(text.charAt(i))) i++;
+
+			String word = text.substring(start, i).toLowerCase();
+			int[] arr = words.get(word);
+			if (arr == null) {
+				arr = new int[4];
+			} else if (arr[0] + 1 == arr.length) {
+				arr = Arrays.copyOf(arr, arr.length * 2);
+			}
+			arr[++arr[0]] = start;
+			words.put(word, arr);
+		}
+
+		// trim arrays to their content
+		for (Map.Entry<String, int[]> entry : words.entrySet()) {
+			int[] arr = entry.getValue();
+			entry.setValue(Arrays.copyOfRange(arr, 1, arr[0] + 1));
+		}
+	}
+
+	/** Returns the word index for the given article. The index is taken
+	 * from the cache or created if it is missing or outdated.
+	 *
+	 * @param article {@code PadArticle}
+	 * @return {@code ArticleWordIndex}
+	 */
+	public static ArticleWordIndex get (PadArticle article) {
+		Objects.requireNonNull(article, "article is null");
+		ArticleWordIndex index = cache.get(article);
+		if (index == null || index.article.get() != article) {
+			// listener is registered only once per article
+			article.addPropertyChangeListener(contentListener);
+			index = new ArticleWordIndex(article, article.getContent());
+			cache.put(article, index);
+		}
+		return index;
+	}
+
+	/** Removes the cached word index of the given article, if present.
+	 *
+	 * @param article {@code PadArticle}
+	 */
+	public static void invalidate (PadArticle article) {
+		cache.remove(article);
+	}
+
+	/** Whether the given text is a single word, i.e. it consists only of
+	 * letters and digits.
+	 *
+	 * @param text String
+	 * @return boolean
+	 */
+	public static boolean isWord (String text) {
+		if (text.isEmpty()) return false;
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isLetterOrDigit(text.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/** Returns the number of distinct words in the article text.
+	 *
+	 * @return int
+	 */
+	public int getWordCount () {return words.size();}
+
+	/** Returns the ascending start offsets of whole-word occurrences of the
+	 * given token in the article text. The token must begin with a letter or
+	 * digit; it may extend over several words. Returns null if the token
+	 * does not begin with a letter or digit, in which case the caller has to
+	 * use a plain text scan. Occurrences do not overlap.
+	 *
+	 * @param token String search text
+	 * @param sensitive boolean true = search case-sensitive
+	 * @return int[] text positions or null
+	 */
+	public int[] findPositions (String token, boolean sensitive) {
+		Objects.requireNonNull(token, "token is null");
+		if (token.isEmpty() || !Character.isLetterOrDigit(token.charAt(0))) return null;
+
+		// identify the leading word of the token
+		int wordEnd = 1;
+		while (wordEnd < token.length() && Character.isLetterOrDigit(token.charAt(wordEnd))) wordEnd++;
+		int[] candidates = words.get(token.substring(0, wordEnd).toLowerCase());
+		if (candidates == null) return EMPTY;
+		boolean singleWord = wordEnd == token.length();
+		if (singleWord && !sensitive) return candidates.clone();
+
+		// verify candidates against the text
+		PadArticle art = article.get();
+		String text = art == null ? null : art.getContent();
+		if (text == null || text.length() != textLength) {
+			// index is outdated, fall back to caller's scan
+			return null;
+		}
+
+		int length = token.length();
+		int[] result = new int[candidates.length];
+		int count = 0, lastEnd = 0;
+		for (int pos : candidates) {
+			if (pos < lastEnd || !text.regionMatches(!sensitive, pos, token, 0, length)) continue;
+			if (!singleWord) {
+				int end = pos + length;
+				if (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) continue;
+			}
+			result[count++] = pos;
+			lastEnd = pos + length;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+//  *********  INNER CLASSES  *********
+
+	private static class ContentListener implements PropertyChangeListener {
+
+		@Override
+		public void propertyChange (PropertyChangeEvent evt) {
+			if ("contentModified".equals(evt.getPropertyName())) {
+				PadArticle art = (PadArticle) evt.getNewValue();
+				ArticleWordIndex index = cache.get(art);
+				if (index != null && index.article.get() == art) {
+					cache.remove(art);
+				}
+			}
+		}
+	}
+}
@@ -47,11 +47,18 @@ public class DefaultOptions extends Properties {
       setProperty("isToolbarsFloatable", "false");
       setProperty("useDefaultFileExtensions", "true");
       setProperty("useFileHistory", "true");
+      setProperty("dedupHistory", "true");
+      setProperty("asyncHistory", "true");
+      setProperty("atomicSave", "true");
       setProperty("useMirroring", "true");
+      setProperty("mirrorJournal", "true");
+      setProperty("adaptiveMirroring", "true");
       setProperty("defaultEditorLinewrap", "true");
       setProperty("showFilePathInsteadOfTitle", "false");
       setProperty("isAutoOpenRecentFile", "true");
       setProperty("isAutoOpenSession", "false");
+      setProperty("parallelSessionOpen", "true");
+      setProperty("sessionSnapshot", "true");
 
       setProperty("defaultSliderPosition", "300");
       setProperty("defaultDocumentType", "html");
@@ -59,6 +66,14 @@ public class DefaultOptions extends Properties {
       setProperty("defaultTreepadEncoding", "UTF-8");
       setProperty("maxShortTitleLength", "60");
       setProperty("workerThreads", "2");
+      setProperty("mirrorMaxDelay", "120");
+      setProperty("displayReleaseDelay", "600");
+      setProperty("compressionCodec", "deflate");
+      setProperty("mirrorCompressionCodec", "auto");
+      setProperty("compressionLevel", "6");
+      setProperty("pipelinedOpen", "true");
+      setProperty("parallelDecrypt", "true");
+      setProperty("channelOpen", "true");
       setProperty("startSearchExp", "https://www.google.com/search?q=$text&hl=en");
       setProperty("startTranslateExp", "https://www.babelfish.de");
       
@@ -995,7 +995,42 @@ public class DefaultPadDocument implements PadDocument, Cloneable {
    }
    
    @Override
-   public synchronized PadArticle newArticle (PadArticle parent, boolean asChild) {
+   public synchronized void appendArticles (PadArticle[] arr) {
+      Objects.requireNonNull(arr, "article array is null");
+      if (arr.length == 0) return;
+      int start = articleList.size();
+      
+      for (PadArticle a : arr) {
+         Objects.requireNonNull(a, "article is null");
+         if (contains(a))
+            throw new IllegalArgumentException("article is already contained");
+         PadArticle parent = a.getParent();
+         if (articleList.isEmpty() ? parent != null :
+             parent == null || !isDescendantOf(articleList.get(articleList.size()-1), parent))
+            throw new IllegalArgumentException("article parent does not fit position: " + a);
+
+         articleMap.put(a.getUUID(), a);
+         articleList.add(a);
+         a.setDocument(this);
+         a.addPropertyChangeListener(articleListener);
+      }
+      Log.log(6, "(DefaultPadDocument.appendArticles) appended articles: " + arr.length);
+      
+      if (start == 0) {
+         updateTitleFromFirstArticle();
+      }
+
+      // issue property change events
+      listModel.fireIntervalAdded(this, start, articleList.size()-1);
+      treeModel.fireTreeStructureChanged();
+      for (PadArticle a : arr) {
+         support.firePropertyChange("articleAdded", null, a);
+      }
+      setModified();
+   }
+   
+   @Override
+   public PadArticle createArticle (PadArticle parent) {
       PadArticle article = new AbstractPadArticle();
 
       // set default layout values for article
@@ -1013,6 +1048,14 @@ public class DefaultPadDocument implements PadDocument, Cloneable {
    		  article.setForegroundColor(getPreferredForegroundColor());
       }
 
+      article.setParent(parent);
+      return article;
+   }
+
+   @Override
+   public synchronized PadArticle newArticle (PadArticle parent, boolean asChild) {
+      PadArticle article = createArticle(parent);
+
       // add article to document with location after parent
       addArticle(article, parent, asChild);
       return article;
@@ -1488,7 +1531,7 @@ public class DefaultPadDocument implements PadDocument, Cloneable {
 		 * @param a {@code PadArticle}, may be null
 		 */
 		public void fireTreeNodeChanged (PadArticle a) {
-			if (a == null || indexOf(a) == -1) return;
+			if (a == null || listeners.isEmpty() || indexOf(a) == -1) return;
 			
 			TreePath parentPath = getArticleTreePath(a).getParentPath();
 			int index = getChildIndex(a);
@@ -1511,7 +1554,7 @@ public class DefaultPadDocument implements PadDocument, Cloneable {
 		 * @param a {@code PadArticle}, may be null
 		 */
 		public void fireTreeNodeInserted (PadArticle a) {
-			if (a == null || indexOf(a) == -1) return;
+			if (a == null || listeners.isEmpty() || indexOf(a) == -1) return;
 			
 			TreePath parentPath = getArticleTreePath(a).getParentPath();
 			int index = getChildIndex(a);
@@ -0,0 +1,403 @@
+/*
+*  File: DocumentDiff.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.UUID;
+import kse.utilclass.misc.Util;
+
+/** The article-level difference between two versions of a document.
+ * Articles of the two documents are matched in stages: by UUID, by equal
+ * path of titles in the tree and equal content, by identical content, by
+ * title path, as root articles and finally by title among the children of
+ * matched parents; each stage only considers articles unmatched by the
+ * previous ones. Unchanged articles are thus paired before articles which
+ * merely share a title path with others. Matched articles
+ * are reported as modified if their title or text differs and as moved if
+ * their parent or their order among their siblings changed. Unmatched
+ * articles are reported as added or removed.
+ *
+ * <p>The comparison reads each text once; line-level differences of
+ * modified articles are only computed when requested from their
+ * {@code ArticleChange}.
+ */
+public class DocumentDiff {
+
+	private List<ArticleChange> added = new ArrayList<>();
+	private List<ArticleChange> removed = new ArrayList<>();
+	private List<ArticleChange> moved = new ArrayList<>();
+	private List<ArticleChange> modified = new ArrayList<>();
+	private int unchanged;
+
+	private DocumentDiff () {
+	}
+
+	/** Compares the given document versions.
+	 *
+	 * @param oldDoc {@code PadDocument} original version
+	 * @param newDoc {@code PadDocument} changed version
+	 * @return {@code DocumentDiff}
+	 */
+	public static DocumentDiff compare (PadDocument oldDoc, PadDocument newDoc) {
+		Objects.requireNonNull(oldDoc, "oldDoc is null");
+		Objects.requireNonNull(newDoc, "newDoc is null");
+		long time = System.currentTimeMillis();
+		Matching m = match(oldDoc, newDoc);
+		Tree a = m.a, b = m.b;
+		int[] matchA = m.matchA, matchB = m.matchB;
+
+		// evaluate matched pairs
+		DocumentDiff diff = new DocumentDiff();
+		boolean[] isMoved = new boolean[a.size];
+		findMoves(a, b, matchA, matchB, isMoved);
+		for (int i = 0; i < a.size; i++) {
+			int j = matchA[i];
+			if (j < 0) {
+				diff.removed.add(new ArticleChange(a.articles[i], null, false, false, false));
+				continue;
+			}
+			PadArticle x = a.articles[i], y = b.articles[j];
+			boolean titleChanged = !Objects.equals(x.getTitle(), y.getTitle());
+			boolean contentChanged = !Objects.equals(x.getContent(), y.getContent());
+			ArticleChange change = new ArticleChange(x, y, isMoved[i], titleChanged, contentChanged);
+			if (isMoved[i]) {
+				diff.moved.add(change);
+			}
+			if (titleChanged || contentChanged) {
+				diff.modified.add(change);
+			}
+			if (!isMoved[i] && !titleChanged && !contentChanged) {
+				diff.unchanged++;
+			}
+		}
+		for (int j = 0; j < b.size; j++) {
+			if (matchB[j] < 0) {
+				diff.added.add(new ArticleChange(null, b.articles[j], false, false, false));
+			}
+		}
+
+		Log.log(8, "(DocumentDiff.compare) compared " + a.size + " to " + b.size + " articles, time = "
+				+ (System.currentTimeMillis() - time) + " ms; " + diff);
+		return diff;
+	}
+
+	/** Matches the articles of the given documents.
+	 *
+	 * @param docA {@code PadDocument}
+	 * @param docB {@code PadDocument}
+	 * @return {@code Matching}
+	 */
+	static Matching match (PadDocument docA, PadDocument docB) {
+		Matching m = new Matching();
+		Tree a = m.a = new Tree(docA);
+		Tree b = m.b = new Tree(docB);
+		int[] matchA = m.matchA = new int[a.size];
+		int[] matchB = m.matchB = new int[b.size];
+		Arrays.fill(matchA, -1);
+		Arrays.fill(matchB, -1);
+
+		// stage 1: match by UUID
+		Map<UUID, Integer> uuids = new HashMap<>(b.size * 2);
+		for (int j = 0; j < b.size; j++) {
+			uuids.put(b.articles[j].getUUID(), j);
+		}
+		for (int i = 0; i < a.size; i++) {
+			Integer j = uuids.get(a.articles[i].getUUID());
+			if (j != null) {
+				matchA[i] = j;
+				matchB[j] = i;
+			}
+		}
+
+		// stage 2: match by title path and content, stage 3: match by content,
+		// stage 4: match by title path (modified articles)
+		matchByKey(a, b, matchA, matchB, true, true);
+		matchByKey(a, b, matchA, matchB, false, true);
+		matchByKey(a, b, matchA, matchB, true, false);
+
+		// stage 5: match the root articles (changed title and content)
+		if (a.size > 0 && b.size > 0 && matchA[0] < 0 && matchB[0] < 0) {
+			matchA[0] = 0;
+			matchB[0] = 0;
+		}
+
+		// stage 6: match by title below matched parents (renamed ancestors)
+		Map<String, List<Integer>> map = new HashMap<>();
+		for (int j = 0; j < b.size; j++) {
+			if (matchB[j] > -1) continue;
+			String key = b.parent[j] + ":" + b.articles[j].getTitle();
+			map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(j);
+		}
+		for (int i = 0; i < a.size && !map.isEmpty(); i++) {
+			int p = a.parent[i];
+			if (matchA[i] > -1 || (p > -1 && matchA[p] < 0)) continue;
+			String key = (p < 0 ? -1 : matchA[p]) + ":" + a.articles[i].getTitle();
+			List<Integer> list = map.get(key);
+			if (list == null || list.isEmpty()) continue;
+			int j = list.remove(0);
+			matchA[i] = j;
+			matchB[j] = i;
+		}
+		return m;
+	}
+
+	/** Matches unmatched articles of equal title path, equal content or
+	 * both. Candidates of equal key are paired in document order. Articles
+	 * with empty content are not matched by content alone.
+	 */
+	private static void matchByKey (Tree a, Tree b, int[] matchA, int[] matchB, 
+			boolean byPath, boolean byContent) {
+		Map<String, List<Integer>> map = new HashMap<>();
+		for (int j = 0; j < b.size; j++) {
+			if (matchB[j] > -1) continue;
+			String key = byPath ? b.getPath(j) : b.articles[j].getContent();
+			if (key == null || key.isEmpty()) continue;
+			map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(j);
+		}
+		if (map.isEmpty()) return;
+
+		for (int i = 0; i < a.size; i++) {
+			if (matchA[i] > -1) continue;
+			String key = byPath ? a.getPath(i) : a.articles[i].getContent();
+			List<Integer> list = key == null ? null : map.get(key);
+			if (list == null || list.isEmpty()) continue;
+
+			// within a title path, require the candidate of equal content
+			int k = 0;
+			if (byPath && byContent) {
+				String content = a.articles[i].getContent();
+				while (k < list.size() && !Objects.equals(content, b.articles[list.get(k)].getContent())) {
+					k++;
+				}
+				if (k == list.size()) continue;
+			}
+			int j = list.remove(k);
+			matchA[i] = j;
+			matchB[j] = i;
+		}
+	}
+
+	/** Marks matched articles which changed their parent or their order
+	 * among siblings. The order is kept for the longest increasing sequence
+	 * of original positions among the siblings of a parent.
+	 */
+	private static void findMoves (Tree a, Tree b, int[] matchA, int[] matchB, boolean[] isMoved) {
+		// siblings by parent in the new document, with unchanged parent
+		Map<Integer, List<Integer>> groups = new HashMap<>();
+		for (int j = 0; j < b.size; j++) {
+			int i = matchB[j];
+			if (i < 0) continue;
+			int pa = a.parent[i], pb = b.parent[j];
+			boolean sameParent = pa < 0 ? pb < 0 : matchA[pa] == pb;
+			if (sameParent) {
+				groups.computeIfAbsent(pb, k -> new ArrayList<>()).add(i);
+			} else {
+				isMoved[i] = true;
+			}
+		}
+
+		// siblings off the longest increasing sequence are moved
+		for (List<Integer> list : groups.values()) {
+			if (list.size() < 2) continue;
+			boolean[] inSequence = longestIncreasing(list);
+			for (int k = 0; k < list.size(); k++) {
+				if (!inSequence[k]) {
+					isMoved[list.get(k)] = true;
+				}
+			}
+		}
+	}
+
+	/** Returns the members of a longest increasing subsequence. */
+	private static boolean[] longestIncreasing (List<Integer> list) {
+		int n = list.size();
+		int[] tails = new int[n];
+		int[] prev = new int[n];
+		int len = 0;
+		for (int k = 0; k < n; k++) {
+			int v = list.get(k);
+			int lo = 0, hi = len;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (list.get(tails[mid]) < v) lo = mid + 1; else hi = mid;
+			}
+			prev[k] = lo > 0 ? tails[lo - 1] : -1;
+			tails[lo] = k;
+			if (lo == len) len++;
+		}
+		boolean[] result = new boolean[n];
+		for (int k = len > 0 ? tails[len - 1] : -1; k > -1; k = prev[k]) {
+			result[k] = true;
+		}
+		return result;
+	}
+
+	/** Returns the articles of the new version which are not contained in
+	 * the old version.
+	 *
+	 * @return {@code List<ArticleChange>}
+	 */
+	public List<ArticleChange> getAdded () {return added;}
+
+	/** Returns the articles of the old version which are not contained in
+	 * the new version.
+	 *
+	 * @return {@code List<ArticleChange>}
+	 */
+	public List<ArticleChange> getRemoved () {return removed;}
+
+	/** Returns the articles which changed their position in the tree.
+	 *
+	 * @return {@code List<ArticleChange>}
+	 */
+	public List<ArticleChange> getMoved () {return moved;}
+
+	/** Returns the articles with changed title or text.
+	 *
+	 * @return {@code List<ArticleChange>}
+	 */
+	public List<ArticleChange> getModified () {return modified;}
+
+	/** Whether the two document versions have equal content and structure.
+	 *
+	 * @return boolean
+	 */
+	public boolean isEmpty () {
+		return added.isEmpty() && removed.isEmpty() && moved.isEmpty() && modified.isEmpty();
+	}
+
+	/** Returns a displayable summary of the changes.
+	 *
+	 * @return String
+	 */
+	public String getSummaryText () {
+		String text = ActionHandler.displayText("msg.diff.summary");
+		text = Util.substituteText(text, "$mod", String.valueOf(modified.size()));
+		text = Util.substituteText(text, "$add", String.valueOf(added.size()));
+		text = Util.substituteText(text, "$rem", String.valueOf(removed.size()));
+		text = Util.substituteText(text, "$mov", String.valueOf(moved.size()));
+		return text;
+	}
+
+	@Override
+	public String toString () {
+		return "modified = " + modified.size() + ", added = " + added.size() + ", removed = "
+				+ removed.size() + ", moved = " + moved.size() + ", unchanged = " + unchanged;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** The change of a single article between the two versions. */
+	public static class ArticleChange {
+		private PadArticle oldArticle;
+		private PadArticle newArticle;
+		private boolean moved;
+		private boolean titleChanged;
+		private boolean contentChanged;
+		private LineDiff lineDiff;
+
+		ArticleChange (PadArticle oldArticle, PadArticle newArticle, boolean moved,
+				boolean titleChanged, boolean contentChanged) {
+			this.oldArticle = oldArticle;
+			this.newArticle = newArticle;
+			this.moved = moved;
+			this.titleChanged = titleChanged;
+			this.contentChanged = contentChanged;
+		}
+
+		/** The article in the old version, null if added. */
+		public PadArticle getOldArticle () {return oldArticle;}
+
+		/** The article in the new version, null if removed. */
+		public PadArticle getNewArticle () {return newArticle;}
+
+		public boolean isMoved () {return moved;}
+
+		public boolean isTitleChanged () {return titleChanged;}
+
+		public boolean isContentChanged () {return contentChanged;}
+
+		/** Returns the line difference of the article texts or null if the
+		 * text is unchanged.
+		 *
+		 * @return {@code LineDiff} or null
+		 */
+		public synchronized LineDiff getLineDiff () {
+			if (!contentChanged) return null;
+			if (lineDiff == null) {
+				lineDiff = new LineDiff(oldArticle.getContent(), newArticle.getContent());
+			}
+			return lineDiff;
+		}
+	}
+
+	/** The article matching between two documents; arrays hold the index
+	 * of the matched article in the other document or -1.
+	 */
+	static class Matching {
+		Tree a, b;
+		int[] matchA, matchB;
+	}
+
+	/** The article list of a document with parent indices and title paths. */
+	static class Tree {
+		int size;
+		PadArticle[] articles;
+		int[] parent;
+		String[] path;
+
+		Tree (PadDocument doc) {
+			size = doc.getArticleCount();
+			articles = new PadArticle[size];
+			parent = new int[size];
+			int[] stack = new int[size + 1];
+			for (int i = 0; i < size; i++) {
+				PadArticle art = doc.getArticle(i);
+				int depth = Math.min(art.getOrderDepth(), i);
+				articles[i] = art;
+				parent[i] = depth == 0 ? -1 : stack[depth - 1];
+				stack[depth] = i;
+			}
+		}
+
+		/** Returns the title path of the given article. */
+		String getPath (int index) {
+			if (path == null) {
+				path = new String[size];
+				for (int i = 0; i < size; i++) {
+					String title = String.valueOf(articles[i].getTitle());
+					path[i] = parent[i] < 0 ? title : path[parent[i]] + '\u0000' + title;
+				}
+			}
+			return path[index];
+		}
+	}
+}
@@ -0,0 +1,510 @@
+/*
+*  File: DocumentMerge.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.ragna.core.DocumentDiff.Matching;
+import org.ragna.core.DocumentDiff.Tree;
+
+import kse.utilclass.misc.Log;
+
+/** Three-way merge of two versions of a document which derive from a
+ * common base version. Articles are matched between the versions as in
+ * {@code DocumentDiff}. Changes of titles, texts and parents which were
+ * made on only one side are merged automatically, as are articles added or
+ * unmodified articles deleted on either side. Changes made on both sides
+ * in different ways are reported as conflicts, which can be resolved for
+ * either side before the merged document is created.
+ *
+ * <p>The merge starts from the structure of "ours". A change of the sibling
+ * order made only in "theirs" is transferred; if the order was changed on
+ * both sides, the order of ours is kept. The merged document has a single
+ * root article; top-level articles which would result besides it are
+ * attached below it. This class has no GUI dependencies.
+ */
+public class DocumentMerge {
+
+	/** Kinds of merge conflict. */
+	public enum ConflictType {
+		/** The title was changed differently on both sides. */
+		TITLE,
+		/** The text was changed differently on both sides. */
+		CONTENT,
+		/** The article was deleted in ours and modified in theirs. */
+		DELETED_BY_OURS,
+		/** The article was deleted in theirs and modified in ours. */
+		DELETED_BY_THEIRS,
+		/** The article was moved to different parents on both sides. */
+		POSITION
+	}
+
+	/** The side whose version is taken for a conflict. */
+	public enum Resolution { OURS, THEIRS }
+
+	private PadDocument ours;
+	private Node root = new Node(null);
+	private List<Conflict> conflicts = new ArrayList<>();
+	private int mergedChanges;
+
+	private DocumentMerge (PadDocument ours) {
+		this.ours = ours;
+	}
+
+	/** Merges the changes of two document versions against their base.
+	 *
+	 * @param base {@code PadDocument} common base version
+	 * @param ours {@code PadDocument} first changed version
+	 * @param theirs {@code PadDocument} second changed version
+	 * @return {@code DocumentMerge}
+	 */
+	public static DocumentMerge merge (PadDocument base, PadDocument ours, PadDocument theirs) {
+		Objects.requireNonNull(base, "base is null");
+		Objects.requireNonNull(ours, "ours is null");
+		Objects.requireNonNull(theirs, "theirs is null");
+		long time = System.currentTimeMillis();
+		DocumentMerge merge = new DocumentMerge(ours);
+		merge.run(base, theirs);
+		Log.log(8, "(DocumentMerge.merge) merged changes = " + merge.mergedChanges + ", conflicts = "
+				+ merge.conflicts.size() + ", time = " + (System.currentTimeMillis() - time) + " ms");
+		return merge;
+	}
+
+	private void run (PadDocument base, PadDocument theirs) {
+		Matching bo = DocumentDiff.match(base, ours);
+		Matching bt = DocumentDiff.match(base, theirs);
+		Matching ot = DocumentDiff.match(ours, theirs);
+		Tree b = bo.a, o = bo.b, t = bt.b;
+
+		// the result tree starts as the tree of ours
+		Node[] oNode = new Node[o.size];
+		for (int j = 0; j < o.size; j++) {
+			oNode[j] = new Node(o.articles[j]);
+			(o.parent[j] < 0 ? root : oNode[o.parent[j]]).add(oNode[j], -1);
+		}
+		Node[] tNode = new Node[t.size];
+		boolean[] place = new boolean[t.size];
+
+		// merge articles of the base version
+		for (int i = 0; i < b.size; i++) {
+			int jo = bo.matchA[i], jt = bt.matchA[i];
+			PadArticle ba = b.articles[i];
+			if (jo > -1 && jt > -1) {
+				tNode[jt] = oNode[jo];
+				mergeText(oNode[jo], ba, o.articles[jo], t.articles[jt]);
+
+			} else if (jo > -1) {
+				// deleted in theirs
+				if (isUnchanged(ba, o.articles[jo])) {
+					oNode[jo].deleted = true;
+					mergedChanges++;
+				} else {
+					oNode[jo].deletion = addConflict(ConflictType.DELETED_BY_THEIRS, ba, o.articles[jo], null);
+				}
+
+			} else if (jt > -1 && !isUnchanged(ba, t.articles[jt])) {
+				// deleted in ours but modified in theirs
+				Node node = new Node(t.articles[jt]);
+				node.deletion = addConflict(ConflictType.DELETED_BY_OURS, ba, null, t.articles[jt]);
+				tNode[jt] = node;
+				place[jt] = true;
+			}
+		}
+
+		// articles added in theirs (in document order, parents first)
+		for (int j = 0; j < t.size; j++) {
+			if (bt.matchB[j] < 0) {
+				int jo = ot.matchB[j];
+				if (jo > -1 && bo.matchB[jo] < 0) {
+					// added on both sides
+					tNode[j] = oNode[jo];
+					mergeText(oNode[jo], null, o.articles[jo], t.articles[j]);
+					continue;
+				}
+				tNode[j] = new Node(t.articles[j]);
+				mergedChanges++;
+			} else if (!place[j]) {
+				continue;
+			}
+			Node parent = targetParent(t, tNode, j);
+			parent.add(tNode[j], insertIndex(t, tNode, j, parent));
+		}
+
+		// articles moved to another parent in theirs
+		for (int i = 0; i < b.size; i++) {
+			int jo = bo.matchA[i], jt = bt.matchA[i];
+			if (jo < 0 || jt < 0) continue;
+			int pb = b.parent[i];
+			boolean theirsMoved = pb < 0 ? t.parent[jt] > -1 : t.parent[jt] != bt.matchA[pb];
+			if (!theirsMoved) continue;
+			boolean oursMoved = pb < 0 ? o.parent[jo] > -1 : o.parent[jo] != bo.matchA[pb];
+
+			Node node = oNode[jo];
+			Node parent = targetParent(t, tNode, jt);
+			if (parent == node.parent || node.contains(parent)) continue;
+			Move move = new Move(node, parent, t, tNode, jt);
+			if (oursMoved) {
+				node.move = move;
+				move.conflict = addConflict(ConflictType.POSITION, b.articles[i], o.articles[jo], t.articles[jt]);
+			} else {
+				move.apply();
+				mergedChanges++;
+			}
+		}
+
+		// sibling orders changed in theirs, among articles which have the
+		// same parent in all versions
+		for (int i = 0; i < b.size; i++) {
+			int jo = bo.matchA[i], jt = bt.matchA[i];
+			if (jo < 0 || jt < 0) continue;
+			Node node = oNode[jo];
+			int pb = b.parent[i], pt = t.parent[jt];
+			Node baseParent = pb < 0 ? root : bo.matchA[pb] < 0 ? null : oNode[bo.matchA[pb]];
+			Node theirsParent = pt < 0 ? root : tNode[pt];
+			if (baseParent == node.parent && theirsParent == node.parent) {
+				node.baseIndex = i;
+				node.theirsIndex = jt;
+			}
+		}
+		List<Node> nodes = new ArrayList<>();
+		nodes.add(root);
+		root.collect(nodes);
+		for (Node node : nodes) {
+			if (mergeOrder(node)) {
+				mergedChanges++;
+			}
+		}
+	}
+
+	/** Takes over the order of theirs for the children of the given node
+	 * which exist in all versions, if ours kept their base order. The
+	 * positions of other children are not changed.
+	 * 
+	 * @return boolean true if the order was changed
+	 */
+	private static boolean mergeOrder (Node parent) {
+		List<Integer> slots = new ArrayList<>();
+		List<Node> common = new ArrayList<>();
+		for (int k = 0; k < parent.children.size(); k++) {
+			Node child = parent.children.get(k);
+			if (child.baseIndex > -1 && child.theirsIndex > -1) {
+				slots.add(k);
+				common.add(child);
+			}
+		}
+		if (common.size() < 2) return false;
+		
+		// ours must have the base order
+		for (int k = 1; k < common.size(); k++) {
+			if (common.get(k).baseIndex < common.get(k-1).baseIndex) return false;
+		}
+		
+		List<Node> sorted = new ArrayList<>(common);
+		sorted.sort((x, y) -> Integer.compare(x.theirsIndex, y.theirsIndex));
+		if (sorted.equals(common)) return false;
+		for (int k = 0; k < slots.size(); k++) {
+			parent.children.set(slots.get(k), sorted.get(k));
+		}
+		return true;
+	}
+
+	/** Merges title and text of an article matched in both versions. */
+	private void mergeText (Node node, PadArticle base, PadArticle oa, PadArticle ta) {
+		String bt = base == null ? null : base.getTitle();
+		String bc = base == null ? null : base.getContent();
+		switch (mergeValue(bt, oa.getTitle(), ta.getTitle())) {
+		case 1: node.title = ta.getTitle(); mergedChanges++; break;
+		case 2: node.titleConflict = addConflict(ConflictType.TITLE, base, oa, ta); break;
+		}
+		switch (mergeValue(bc, oa.getContent(), ta.getContent())) {
+		case 1: node.content = ta.getContent(); mergedChanges++; break;
+		case 2: node.contentConflict = addConflict(ConflictType.CONTENT, base, oa, ta); break;
+		}
+	}
+
+	/** Returns 0 if ours stays, 1 if theirs is taken and 2 for a conflict. */
+	private static int mergeValue (String base, String ours, String theirs) {
+		if (sameText(ours, theirs) || sameText(base, theirs)) return 0;
+		return sameText(base, ours) ? 1 : 2;
+	}
+
+	/** Compares texts by their (cached) hash values first. */
+	private static boolean sameText (String a, String b) {
+		if (a == null || b == null) return a == b;
+		return a.hashCode() == b.hashCode() && a.equals(b);
+	}
+
+	private static boolean isUnchanged (PadArticle base, PadArticle article) {
+		return sameText(base.getTitle(), article.getTitle()) && sameText(base.getContent(), article.getContent());
+	}
+
+	private Conflict addConflict (ConflictType type, PadArticle base, PadArticle oa, PadArticle ta) {
+		Conflict c = new Conflict(type, base, oa, ta);
+		conflicts.add(c);
+		return c;
+	}
+
+	/** Returns the result node which corresponds to the parent of the given
+	 * theirs article, or the nearest available ancestor.
+	 */
+	private Node targetParent (Tree t, Node[] tNode, int j) {
+		for (int p = t.parent[j]; p > -1; p = t.parent[p]) {
+			if (tNode[p] != null) return tNode[p];
+		}
+		// articles whose ancestors are gone are attached below the root article
+		return t.parent[j] < 0 || root.children.isEmpty() ? root : root.children.get(0);
+	}
+
+	/** Returns the insert position in the given parent, which follows the
+	 * result node of the preceding sibling in theirs.
+	 */
+	private static int insertIndex (Tree t, Node[] tNode, int j, Node parent) {
+		for (int k = j - 1; k > -1 && k > t.parent[j]; k--) {
+			if (t.parent[k] == t.parent[j]) {
+				int index = tNode[k] == null ? -1 : parent.children.indexOf(tNode[k]);
+				return index < 0 ? -1 : index + 1;
+			}
+		}
+		return 0;
+	}
+
+	/** Returns the list of conflicts of this merge.
+	 *
+	 * @return {@code List<Conflict>}
+	 */
+	public List<Conflict> getConflicts () {
+		return Collections.unmodifiableList(conflicts);
+	}
+
+	/** Returns the number of changes of theirs which were merged
+	 * automatically.
+	 *
+	 * @return int
+	 */
+	public int getMergedChanges () {
+		return mergedChanges;
+	}
+
+	/** Sets the resolution of all conflicts to the given side.
+	 *
+	 * @param resolution {@code Resolution}
+	 */
+	public void resolveAll (Resolution resolution) {
+		for (Conflict c : conflicts) {
+			c.setResolution(resolution);
+		}
+	}
+
+	/** Creates the merged document according to the current resolutions of
+	 * the conflicts. The document has UUID, encoding and key of ours.
+	 * This method should be called only once.
+	 *
+	 * @return {@code PadDocument}
+	 */
+	public PadDocument createDocument () {
+		// perform moves of conflicts resolved for theirs
+		List<Node> list = new ArrayList<>();
+		root.collect(list);
+		for (Node node : list) {
+			if (node.move != null && node.move.conflict.resolution == Resolution.THEIRS
+					&& !node.contains(node.move.parent)) {
+				node.move.apply();
+			}
+		}
+
+		PadDocument doc = new DefaultPadDocument(ours.getDocType(), ours.getUUID());
+		doc.setEncoding(ours.getEncoding());
+		List<PadArticle> articles = new ArrayList<>();
+		for (Node node : root.children) {
+			emit(doc, articles, node, null);
+		}
+		doc.appendArticles(articles.toArray(new PadArticle[articles.size()]));
+		if (ours.isEncrypted()) {
+			doc.setEncrypted(ours.getPassphrase());
+		}
+		return doc;
+	}
+
+	/** Creates the articles of the given node and its children in document
+	 * order and adds them to the given list.
+	 */
+	private void emit (PadDocument doc, List<PadArticle> list, Node node, PadArticle parent) {
+		PadArticle article = parent;
+		if (node.isIncluded()) {
+			// a document has a single root, further top-level articles go below it
+			if (parent == null && !list.isEmpty()) {
+				parent = list.get(0);
+			}
+			article = doc.createArticle(parent);
+			list.add(article);
+			article.setTitle(node.getTitle());
+			article.setContent(node.getContent());
+			String serial = node.source.getPropertySerial();
+			if (serial != null) {
+				article.putPropertySerial(serial);
+			}
+		}
+		for (Node child : node.children) {
+			emit(doc, list, child, article);
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** A conflicting change of an article. The default resolution keeps
+	 * the modified article for deletion conflicts and ours for all other
+	 * conflicts.
+	 */
+	public static class Conflict {
+		private ConflictType type;
+		private PadArticle base, ours, theirs;
+		private Resolution resolution;
+
+		Conflict (ConflictType type, PadArticle base, PadArticle ours, PadArticle theirs) {
+			this.type = type;
+			this.base = base;
+			this.ours = ours;
+			this.theirs = theirs;
+			resolution = type == ConflictType.DELETED_BY_OURS ? Resolution.THEIRS : Resolution.OURS;
+		}
+
+		public ConflictType getType () {return type;}
+
+		/** The article in the base version, null if added on both sides. */
+		public PadArticle getBase () {return base;}
+
+		/** The article in ours, null if deleted there. */
+		public PadArticle getOurs () {return ours;}
+
+		/** The article in theirs, null if deleted there. */
+		public PadArticle getTheirs () {return theirs;}
+
+		public Resolution getResolution () {return resolution;}
+
+		public void setResolution (Resolution resolution) {
+			this.resolution = Objects.requireNonNull(resolution);
+		}
+
+		/** Returns the title of the article in the most recent version. */
+		public String getTitle () {
+			return (theirs != null ? theirs : ours).getTitle();
+		}
+
+		@Override
+		public String toString () {
+			return type + ": " + getTitle();
+		}
+	}
+
+	/** A move of a node to another parent, following a given sibling. */
+	private static class Move {
+		Node node, parent;
+		Node after;
+		boolean first;
+		Conflict conflict;
+
+		Move (Node node, Node parent, Tree t, Node[] tNode, int j) {
+			this.node = node;
+			this.parent = parent;
+			first = insertIndex(t, tNode, j, parent) == 0;
+			for (int k = j - 1; !first && k > t.parent[j]; k--) {
+				if (t.parent[k] == t.parent[j]) {
+					after = tNode[k];
+					break;
+				}
+			}
+		}
+
+		void apply () {
+			node.parent.children.remove(node);
+			int index = after == null ? -1 : parent.children.indexOf(after);
+			parent.add(node, first ? 0 : index < 0 ? -1 : index + 1);
+		}
+	}
+
+	/** An article of the merge result. */
+	private static class Node {
+		PadArticle source;
+		String title, content;
+		Node parent;
+		List<Node> children = new ArrayList<>(0);
+		boolean deleted;
+		Conflict titleConflict, contentConflict, deletion;
+		Move move;
+		/** article index in base and theirs if the parent is the same in all versions */
+		int baseIndex = -1, theirsIndex = -1;
+
+		Node (PadArticle source) {
+			this.source = source;
+			if (source != null) {
+				title = source.getTitle();
+				content = source.getContent();
+			}
+		}
+
+		void add (Node child, int index) {
+			child.parent = this;
+			if (index < 0 || index > children.size()) {
+				children.add(child);
+			} else {
+				children.add(index, child);
+			}
+		}
+
+		/** Whether the given node is this node or one of its descendants. */
+		boolean contains (Node node) {
+			for (Node n = node; n != null; n = n.parent) {
+				if (n == this) return true;
+			}
+			return false;
+		}
+
+		void collect (List<Node> list) {
+			for (Node child : children) {
+				list.add(child);
+				child.collect(list);
+			}
+		}
+
+		boolean isIncluded () {
+			if (deleted) return false;
+			if (deletion == null) return true;
+			return deletion.resolution == (deletion.type == ConflictType.DELETED_BY_OURS
+					? Resolution.THEIRS : Resolution.OURS);
+		}
+
+		String getTitle () {
+			return titleConflict != null && titleConflict.resolution == Resolution.THEIRS
+					? titleConflict.theirs.getTitle() : title;
+		}
+
+		String getContent () {
+			return contentConflict != null && contentConflict.resolution == Resolution.THEIRS
+					? contentConflict.theirs.getContent() : content;
+		}
+	}
+}
@@ -92,6 +92,10 @@ public class Global {
    public static final String DEFAULT_HISTORY_DIR_NAME = "safe";
    public static final String DEFAULT_MIRROR_DIR_NAME = "mirrors";
    public static final int DEFAULT_MIRROR_CHECK_PERIOD = 120;
+   /** Maximum time waited on exit for pending file history copies (ms). */
+   private static final long HISTORY_FLUSH_TIMEOUT = 30000;
+   /** Delay of non-critical services after the GUI has started (ms). */
+   private static final int DEFERRED_SERVICES_DELAY = 5000;
    
    /** The application's default frame size. */
    public static final Dimension DEFAULT_FRAME_DIM = new Dimension(600, 480);
@@ -309,6 +313,8 @@ public class Global {
     * @param args
     */
    public static void main( String[] args ) {
+      StartupProfile.phase("JVM launch");
+      
       // run the application
       StartupHandler.startup_background( args );
       StartupHandler.startup_front();
@@ -333,6 +339,14 @@ public class Global {
       ActionHandler.get().exit();
       timer.cancel();
       
+      // complete pending file history copies
+      try {
+    	  if (!IO_Manager.get().getHistoryWriter().flush(HISTORY_FLUSH_TIMEOUT)) {
+    		  consoleLn("# file history incomplete, pending: " + IO_Manager.get().getHistoryWriter().getQueueDepth());
+    	  }
+      } catch (InterruptedException e) {
+      }
+      
       systemOptions.setIntOption("lastAccessTime", (int)(System.currentTimeMillis() / 1000));
       saveSystemOptions();
       
@@ -376,6 +390,7 @@ private static class StartupHandler {
          e.printStackTrace();
          System.exit(2);
       }
+      StartupProfile.phase("directories");
 
       // initialise low-levels
       boolean isDebug = DEBUG_LEVEL > 0;
@@ -390,6 +405,7 @@ private static class StartupHandler {
       
       // interpret the command line 
       digest_commandline(args);
+      StartupProfile.phase("command line");
 
       // control application directory
       if (Util.ensureDirectory(applicationDir, null)) {
@@ -404,6 +420,7 @@ private static class StartupHandler {
       systemOptions = OptionHandler.loadSystemOptions();
 	  assert systemOptions != null;
       systemOptions.addPropertyChangeListener(optionHandler);
+      StartupProfile.phase("options load");
       
       // report ORPHAN documents memory
       List<String> list = systemOptions.getStringList("list-new-docs");
@@ -472,6 +489,7 @@ private static class StartupHandler {
     	  }
       }
 	  assert exchangeDir != null;
+      StartupProfile.phase("user directories");
       
       // load resources
       res = ResourceLoader.get();
@@ -479,6 +497,7 @@ private static class StartupHandler {
       res.addResourcePath( resourcePath );
       res.addResourcePath( "" );
       res.init ();
+      StartupProfile.phase("resources");
       
       // basic application classes
       try {
@@ -489,22 +508,17 @@ private static class StartupHandler {
     	  e.printStackTrace();
     	  System.exit(4);
       }
-
-      // start task to promote file history system
-      Runnable run = new Runnable () {
-    	  @Override
-    	  public void run() {
-    		  IO_Manager.get().promoteHistory();
-    	  }
-      };
-      ActionHandler.get().scheduleWorkerTask(run, "File History Promotion");
+      StartupProfile.phase("system classes");
       
       // identify the MIRROR directory and create the manager
       if (mirrorDir == null) {
          mirrorDir = new File(applicationDir, DEFAULT_MIRROR_DIR_NAME);
       }
       try {
-    	  mirrorFileManager = new MirrorFileManager(mirrorDir, mirrorCheckPeriod);
+    	  // adaptive scheduling needs a short check period to release changes
+    	  int period = systemOptions.isOptionSet("adaptiveMirroring") ? MirrorScheduler.TICK_PERIOD 
+    			  : mirrorCheckPeriod;
+    	  mirrorFileManager = new MirrorFileManager(mirrorDir, period);
     	  if (!systemOptions.isOptionSet("useMirroring")) {
     		  mirrorFileManager.setActive(false);
     	  }
@@ -513,6 +527,7 @@ private static class StartupHandler {
     	  consoleLn("    " + e);
     	  System.exit(4);
       }
+      StartupProfile.phase("mirror manager");
 
       // load recent files menu
       recentFilesMenu = new RecentFilesStack("Recent Files", 16);
@@ -521,20 +536,25 @@ private static class StartupHandler {
       recentFilesMenu.loadStringContent(content, ';');
       IO_Manager.get().addPropertyChangeListener(recentFilesMenu);
       Log.debug(5, "(StartupHandler) loading recent files with: ".concat(content));
+      StartupProfile.phase("recent files");
    }
 
    private static void startup_front () {
       swingInit();
+      StartupProfile.phase("swing init");
       
       consoleLn("# RAGNA initialised, starting GUI ..");
       
       // start Action system
       ActionHandler.get();
+      StartupProfile.phase("action system");
       
       DisplayManager.get().init();
+      StartupProfile.phase("main frame");
       
       // start periodic system services
       SystemService.get();
+      StartupProfile.phase("system services");
    }
 
    private static void start_autorun () {
@@ -552,12 +572,32 @@ private static class StartupHandler {
 	         }
 	      }
 	      
+	      StartupProfile.phase("session scheduled");
+	      
+	      // non-critical services run after the GUI has settled
+	      // start task to promote file history system
+	      Runnable run = new Runnable () {
+	    	  @Override
+	    	  public void run() {
+	    		  IO_Manager.get().promoteHistory();
+	    	  }
+	      };
+	      startTaskDelayed(run, "File History Promotion", DEFERRED_SERVICES_DELAY);
+	      
 	      // control orphan documents (unsaved NEW)
-	      List<String> olist = options.getStringList("list-new-docs");
+	      final List<String> olist = options.getStringList("list-new-docs");
 	      for (String uuid : olist) {
 	    	  Log.debug(5, "(Global.autorun) ** ORPHAN MIRROR marker = " + uuid);
 	      }
-	      ActionHandler.get().controlOrphanMirrors(olist);
+	      if (!olist.isEmpty()) {
+		      run = new Runnable () {
+		    	  @Override
+		    	  public void run() {
+		    		  ActionHandler.get().controlOrphanMirrors(olist);
+		    	  }
+		      };
+		      startTaskDelayed(run, "Control Orphan Mirrors", DEFERRED_SERVICES_DELAY);
+	      }
 	      
 	      // control identity of history directory
 	      String option = systemOptions.getOption("historyDir");
@@ -588,7 +628,7 @@ private static class StartupHandler {
       
       // interpret the command line (catch program arguments) 
       cmlHandler = new CommandlineHandler( CommandlineHandler.Organisation.TRAILING );
-      cmlHandler.setUnaryOptions("-h -help --h --help -m");
+      cmlHandler.setUnaryOptions("-h -help --h --help -m --startup-profile");
       try { 
          cmlHandler.digest(args); 
       } catch ( IllegalStateException e ) {
@@ -609,6 +649,11 @@ private static class StartupHandler {
          System.exit(0);
       }
       
+      // report startup phases on the console
+      if ( cmlHandler.hasOption("--startup-profile") ) {
+         StartupProfile.setConsole(true);
+      }
+      
       // a language parameter
       String lng = cmlHandler.getOption("-l");
       if (lng != null) {
@@ -691,6 +736,7 @@ private static class StartupHandler {
       consoleLn( "-l [de|en]\t\tGUI language selection" );
       consoleLn( "-o [file]\t\trefer to/create the given option file" );
       consoleLn( "-s [directory]\t\tspecial file-safety directory" );
+      consoleLn( "--startup-profile\treport durations of startup phases" );
    }
    
    /** Error-tolerant check for Java VM version to comply with this software. 
@@ -0,0 +1,208 @@
+/*
+*  File: LineDiff.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Line-level difference of two texts by the Myers O(ND) algorithm. Lines
+ * are compared as integer symbols; a common prefix and suffix of lines is
+ * removed before the search. If the texts differ by more than
+ * {@code MAX_EDITS} lines, the remaining section is reported as a single
+ * replacement.
+ */
+public class LineDiff {
+
+	/** Maximum edit distance searched in detail. */
+	private static final int MAX_EDITS = 1000;
+
+	private String[] oldLines;
+	private String[] newLines;
+	private List<Delta> deltas = new ArrayList<>();
+
+	/** Computes the line difference of the given texts.
+	 *
+	 * @param oldText String original text
+	 * @param newText String changed text
+	 */
+	public LineDiff (String oldText, String newText) {
+		Objects.requireNonNull(oldText, "oldText is null");
+		Objects.requireNonNull(newText, "newText is null");
+		oldLines = oldText.split("\n", -1);
+		newLines = newText.split("\n", -1);
+
+		// map lines to symbols
+		Map<String, Integer> symbols = new HashMap<>();
+		int[] a = new int[oldLines.length];
+		int[] b = new int[newLines.length];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = symbols.computeIfAbsent(oldLines[i], s -> symbols.size());
+		}
+		for (int i = 0; i < b.length; i++) {
+			b[i] = symbols.computeIfAbsent(newLines[i], s -> symbols.size());
+		}
+
+		// strip common prefix and suffix
+		int start = 0;
+		while (start < a.length && start < b.length && a[start] == b[start]) start++;
+		int endA = a.length, endB = b.length;
+		while (endA > start && endB > start && a[endA - 1] == b[endB - 1]) {
+			endA--;
+			endB--;
+		}
+		if (start < endA || start < endB) {
+			compare(Arrays.copyOfRange(a, start, endA), Arrays.copyOfRange(b, start, endB), start);
+		}
+	}
+
+	/** Runs the Myers search on the given symbol sequences and creates the
+	 * deltas, line positions are shifted by offset.
+	 */
+	private void compare (int[] a, int[] b, int offset) {
+		int n = a.length, m = b.length;
+		int max = Math.min(n + m, MAX_EDITS);
+		int off = max + 1;
+		int[] v = new int[2 * max + 3];
+		List<int[]> trace = new ArrayList<>();
+		int found = -1;
+
+		for (int d = 0; d <= max && found < 0; d++) {
+			for (int k = -d; k <= d; k += 2) {
+				int x = k == -d || (k != d && v[off + k - 1] < v[off + k + 1]) ? v[off + k + 1]
+						: v[off + k - 1] + 1;
+				int y = x - k;
+				while (x < n && y < m && a[x] == b[y]) {
+					x++;
+					y++;
+				}
+				v[off + k] = x;
+				if (x >= n && y >= m) {
+					found = d;
+					break;
+				}
+			}
+			trace.add(Arrays.copyOfRange(v, off - d, off + d + 1));
+		}
+		if (found < 0) {
+			// too many differences, report as one replacement
+			deltas.add(new Delta(offset, offset + n, offset, offset + m));
+			return;
+		}
+
+		// backtrack the edit path
+		boolean[] deleted = new boolean[n];
+		boolean[] inserted = new boolean[m];
+		int x = n, y = m;
+		for (int d = found; d > 0; d--) {
+			int[] prev = trace.get(d - 1);
+			int k = x - y;
+			int pk = k == -d || (k != d && prev[k - 1 + d - 1] < prev[k + 1 + d - 1]) ? k + 1 : k - 1;
+			int px = prev[pk + d - 1];
+			int py = px - pk;
+			while (x > px && y > py) {
+				x--;
+				y--;
+			}
+			if (pk == k + 1) {
+				inserted[py] = true;
+			} else {
+				deleted[px] = true;
+			}
+			x = px;
+			y = py;
+		}
+
+		// collect runs of edits as deltas
+		int i = 0, j = 0;
+		while (i < n || j < m) {
+			if (i < n && j < m && !deleted[i] && !inserted[j]) {
+				i++;
+				j++;
+				continue;
+			}
+			int si = i, sj = j;
+			while (i < n && deleted[i]) i++;
+			while (j < m && inserted[j]) j++;
+			deltas.add(new Delta(offset + si, offset + i, offset + sj, offset + j));
+		}
+	}
+
+	/** Returns the list of changed line sections in ascending order.
+	 *
+	 * @return {@code List<Delta>}
+	 */
+	public List<Delta> getDeltas () {
+		return deltas;
+	}
+
+	/** Returns the lines of the original text.
+	 *
+	 * @return String[]
+	 */
+	public String[] getOldLines () {
+		return oldLines;
+	}
+
+	/** Returns the lines of the changed text.
+	 *
+	 * @return String[]
+	 */
+	public String[] getNewLines () {
+		return newLines;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** A section of lines of the original text which is replaced by a
+	 * section of lines of the changed text. Either section may be empty.
+	 * End positions are exclusive.
+	 */
+	public static class Delta {
+		private int oldStart, oldEnd, newStart, newEnd;
+
+		Delta (int oldStart, int oldEnd, int newStart, int newEnd) {
+			this.oldStart = oldStart;
+			this.oldEnd = oldEnd;
+			this.newStart = newStart;
+			this.newEnd = newEnd;
+		}
+
+		public int getOldStart () {return oldStart;}
+
+		public int getOldEnd () {return oldEnd;}
+
+		public int getNewStart () {return newStart;}
+
+		public int getNewEnd () {return newEnd;}
+
+		@Override
+		public String toString () {
+			return "-" + oldStart + "," + (oldEnd - oldStart) + " +" + newStart + "," + (newEnd - newStart);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+*  File: MirrorScheduler.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+/** Decides when a changed document is released for a full mirror write.
+ * The mirror file manager checks its documents every {@code TICK_PERIOD}
+ * seconds; a change is only released to it when
+ * <ul>
+ * <li>the document has not been edited for a debounce time,</li>
+ * <li>the document's mirror interval has passed, which grows with the
+ * measured duration of its last mirror write, and</li>
+ * <li>the time spent writing mirrors of all documents stays below a
+ * maximum share of the elapsed time.</li>
+ * </ul>
+ * Regardless of these conditions, a change is released when it has waited
+ * for the maximum delay given by option "mirrorMaxDelay" (seconds), which
+ * limits the window of data loss.
+ */
+public class MirrorScheduler {
+
+	/** Check period of the mirror file manager in seconds. */
+	public static final int TICK_PERIOD = 10;
+
+	/** Time without edits before a change is released (ms). */
+	private static final long DEBOUNCE_TIME = 5000;
+	/** Minimum time between mirror writes of a document (ms). */
+	private static final long MIN_INTERVAL = 30000;
+	/** Maximum share of time spent writing mirrors. */
+	private static final double IO_SHARE = 0.05;
+
+	/** Time before which no further mirror is released (bandwidth cap). */
+	private static long ioBlockedUntil;
+
+	private long firstChange;
+	private long lastMirror;
+	private long lastDuration;
+
+	/** Returns the maximum time a change waits for its mirror (ms).
+	 *
+	 * @return long milliseconds
+	 */
+	public static long getMaxDelay () {
+		int seconds = Global.getOptions().getIntOption("mirrorMaxDelay");
+		return Math.max(TICK_PERIOD, seconds > 0 ? seconds : Global.DEFAULT_MIRROR_CHECK_PERIOD) * 1000L;
+	}
+
+	/** Notifies this scheduler of an unmirrored change of its document.
+	 *
+	 * @param time long time of the change
+	 */
+	public synchronized void changed (long time) {
+		if (firstChange == 0) {
+			firstChange = time;
+		}
+	}
+
+	/** Whether the waiting change is to be released for a mirror write now.
+	 * If true is returned, the change counts as released.
+	 *
+	 * @param editTime long time of the last edit of the document
+	 * @return boolean
+	 */
+	public boolean release (long editTime) {
+		synchronized (MirrorScheduler.class) {
+			synchronized (this) {
+				if (firstChange == 0) return false;
+				long now = System.currentTimeMillis();
+				long maxDelay = getMaxDelay();
+				if (now - firstChange < maxDelay) {
+					if (now - editTime < DEBOUNCE_TIME) return false;
+					long interval = Math.min(maxDelay, Math.max(MIN_INTERVAL, (long) (lastDuration / IO_SHARE)));
+					if (now - lastMirror < interval || now < ioBlockedUntil) return false;
+				}
+				firstChange = 0;
+				return true;
+			}
+		}
+	}
+
+	/** Records the duration of a mirror write of this scheduler's document.
+	 *
+	 * @param start long start time of the write
+	 * @param end long end time of the write
+	 */
+	public void mirrorWritten (long start, long end) {
+		synchronized (MirrorScheduler.class) {
+			synchronized (this) {
+				lastMirror = end;
+				lastDuration = Math.max(0, end - start);
+				long pause = (long) (lastDuration * (1 - IO_SHARE) / IO_SHARE);
+				ioBlockedUntil = Math.max(ioBlockedUntil, end + pause);
+			}
+		}
+	}
+}
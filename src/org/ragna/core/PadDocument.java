@@ -477,6 +477,15 @@ public interface PadDocument extends Iterable<PadArticle> {
     * @throws ResourceAllocationException
     */
    PadArticle newArticle (PadArticle parent, boolean child);
+   
+   /** Creates a new article with the layout settings of the given parent
+    * article, or of this document if parent is null, without adding it to
+    * this document. The article's parent is set to the given parent.
+    * 
+    * @param parent <code>PadArticle</code> parent of the new article or null
+    * @return <code>PadArticle</code>
+    */
+   PadArticle createArticle (PadArticle parent);
 
    /** Returns a shallow clone of this document with identical reference to 
     * data sections and listeners, but with a new UUID. A shallow copy
@@ -604,6 +613,20 @@ public interface PadDocument extends Iterable<PadArticle> {
     */
    void insertArticleAt (PadArticle parent, int index, PadArticle[] arr);
    
+   /**
+    * Appends a sequence of articles to the end of the article list in the
+    * given order. The parent of each article must be set and be the root
+    * for an empty document or otherwise an ancestor of, or identical to,
+    * the preceding article. Other than adding single articles, the cost of
+    * this operation grows only linearly with the size of the document; a
+    * single structure change is reported to tree model listeners.
+    * 
+    * @param arr array of <code>PadArticle</code> in document order
+    * @throws IllegalArgumentException if an article is already contained
+    *          or its parent does not fit the position
+    */
+   void appendArticles (PadArticle[] arr);
+   
    /** Returns the list index of the given article or -1 if the
     * parameter is <code>null</code> or not found in the article list.
     * <p><small>The graph ordering of articles in a document is flattened
@@ -0,0 +1,124 @@
+/*
+*  File: RegistryArticleIndex.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+
+package org.ragna.core;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/** Base of the in-memory article indices which follow the documents of the
+ * global {@code DocumentRegistry}. It listens to registry events and to the
+ * article events of all registered documents and reports added, changed and
+ * removed articles to the subclass.
+ */
+abstract class RegistryArticleIndex {
+
+	private final boolean followContent;
+	private final DocumentListener docListener = new DocumentListener();
+
+	/** Creates a new index base.
+	 *
+	 * @param followContent boolean true = article content modifications are
+	 *        reported as changes, false = only titles are followed
+	 */
+	RegistryArticleIndex (boolean followContent) {
+		this.followContent = followContent;
+	}
+
+	/** Attaches this index to the document registry and adds the documents
+	 * currently registered. Subclasses call this at the end of their
+	 * construction.
+	 */
+	protected void attach () {
+		DocumentRegistry registry = Global.getDocumentRegistry();
+		registry.addPropertyChangeListener(new RegistryListener());
+		for (PadDocument doc : registry) {
+			addDocument(doc);
+		}
+	}
+
+	/** Called when the given article is added to an indexed document or
+	 * its title (or content, if followed) is changed.
+	 *
+	 * @param article {@code PadArticle}
+	 */
+	protected abstract void articleChanged (PadArticle article);
+
+	/** Called when the given article is removed from the index.
+	 *
+	 * @param article {@code PadArticle}
+	 */
+	protected abstract void articleRemoved (PadArticle article);
+
+	private synchronized void addDocument (PadDocument doc) {
+		doc.addPropertyChangeListener(docListener);
+		for (PadArticle art : doc) {
+			articleChanged(art);
+		}
+	}
+
+	private synchronized void removeDocument (PadDocument doc) {
+		doc.removePropertyChangeListener(docListener);
+		for (PadArticle art : doc) {
+			articleRemoved(art);
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	private class RegistryListener implements PropertyChangeListener {
+
+		@Override
+		public void propertyChange (PropertyChangeEvent evt) {
+			String name = evt.getPropertyName();
+
+			if ("documentAdded".equals(name)) {
+				addDocument((PadDocument) evt.getNewValue());
+
+			} else if ("documentRemoved".equals(name)) {
+				removeDocument((PadDocument) evt.getNewValue());
+
+			} else if ("documentReplaced".equals(name)) {
+				removeDocument((PadDocument) evt.getOldValue());
+				addDocument((PadDocument) evt.getNewValue());
+			}
+		}
+	}
+
+	private class DocumentListener implements PropertyChangeListener {
+
+		@Override
+		public void propertyChange (PropertyChangeEvent evt) {
+			String name = evt.getPropertyName();
+
+			if ("articleAdded".equals(name) || "articleTitleChanged".equals(name)
+				|| (followContent && "articleModified".equals(name))) {
+				articleChanged((PadArticle) evt.getNewValue());
+
+			} else if ("articleRemoved".equals(name)) {
+				articleRemoved((PadArticle) evt.getNewValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+*  File: SessionLoader.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ragna.io.IO_Manager;
+import org.ragna.io.SessionSnapshot;
+
+import kse.com.fhash.main.Functions;
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.Util;
+
+/** Loads the document files of a program session. The files are first 
+ * probed for encryption and known keys, then the passphrases of the 
+ * remaining encrypted files are requested, where each entered passphrase is
+ * tried on all pending files. Finally all files are restored from the
+ * session snapshot, or decrypted and parsed if the snapshot is not valid for
+ * them, concurrently. User interaction is performed by a {@code Client},
+ * so this class has no GUI dependencies.
+ */
+class SessionLoader {
+
+	private final IO_Manager ioMan;
+	private final Client client;
+	private final List<File> files = new ArrayList<>();
+	private final List<File> locked = new ArrayList<>();
+	private final Map<File, byte[]> keys = new HashMap<>();
+
+	/** Creates a new session loader.
+	 * 
+	 * @param ioMan {@code IO_Manager}
+	 * @param client {@code SessionLoader.Client} user interaction
+	 */
+	SessionLoader (IO_Manager ioMan, Client client) {
+		Objects.requireNonNull(ioMan);
+		Objects.requireNonNull(client);
+		this.ioMan = ioMan;
+		this.client = client;
+	}
+
+	/** Probes the given document files for existence, permission and
+	 * encryption. Encrypted files for which the client knows a key are
+	 * unlocked, the others remain locked. 
+	 * 
+	 * @param paths {@code List<String>} document files in session order
+	 */
+	void probe (List<String> paths) {
+		for (String path : paths) {
+			try {
+				File file = new File(path).getCanonicalFile();
+				if (!file.isFile() || !client.isPermitted(file)) continue;
+				files.add(file);
+				if (ioMan.isFileEncrypted(file)) {
+					byte[] key = client.findKey(file);
+					if (key == null) {
+						locked.add(file);
+					} else {
+						keys.put(file, key);
+					}
+				}
+			} catch (IOException e) {
+				client.fileFailed(new File(path), e);
+			}
+		}
+	}
+
+	/** Requests passphrases for the locked files until all of them are 
+	 * unlocked or skipped. Each passphrase is tried on all locked files. A
+	 * file which cannot be tested is dropped and reported to the client.
+	 */
+	void unlock () {
+		while (!locked.isEmpty()) {
+			File first = locked.get(0);
+			char[] passwd = client.requestPassphrase(first, locked.size());
+			if (passwd == null) {
+				// user cancelled: skip this file
+				locked.remove(first);
+				files.remove(first);
+				continue;
+			}
+			byte[] key = Functions.makeEncryptKey(passwd);
+			Util.destroy(passwd);
+
+			boolean matched = false;
+			for (Iterator<File> it = locked.iterator(); it.hasNext();) {
+				File file = it.next();
+				try {
+					if (ioMan.isValidSecretKey(file, key)) {
+						keys.put(file, key);
+						it.remove();
+						matched = true;
+					}
+				} catch (IOException e) {
+					Log.log(3, "(SessionLoader.unlock) unable to test passphrase on " + file + ": " + e);
+					it.remove();
+					files.remove(file);
+					client.fileFailed(file, e);
+				}
+			}
+			if (!matched) {
+				client.passphraseRejected();
+			}
+		}
+	}
+
+	/** Starts to load all unlocked files concurrently and returns the 
+	 * results in session order, corresponding to {@code getFiles()}. A 
+	 * document is restored from the given snapshot if it is valid for its 
+	 * file, otherwise the file is opened.
+	 * 
+	 * @param snapshot {@code SessionSnapshot}, may be null
+	 * @return {@code List<Future<PadDocument>>}
+	 */
+	List<Future<PadDocument>> open (SessionSnapshot snapshot) {
+		int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<PadDocument>> results = new ArrayList<>();
+		for (File file : files) {
+			byte[] key = keys.get(file);
+			results.add(executor.submit(() -> {
+				PadDocument doc = snapshot == null ? null : snapshot.restore(file, key);
+				return doc != null ? doc : ioMan.openDocument(file, key);
+			}));
+		}
+		executor.shutdown();
+		return results;
+	}
+
+	/** Returns the files to be loaded in session order.
+	 * 
+	 * @return {@code List<File>}
+	 */
+	List<File> getFiles () {
+		return files;
+	}
+
+	/** Returns the files which are still locked.
+	 * 
+	 * @return {@code List<File>}
+	 */
+	List<File> getLockedFiles () {
+		return locked;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** User interaction of a session loader. */
+	interface Client {
+
+		/** Whether the given file may be opened.
+		 * 
+		 * @param file File document file
+		 * @return boolean
+		 */
+		boolean isPermitted (File file);
+
+		/** Returns a known passphrase which is valid for the given encrypted
+		 * file.
+		 * 
+		 * @param file File encrypted document file
+		 * @return byte[] passphrase or null if not known
+		 * @throws IOException
+		 */
+		byte[] findKey (File file) throws IOException;
+
+		/** Requests a passphrase from the user. 
+		 * 
+		 * @param first File the first locked file
+		 * @param count int number of locked files
+		 * @return char[] passphrase or null to skip the first locked file
+		 */
+		char[] requestPassphrase (File first, int count);
+
+		/** Reports that an entered passphrase fits none of the locked files. */
+		void passphraseRejected ();
+
+		/** Reports a file which cannot be loaded.
+		 * 
+		 * @param file File document file
+		 * @param e Throwable the failure
+		 */
+		void fileFailed (File file, Throwable e);
+	}
+}
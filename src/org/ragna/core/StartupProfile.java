@@ -0,0 +1,123 @@
+/*
+*  File: StartupProfile.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import kse.utilclass.misc.Log;
+
+/** Records the duration of the phases of program startup. Each phase is
+ * closed with {@code phase()}, which logs its duration and the time since
+ * start of the Java VM; singular events, like the first document ready for
+ * edit, are recorded with {@code mark()}. With the commandline option
+ * "--startup-profile" the records are also written to the console.
+ */
+public final class StartupProfile {
+
+	private static final long startTime = getJvmStartTime();
+	private static long phaseTime = startTime;
+	private static boolean console;
+	private static Set<String> marks = new HashSet<>();
+	private static List<String> records = new ArrayList<>();
+
+	private StartupProfile () {
+	}
+
+	/** Sets whether phase records are written to the console. Records
+	 * made before are written when this is switched on.
+	 *
+	 * @param v boolean
+	 */
+	public static synchronized void setConsole (boolean v) {
+		if (v && !console) {
+			for (String text : records) {
+				Global.consoleLn(text);
+			}
+		}
+		console = v;
+	}
+
+	/** Whether phase records are written to the console.
+	 *
+	 * @return boolean
+	 */
+	public static boolean isConsole () {
+		return console;
+	}
+
+	/** Closes the current startup phase under the given name and starts the
+	 * next phase.
+	 *
+	 * @param name String phase name
+	 */
+	public static synchronized void phase (String name) {
+		long now = System.currentTimeMillis();
+		report(name, now - phaseTime, now - startTime);
+		phaseTime = now;
+	}
+
+	/** Records the first occurrence of the given event with its time since
+	 * program start. Further occurrences are ignored.
+	 *
+	 * @param event String event name
+	 */
+	public static synchronized void mark (String event) {
+		if (marks.add(event)) {
+			long now = System.currentTimeMillis();
+			record("# STARTUP " + event + " at " + (now - startTime) + " ms");
+		}
+	}
+
+	/** Returns the elapsed time since start of the Java VM.
+	 *
+	 * @return long milliseconds
+	 */
+	public static long getElapsedTime () {
+		return System.currentTimeMillis() - startTime;
+	}
+
+	private static void report (String name, long duration, long total) {
+		record(String.format("# STARTUP %-28s %6d ms  (%d ms)", name, duration, total));
+	}
+
+	private static void record (String text) {
+		records.add(text);
+		Log.log(3, "(StartupProfile) " + text);
+		if (console) {
+			Global.consoleLn(text);
+		}
+	}
+
+	private static long getJvmStartTime () {
+		try {
+			return ManagementFactory.getRuntimeMXBean().getStartTime();
+		} catch (Throwable e) {
+			return System.currentTimeMillis();
+		}
+	}
+}
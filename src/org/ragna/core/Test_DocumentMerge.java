@@ -0,0 +1,164 @@
+/*
+*  File: Test_DocumentMerge.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+
+package org.ragna.core;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ragna.core.DocumentMerge.ConflictType;
+import org.ragna.core.DocumentMerge.Resolution;
+import org.ragna.core.PadDocument.DocumentType;
+import org.ragna.util.OptionBag;
+
+/**
+ *  Test_DocumentMerge in org.ragna.core
+ *  
+ *  <p>Merges small document versions with shared titles, root changes and
+ *  sibling reorders and compares the results with the expected outlines.
+ *  Documents are given as outlines "title:text" separated by commas, where
+ *  leading dots give the depth of an article.
+ */
+public class Test_DocumentMerge {
+
+	private static final String BASE = "R:r, .N:1, .N:2, .N:3";
+
+	private int failures;
+
+	private void test_all () {
+		// siblings of equal title: deletion in ours, modification in theirs
+		DocumentMerge m = merge(BASE, "R:r, .N:1, .N:3", "R:r, .N:1, .N:2x, .N:3");
+		check("deleted/modified conflicts", conflicts(m), "[DELETED_BY_OURS]");
+		m.resolveAll(Resolution.THEIRS);
+		check("deleted/modified for theirs", outline(m.createDocument()), "R:r, .N:1, .N:2x, .N:3");
+		m = merge(BASE, "R:r, .N:1, .N:3", "R:r, .N:1, .N:2x, .N:3");
+		m.resolveAll(Resolution.OURS);
+		check("deleted/modified for ours", outline(m.createDocument()), "R:r, .N:1, .N:3");
+
+		// siblings of equal title: deletion in ours, other sibling modified in theirs
+		m = merge(BASE, "R:r, .N:1, .N:3", "R:r, .N:1, .N:2, .N:3x");
+		check("deleted/other modified conflicts", conflicts(m), "[]");
+		check("deleted/other modified", outline(m.createDocument()), "R:r, .N:1, .N:3x");
+
+		// the diff pairs unchanged siblings of equal title
+		DocumentDiff diff = DocumentDiff.compare(doc(BASE), doc("R:r, .N:1, .N:3"));
+		check("diff of equal titles", diff.toString(), 
+				"modified = 0, added = 0, removed = 1, moved = 0, unchanged = 3");
+
+		// title and text of the root changed in theirs
+		m = merge(BASE, BASE, "S:s, .N:1, .N:2, .N:3");
+		check("root changed conflicts", conflicts(m), "[]");
+		check("root changed", outline(m.createDocument()), "S:s, .N:1, .N:2, .N:3");
+
+		// root changed differently on both sides
+		m = merge(BASE, "T:t, .N:1, .N:2, .N:3", "S:s, .N:1, .N:2, .N:3");
+		m.resolveAll(Resolution.THEIRS);
+		check("root conflict", outline(m.createDocument()), "S:s, .N:1, .N:2, .N:3");
+
+		// the root placed below a new root in theirs
+		m = merge(BASE, BASE, "Y:y, .R:r, ..N:1, ..N:2, ..N:3");
+		check("new root", outline(m.createDocument()), "Y:y, .R:r, ..N:1, ..N:2, ..N:3");
+
+		// sibling order changed only in theirs
+		m = merge("R:r, .A:a, .B:b, .C:c", "R:r, .A:a, .B:b, .C:c, .D:d", "R:r, .C:c, .A:a, .B:b");
+		check("reorder in theirs", outline(m.createDocument()), "R:r, .C:c, .A:a, .B:b, .D:d");
+
+		// sibling order changed on both sides
+		m = merge("R:r, .A:a, .B:b, .C:c", "R:r, .B:b, .A:a, .C:c", "R:r, .C:c, .A:a, .B:b");
+		check("reorder on both sides", outline(m.createDocument()), "R:r, .B:b, .A:a, .C:c");
+
+		System.out.println(failures == 0 ? "*** all tests passed" : "*** FAILURES: " + failures);
+	}
+
+	private static DocumentMerge merge (String base, String ours, String theirs) {
+		return DocumentMerge.merge(doc(base), doc(ours), doc(theirs));
+	}
+
+	/** Creates a document from an outline. */
+	private static PadDocument doc (String outline) {
+		PadDocument doc = new DefaultPadDocument(DocumentType.TreePad);
+		List<PadArticle> stack = new ArrayList<>();
+		List<PadArticle> list = new ArrayList<>();
+		for (String item : outline.split(",")) {
+			item = item.trim();
+			int depth = 0;
+			while (item.charAt(depth) == '.') depth++;
+			String[] parts = item.substring(depth).split(":", 2);
+			PadArticle article = doc.createArticle(depth == 0 ? null : stack.get(depth - 1));
+			article.setTitle(parts[0]);
+			article.setContent(parts[1]);
+			while (stack.size() > depth) stack.remove(stack.size() - 1);
+			stack.add(article);
+			list.add(article);
+		}
+		doc.appendArticles(list.toArray(new PadArticle[list.size()]));
+		return doc;
+	}
+
+	/** Returns the outline of a document. */
+	private static String outline (PadDocument doc) {
+		StringBuilder sb = new StringBuilder();
+		for (PadArticle article : doc) {
+			if (sb.length() > 0) sb.append(", ");
+			for (int i = 0; i < article.getOrderDepth(); i++) sb.append('.');
+			sb.append(article.getTitle()).append(':').append(article.getContent());
+		}
+		return sb.toString();
+	}
+
+	private static String conflicts (DocumentMerge merge) {
+		List<ConflictType> list = new ArrayList<>();
+		for (DocumentMerge.Conflict c : merge.getConflicts()) {
+			list.add(c.getType());
+		}
+		return list.toString();
+	}
+
+	private void check (String label, String result, String expected) {
+		boolean ok = expected.equals(result);
+		if (!ok) {
+			failures++;
+		}
+		System.out.println((ok ? "ok      " : "FAILED  ") + label
+				+ (ok ? "" : ": " + result + ", expected " + expected));
+	}
+
+	/** Sets the default program options which documents require. */
+	private static void setup () throws Exception {
+		Field field = Global.class.getDeclaredField("systemOptions");
+		field.setAccessible(true);
+		field.set(null, new OptionBag(DefaultOptions.get()));
+	}
+
+	public static void main (String[] args) {
+		try {
+			setup();
+			new Test_DocumentMerge().test_all();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+*  File: Test_SessionLoader.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.ragna.core.PadDocument.DocumentType;
+import org.ragna.io.IO_Manager;
+import org.ragna.util.OptionBag;
+
+import kse.com.fhash.main.Functions;
+
+/**
+ *  Test_SessionLoader in org.ragna.core
+ *  
+ *  <p>Runs the probe, passphrase and parallel-open sequence of a session 
+ *  restore on plain and encrypted document files with a scripted client.
+ */
+public class Test_SessionLoader {
+
+	private int failures;
+	private File dir;
+
+	private void test_all () throws Exception {
+		dir = Files.createTempDirectory("ragna-test").toFile();
+		File plain = save("plain", null);
+		File a1 = save("a1", "alpha");
+		File a2 = save("a2", "alpha");
+		File b1 = save("b1", "beta");
+		File gone = save("gone", "beta");
+		File c1 = save("c1", "gamma");
+		List<String> paths = new ArrayList<>();
+		for (File f : new File[] {plain, a1, a2, b1, gone, c1}) {
+			paths.add(f.getAbsolutePath());
+		}
+		paths.add(new File(dir, "missing.tpd").getAbsolutePath());
+
+		// a wrong passphrase, then the file "gone" disappears, then one 
+		// passphrase for two files, then a cancel for "c1"
+		ScriptedClient client = new ScriptedClient(gone, "wrong", "alpha", "beta", null);
+		SessionLoader loader = new SessionLoader(IO_Manager.get(), client);
+		loader.probe(paths);
+		check("probed files", names(loader.getFiles()), "[plain, a1, a2, b1, gone, c1]");
+		check("locked files", names(loader.getLockedFiles()), "[a1, a2, b1, gone, c1]");
+
+		loader.unlock();
+		check("requests", client.requests.toString(), "[a1:5, a1:4, b1:2, c1:1]");
+		check("rejected passphrases", String.valueOf(client.rejected), "1");
+		check("failed files", names(client.failed), "[gone]");
+		check("unlocked files", names(loader.getFiles()), "[plain, a1, a2, b1]");
+		check("locked after unlock", names(loader.getLockedFiles()), "[]");
+
+		List<Future<PadDocument>> results = loader.open(null);
+		List<String> contents = new ArrayList<>();
+		for (Future<PadDocument> f : results) {
+			contents.add(f.get().getArticle(0).getContent());
+		}
+		check("opened documents", contents.toString(), "[plain, a1, a2, b1]");
+
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+
+		System.out.println(failures == 0 ? "*** all tests passed" : "*** FAILURES: " + failures);
+	}
+
+	/** Saves a document with one article of the given text, encrypted if a
+	 * passphrase is given.
+	 */
+	private File save (String name, String passphrase) throws IOException {
+		PadDocument doc = new DefaultPadDocument(DocumentType.TreePad);
+		PadArticle article = doc.newArticle(null, false);
+		article.setTitle(name);
+		article.setContent(name);
+		if (passphrase != null) {
+			doc.setEncrypted(Functions.makeEncryptKey(passphrase.toCharArray()));
+		}
+		File file = new File(dir, name + ".tpd");
+		IO_Manager.get().saveDocument(doc, file, doc.getEncoding());
+		return file;
+	}
+
+	private static String names (List<File> files) {
+		List<String> list = new ArrayList<>();
+		for (File f : files) {
+			list.add(f.getName().replace(".tpd", ""));
+		}
+		return list.toString();
+	}
+
+	private void check (String label, String result, String expected) {
+		boolean ok = expected.equals(result);
+		if (!ok) {
+			failures++;
+		}
+		System.out.println((ok ? "ok      " : "FAILED  ") + label
+				+ (ok ? "" : ": " + result + ", expected " + expected));
+	}
+
+	/** Sets the program options and directories which documents and the
+	 * IO-manager require.
+	 */
+	private static void setup () throws Exception {
+		File home = Files.createTempDirectory("ragna-app").toFile();
+		set("systemOptions", new OptionBag(DefaultOptions.get()));
+		set("applicationDir", home);
+		set("historyDir", home);
+		set("documentRegistry", new DocumentRegistry());
+	}
+
+	private static void set (String name, Object value) throws Exception {
+		Field field = Global.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(null, value);
+	}
+
+	public static void main (String[] args) {
+		try {
+			setup();
+			new Test_SessionLoader().test_all();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** A client which answers passphrase requests from a script and deletes
+	 * a given file at the first request.
+	 */
+	private static class ScriptedClient implements SessionLoader.Client {
+		LinkedList<String> answers;
+		File vanishing;
+		List<String> requests = new ArrayList<>();
+		List<File> failed = new ArrayList<>();
+		int rejected;
+
+		ScriptedClient (File vanishing, String... answers) {
+			this.vanishing = vanishing;
+			this.answers = new LinkedList<>(Arrays.asList(answers));
+		}
+
+		@Override
+		public boolean isPermitted (File file) {return true;}
+
+		@Override
+		public byte[] findKey (File file) {return null;}
+
+		@Override
+		public char[] requestPassphrase (File first, int count) {
+			requests.add(names(Arrays.asList(first)).replaceAll("[\\[\\]]", "") + ":" + count);
+			if (vanishing != null) {
+				vanishing.delete();
+				vanishing = null;
+			}
+			String answer = answers.poll();
+			return answer == null ? null : answer.toCharArray();
+		}
+
+		@Override
+		public void passphraseRejected () {rejected++;}
+
+		@Override
+		public void fileFailed (File file, Throwable e) {failed.add(file);}
+	}
+}
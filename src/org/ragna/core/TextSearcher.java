@@ -60,7 +60,8 @@ public class TextSearcher {
 	
 	/** Returns an array of cursor positions for token occurrences with the
 	 * given pad-article. Returns an empty array if no occurrence was found.
-	 * This function is not limited by a result size maximum.
+	 * This function is not limited by a result size maximum. Whole-word
+	 * searches are served from the {@code ArticleWordIndex} of the article.
 	 * 
 	 * @param article {@code PadArticle}
 	 * @param token String character sequence to search
@@ -71,10 +72,30 @@ public class TextSearcher {
 	public static int[] findArticleTextPositions (PadArticle article, String token, boolean sensitive, boolean wholeWords) {
 		Objects.requireNonNull(article, "article is null");
 		Objects.requireNonNull(token, "token is null");
+		
+		// whole words are looked up in the article's word index
+		if (wholeWords && !token.trim().isEmpty()) {
+			int[] result = ArticleWordIndex.get(article).findPositions(token, sensitive);
+			if (result != null) return result;
+		}
+		return findTextPositions(article.getContent(), token, sensitive, wholeWords);
+	}
+	
+	/** Returns an array of positions for token occurrences in the given text.
+	 * Returns an empty array if no occurrence was found.
+	 * 
+	 * @param text String text to search in
+	 * @param token String character sequence to search
+	 * @param sensitive boolean option for case-sensitive search
+	 * @param wholeWords boolean option for whole-words search
+	 * @return int[] text positions
+	 */
+	public static int[] findTextPositions (String text, String token, boolean sensitive, boolean wholeWords) {
+		Objects.requireNonNull(text, "text is null");
+		Objects.requireNonNull(token, "token is null");
 		Set<Integer> list = new ArraySet<>();
 
 		if (!token.trim().isEmpty()) { 
-			String text = article.getContent();
 			int length = token.length();
 			if (!sensitive) {
 				text = text.toLowerCase();
@@ -0,0 +1,175 @@
+/*
+*  File: ArticleJumpPanel.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.front;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.AncestorEvent;
+import javax.swing.event.AncestorListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import org.ragna.core.ArticleTitleIndex;
+import org.ragna.core.Global;
+import org.ragna.core.PadArticle;
+import org.ragna.front.util.ResourceLoader;
+
+/** Panel for the "go to article" function. The user types a part of an
+ * article title and a list of matching articles of all open documents is
+ * updated with each keystroke from the {@code ArticleTitleIndex}.
+ */
+public class ArticleJumpPanel extends JPanel implements AncestorListener {
+	private static final int MAX_LIST_VALUES = 60;
+
+	private ResourceLoader res = Global.res;
+	private JTextField textFld;
+	private JList<PadArticle> list;
+	private DefaultListModel<PadArticle> model = new DefaultListModel<>();
+	private boolean multiDocument;
+
+	public ArticleJumpPanel () {
+		init();
+	}
+
+	private void init () {
+		setLayout(new BorderLayout(0, 6));
+		multiDocument = Global.getDocumentRegistry().size() > 1;
+
+		JPanel panel = new JPanel(new BorderLayout(6, 0));
+		panel.add(new JLabel(res.getDisplay("label.title") + ":"), BorderLayout.WEST);
+		textFld = new JTextField(30);
+		panel.add(textFld);
+		add(panel, BorderLayout.NORTH);
+
+		list = new JList<>(model);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setFocusable(false);
+		list.setCellRenderer(new ArticleCellRenderer());
+		JScrollPane scrollPane = new JScrollPane(list);
+		add(scrollPane);
+		setPreferredSize(new Dimension(420, 300));
+
+		// update result list on each text modification
+		textFld.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate (DocumentEvent e) {updateList();}
+
+			@Override
+			public void removeUpdate (DocumentEvent e) {updateList();}
+
+			@Override
+			public void changedUpdate (DocumentEvent e) {}
+		});
+
+		// move list selection with arrow keys while typing
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("DOWN"), "selectNext");
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("UP"), "selectPrevious");
+		textFld.getActionMap().put("selectNext", new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {moveSelection(1);}
+		});
+		textFld.getActionMap().put("selectPrevious", new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {moveSelection(-1);}
+		});
+
+		addAncestorListener(this);
+	}
+
+	private void updateList () {
+		List<PadArticle> result = ArticleTitleIndex.get().find(textFld.getText(), MAX_LIST_VALUES);
+		model.clear();
+		for (PadArticle art : result) {
+			model.addElement(art);
+		}
+		if (!model.isEmpty()) {
+			list.setSelectedIndex(0);
+			list.ensureIndexIsVisible(0);
+		}
+	}
+
+	private void moveSelection (int delta) {
+		int size = model.getSize();
+		if (size == 0) return;
+		int index = Math.max(0, Math.min(size - 1, list.getSelectedIndex() + delta));
+		list.setSelectedIndex(index);
+		list.ensureIndexIsVisible(index);
+	}
+
+	/** Returns the article selected by the user or null if there is no
+	 * selection.
+	 *
+	 * @return {@code PadArticle} or null
+	 */
+	public PadArticle getSelectedArticle () {
+		return list.getSelectedValue();
+	}
+
+	@Override
+	public void ancestorAdded (AncestorEvent event) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				textFld.requestFocusInWindow();
+			}
+		});
+	}
+
+	@Override
+	public void ancestorMoved (AncestorEvent event) {
+	}
+
+	@Override
+	public void ancestorRemoved (AncestorEvent event) {
+	}
+
+	private class ArticleCellRenderer extends DefaultListCellRenderer {
+
+		@Override
+		public Component getListCellRendererComponent (JList<?> list, Object value, int index,
+				boolean isSelected, boolean cellHasFocus) {
+			PadArticle art = (PadArticle) value;
+			String text = art.getShortTitle();
+			if (multiDocument && art.getDocument() != null) {
+				text += "  --  " + art.getDocument().getShortTitle();
+			}
+			return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+		}
+	}
+}
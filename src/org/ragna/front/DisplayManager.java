@@ -47,6 +47,7 @@ import java.text.MessageFormat;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.TimerTask;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -92,6 +93,7 @@ import org.ragna.core.PadDocument;
 import org.ragna.core.PrintParameters;
 import org.ragna.core.PrintParameters.ArticlePrintModus;
 import org.ragna.core.PrintParameters.PrintScope;
+import org.ragna.core.StartupProfile;
 import org.ragna.util.ActionManager;
 import org.ragna.util.PersistentOptions;
 import org.ragna.util.ActionManager.UnknownActionException;
@@ -112,6 +114,10 @@ public class DisplayManager {
    private static final Color READONLY_ORDERVIEW_COLOR = new Color(0xEFEFEF);
    private static final Color ORDER_VIEW_COLOR = UnixColor.AliceBlue;
    private static final int DEFAULT_DIVIDER_LOCATION = 300;
+   /** Delay for building the selected display after documents were added (ms). */
+   private static final long REALIZE_DELAY = 100;
+   /** Period of the control for unused document displays (ms). */
+   private static final long RELEASE_CHECK_PERIOD = 60000;
 
    private static DisplayManager instance = new DisplayManager();
    
@@ -143,6 +149,9 @@ public class DisplayManager {
    private SingleDocumentDisplay singleDisplay;
    private MultiDocumentDisplay  multiDisplay;
    private DocumentDisplayField  currentDisplay;
+   private TimerTask             realizeTask;
+   /** Whether a document display is being added (EDT). */
+   private boolean               adding;
    
    public static DisplayManager get () {
       return instance;
@@ -216,6 +225,19 @@ public class DisplayManager {
       ragna.gainMemoryBounds();
       ragna.setVisible(true);
 
+      // periodic release of unused document displays
+      TimerTask task = new TimerTask() {
+         @Override
+         public void run () {
+            GUIService.executeOnEDT(new Runnable() {
+               @Override
+               public void run () {
+                  releaseUnusedDisplays();
+               }
+            });
+         }
+      };
+      Global.getTimer().schedule(task, RELEASE_CHECK_PERIOD, RELEASE_CHECK_PERIOD);
    }
    
    public StatusBar getStatusBar () {
@@ -267,6 +289,9 @@ public class DisplayManager {
    /** Creates a new display for a given document. This method waits until 
     * the document is added to the display. This method's functionality runs
     * on the EDT (hence is synchronised).
+    * <p>The display is added as a placeholder; its components are built 
+    * shortly after, if it is still the selected display, or with its first
+    * selection. 
     * 
     * @param doc <code>PadDocument</code>
     */
@@ -281,8 +306,14 @@ public class DisplayManager {
             DocumentDisplay display = new DocumentDisplay(doc);
             displayList.add(display);
             String title = display.getDocument().getShortTitle();
-            setupDisplay();
-            currentDisplay.addDisplay(display, true);
+            adding = true;
+            try {
+               setupDisplay();
+               currentDisplay.addDisplay(display, true);
+            } finally {
+               adding = false;
+            }
+            scheduleRealize();
             Log.debug(10, "(DisplayManager.addDocumentDisplay) document display added: "
                     + title + ", counter=" + displayCount());
          }
@@ -296,6 +327,54 @@ public class DisplayManager {
 	}
   }
    
+   /** Schedules the building of the selected document display after a short
+    * delay. Repeated calls within the delay, as when the documents of a 
+    * session are added, result in a single build.
+    */
+   private synchronized void scheduleRealize () {
+      if (realizeTask != null) {
+         realizeTask.cancel();
+      }
+      realizeTask = new TimerTask() {
+         @Override
+         public void run () {
+            GUIService.executeOnEDT(new Runnable() {
+               @Override
+               public void run () {
+                  DocumentDisplay display = getSelectedDisplay();
+                  if (display != null && !display.isRealized()) {
+                     display.realize();
+                     display.restoreFocus();
+                     refreshCommandDisplay();
+                  }
+               }
+            });
+         }
+      };
+      Global.getTimer().schedule(realizeTask, REALIZE_DELAY);
+   }
+   
+   /** Releases the components of document displays which are not selected
+    * and have not been used for the time given by option "displayReleaseDelay"
+    * (seconds, 0 = never). Displays of modified documents and displays whose
+    * article editor can still undo are kept to preserve the editor's undo
+    * history. This method must run on the EDT.
+    */
+   private void releaseUnusedDisplays () {
+      long delay = Global.getOptions().getIntOption("displayReleaseDelay") * 1000L;
+      if (delay <= 0) return;
+      
+      long now = System.currentTimeMillis();
+      DocumentDisplay selected = getSelectedDisplay();
+      for (DocumentDisplay display : displayList) {
+         if (display != selected && display.isRealized() && now - display.lastUsed > delay
+             && display.getDocument() != null && !display.getDocument().isModified()
+             && !display.hasEditorUndo()) {
+            display.release();
+         }
+      }
+   }
+   
    /** Collects preferences for the given document from the current display.
     * This updates the preferences in the document.
     * 
@@ -940,6 +1019,12 @@ public class DisplayManager {
                if (display != null) {
                   // react to change of display selection (multi-display)
                   if ( display != lastSelectedDisplay ) {
+                     if (lastSelectedDisplay != null) {
+                        lastSelectedDisplay.lastUsed = System.currentTimeMillis();
+                     }
+                     if (!adding) {
+                        display.realize();
+                     }
                      display.restoreFocus();
                      Global.getDocumentRegistry().setSelectedDocument(display.getDocument().getUUID());
    
@@ -1029,16 +1114,24 @@ public class DisplayManager {
        */
       public void setDisplay (DocumentDisplay display) {
          if ( display != null && display != this.display) {
+            // the replaced display counts as deselected from now on
+            if (this.display != null) {
+               this.display.lastUsed = System.currentTimeMillis();
+            }
             this.display = display;
             
             // make it visible
             this.removeAll();
             this.add(display);
+            if (!adding) {
+               display.realize();
+            }
             
             Log.log(8, "(SingleDocumentDisplay.setDisplay) display added for: " 
                   + display.getDocument().getTitle() + ", counter=" + displayCount());
 
          } else if (display == null & this.display != null) {
+            this.display.lastUsed = System.currentTimeMillis();
             this.removeAll();
             this.display = null;
          }
@@ -1266,13 +1359,17 @@ public class DisplayManager {
          int dividerPosition;
          /** most recently focused display view (Article or Order) */ 
          FocusableView focus = FocusableView.Order;
+         /** whether the display components are built */
+         boolean realized;
+         /** time when this display was last deselected */
+         long lastUsed = System.currentTimeMillis();
          
          /** Creates an empty <code>DocumentDisplay</code>. The content
-          * can be added with "setDocument()". 
+          * can be added with "setDocument()". The display components are
+          * built with "realize()".
           */
          public DocumentDisplay () {
             super( new BorderLayout() );
-            init();
          }
          
          /** Creates a <code>DocumentDisplay</code> with the given document
@@ -1286,6 +1383,53 @@ public class DisplayManager {
             setDocument(doc);
          }
          
+         /** Whether the components of this display are built.
+          * 
+          * @return boolean
+          */
+         public boolean isRealized () {return realized;}
+         
+         /** Builds the components of this display, if not yet done, and 
+          * shows the current document in them. Until then the display is an
+          * empty placeholder which only holds the document. 
+          */
+         public void realize () {
+            if (realized) return;
+            long start = System.currentTimeMillis();
+            realized = true;
+            lastUsed = start;
+            init();
+            if (document != null) {
+               showDocument(document);
+               StartupProfile.mark("first editable document");
+            }
+            Log.log(6, "(DocumentDisplay.realize) display built for " + document + ", " 
+                  + (System.currentTimeMillis() - start) + " ms");
+         }
+         
+         /** Releases the components of this display, which becomes an empty
+          * placeholder. The view state (divider position, display modus, tree
+          * expansion, article selection and text cursor) is stored in the
+          * document and restored with the next "realize()".
+          */
+         public void release () {
+            if (!realized) return;
+            finishEdit();
+            setupEditor(null);
+            orderView.setPadDocument(null);
+            removeAll();
+            orderView = null;
+            splitPane = null;
+            leftComponent = rightComponent = null;
+            treePanel = null;
+            articlePanel = null;
+            viewModus = null;
+            realized = false;
+            revalidate();
+            repaint();
+            Log.log(6, "(DocumentDisplay.release) display released for " + document);
+         }
+         
          private void init () {
 //            orderView = new ListOrderView();
             orderView = new JTreeOrderView();
@@ -1357,6 +1501,7 @@ public class DisplayManager {
          }
          
          public DocumentOrderView getOrderView () {
+            realize();
             return orderView;
          }
          
@@ -1368,7 +1513,21 @@ public class DisplayManager {
           * 
           * @return {@code ArticleEditor}
           */
-         public ArticleEditor getArticleEditor () {return articlePanel.editor;}
+         public ArticleEditor getArticleEditor () {
+            realize();
+            return articlePanel.editor;
+         }
+         
+         /** Whether the article editor of this display holds edits which
+          * can be undone. The display is not realized by this method.
+          * 
+          * @return boolean
+          */
+         public boolean hasEditorUndo () {
+            if (!realized || articlePanel == null || articlePanel.editor == null) return false;
+            UndoManager man = articlePanel.editor.getUndoManager();
+            return man != null && man.canUndo();
+         }
          
          /** Returns the UndoManager of the currently focused work-panel of this
           * display (order-view or article-view).
@@ -1521,6 +1680,7 @@ public class DisplayManager {
          /** Attempts to restore focus to the last focused view (Order or Article).
           */
          public void restoreFocus () {
+            if ( !realized ) return;
             if ( focus == FocusableView.Article ) {
             	Log.log(10, "-- attempting to restore ARTICLE focus");
                getEditorView().requestFocusInWindow();
@@ -1541,11 +1701,12 @@ public class DisplayManager {
          }
          
          /** Returns the renderer of an EDIT menu dependent on the currently
-          * focused view.
+          * focused view or null if the display is not realized.
           * 
-          * @return {@code MenuActivist}
+          * @return {@code MenuActivist} or null
           */
          public MenuActivist getEditMenuAcivist () {
+        	 if (!realized) return null;
         	 switch (getLastFocusedView()) {
 			 case Article:
 				 return getArticleEditor();
@@ -1611,6 +1772,9 @@ public class DisplayManager {
           * @return <code>PadArticle</code> or null
           */
          public PadArticle getSelectedArticle () {
+            if (!realized) {
+               return document == null ? null : document.getSelectedArticle();
+            }
             return currentArticle;
          }
 
@@ -1620,7 +1784,7 @@ public class DisplayManager {
           * @return String or null
           */
          public String getSelectedText () {
-            return articlePanel.editor.getSelectedText();
+            return getArticleEditor().getSelectedText();
          }
 
          /** Sets this display's divider position to the system default value.
@@ -1639,6 +1803,7 @@ public class DisplayManager {
           * @return boolean true == view has been arranged and repainted
           */
          public boolean setupView ( DisplayModus modus ) {
+            realize();
             if ( modus == viewModus ) return false;
             dividerPosition = splitPane.getDividerLocation();
             removeAll();
@@ -1674,7 +1839,7 @@ public class DisplayManager {
          }
    
          public void finishEdit () {
-            if ( document != null ) {
+            if ( document != null && realized ) {
                document.setPreferredDividerPosition(splitPane.getDividerLocation());
                document.setPreferredDisplayModus(getViewModus());
                document.setOrderviewFont(orderView.getView().getFont());
@@ -1712,6 +1877,10 @@ public class DisplayManager {
           * @return byte[] or null
           */
          public byte[] getTreeExpansionInfo () {
+      	     if (!realized) {
+      	    	 return document == null ? null : 
+      	    		 Util.hexToBytes(document.getOptions().getOption("tree-expansion-info"));
+      	     }
       	     DocumentOrderView view = getOrderView(); 
       	     if (view instanceof JTreeOrderView) {
       		     return ((JTreeOrderView)view).getTreeExpansionInfo();
@@ -1738,35 +1907,17 @@ public class DisplayManager {
             
             if (doc == null) {
                document = null;
-               removeAll();
-               setupEditor(null);
-               setupOrderView(null);
+               if (realized) {
+                  removeAll();
+                  setupEditor(null);
+                  setupOrderView(null);
+               }
                
             } else {
-               // take over parameter values from the document
                document = doc;
-               focus = FocusableView.Article;
-               defaultBackgroundColor = doc.getPreferredBackgroundColor();
-               defaultForegroundColor = doc.getPreferredForegroundColor();
-               defaultTextFont = doc.getDefaultTextFont();    
-
-               // set the split-pane divider position after document value
-               if ( doc.getPreferredDividerPosition() > 0 ) {
-                  splitPane.setDividerLocation( doc.getPreferredDividerPosition() );
-               } else {
-                  setDefaultDividerPosition();
+               if (realized) {
+                  showDocument(doc);
                }
-   
-               // set up the display-modus (order-view/article) 
-               // includes restore the last component focus
-               setupView( doc.getPreferredDisplayModus() );
-               Log.log(8, "(DocumentDisplay.setDocument) document defined: " 
-                     + doc.getTitle());
-               
-               // set up editor content and order-view content
-               PadArticle selectedArticle = doc.getSelectedArticle();
-               setupEditor(selectedArticle);
-               setupOrderView(selectedArticle);
                
                // finally hook into document events
                document.addPropertyChangeListener(docListener);
@@ -1774,6 +1925,37 @@ public class DisplayManager {
             }
          }
    
+         /** Sets up the display components with parameter values and 
+          * contents of the given document.
+          * 
+          * @param doc <code>PadDocument</code>
+          */
+         private void showDocument (PadDocument doc) {
+            // take over parameter values from the document
+            focus = FocusableView.Article;
+            defaultBackgroundColor = doc.getPreferredBackgroundColor();
+            defaultForegroundColor = doc.getPreferredForegroundColor();
+            defaultTextFont = doc.getDefaultTextFont();    
+
+            // set the split-pane divider position after document value
+            if ( doc.getPreferredDividerPosition() > 0 ) {
+               splitPane.setDividerLocation( doc.getPreferredDividerPosition() );
+            } else {
+               setDefaultDividerPosition();
+            }
+   
+            // set up the display-modus (order-view/article) 
+            // includes restore the last component focus
+            setupView( doc.getPreferredDisplayModus() );
+            Log.log(8, "(DocumentDisplay.setDocument) document defined: " 
+                  + doc.getTitle());
+            
+            // set up editor content and order-view content
+            PadArticle selectedArticle = doc.getSelectedArticle();
+            setupEditor(selectedArticle);
+            setupOrderView(selectedArticle);
+         }
+   
          /** Sets up content and appearance of the article editor in dependence
           * of settings in document and specified article.
           * 
@@ -1840,6 +2022,7 @@ public class DisplayManager {
           * @param sel Dimension (width=start, height=end)
           */
          public void setEditorTextSelection (Dimension sel) {
+             realize();
              JTextComponent editor = getEditorView();
              editor.select(sel.width, sel.height);
          }
@@ -2018,6 +2201,11 @@ public class DisplayManager {
                JScrollPane scrollPane = new JScrollPane(editor.getView());
                scrollPane.putClientProperty("FOCUS_TARGET", "ARTICLEVIEW");
                add(scrollPane);
+               
+               // incremental find bar (initially hidden)
+               if (editor instanceof PlainTextEditor) {
+            	   add(((PlainTextEditor)editor).getFindBar(), BorderLayout.SOUTH);
+               }
 
                // add focus mouse listener
                scrollPane.addMouseListener(focusMouseListener);
@@ -2483,6 +2671,7 @@ public class DisplayManager {
          private class JTreeOrderView extends AbstractOrderView {
              private JTree jTree;
              private TreeModel model;
+             private TreeModelListener modelListener = new ModelListener();
              private MouseListener mouseListener;
              
              JTreeOrderView () {
@@ -2631,6 +2820,9 @@ public class DisplayManager {
                 Log.debug(6, "(JTreeOrderView.setPadDocument) setting up document with " + document);
             	PadDocument oldDoc = bindingDoc;
             	super.setPadDocument(document);
+            	if (model != null) {
+            		model.removeTreeModelListener(modelListener);
+            	}
             	
             	// create the model for JTree
             	if (document == null) {
@@ -2639,7 +2831,7 @@ public class DisplayManager {
             	} else {
             		// setting data model from new document
             		model = document.getTreeModel();
-               	 	model.addTreeModelListener(new ModelListener());
+               	 	model.addTreeModelListener(modelListener);
             		jTree.setModel(model);
             		jTree.revalidate();
             		jTree.repaint();
@@ -2708,8 +2900,8 @@ public class DisplayManager {
 		      @Override
 		      public void propertyChange (PropertyChangeEvent evt) {
 		         
-		         DocumentOrderView orderView = display.getOrderView();
-		         ArticleEditor editor = display.getArticleEditor();
+		         DocumentOrderView orderView = display.orderView;
+		         ArticleEditor editor = display.articlePanel == null ? null : display.articlePanel.editor;
 		         PadDocument document = (PadDocument)evt.getSource();
 		         String key = evt.getPropertyName();
 		
@@ -2732,6 +2924,9 @@ public class DisplayManager {
 //		         } else if ( key == "articleTitleChanged" ) {
 		//            updateDocumentDisplay(document);
 		
+		         } else if ( !display.isRealized() ) {
+		        	 // components are set up from the document with realize()
+		        	 
 		         } else if ( key == "articleAdded" ) {
 		            PadArticle article = (PadArticle)evt.getNewValue();
 		//            orderView.addElement(article);
@@ -0,0 +1,142 @@
+/*
+*  File: FileLocationListPanel.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.front;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.io.File;
+import java.util.List;
+import java.util.Objects;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableColumnModel;
+
+import org.ragna.core.Global;
+import org.ragna.front.util.ResourceLoader;
+import org.ragna.io.DocumentFileSearcher.FileTextPosition;
+
+import kse.utilclass.gui.VerticalFlowLayout;
+import kse.utilclass.misc.UnixColor;
+
+/** Panel to display the result list of a search in document files. */
+public class FileLocationListPanel extends JPanel {
+
+	private ResourceLoader res = Global.res;
+	private FileTextPosition[] items;
+	private JTable table;
+	private OurTableModel model;
+
+	/** Creates a new file location list panel w/ the given text locations and
+	 * search parameters.
+	 *
+	 * @param positions {@code List<FileTextPosition>} list of text locations
+	 * @param searchText String the search pattern
+	 * @param directory File the searched directory
+	 * @param unsearched int number of files which could not be searched
+	 */
+	public FileLocationListPanel (List<FileTextPosition> positions, String searchText,
+			File directory, int unsearched) {
+		Objects.requireNonNull(positions);
+		items = positions.toArray(new FileTextPosition[positions.size()]);
+
+		// construct the table
+		model = new OurTableModel();
+		table = new JTable(model);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		TableColumnModel colModel = table.getColumnModel();
+		colModel.getColumn(0).setHeaderValue(res.getDisplay("label.file"));
+		colModel.getColumn(1).setHeaderValue(res.getDisplay("label.article"));
+		colModel.getColumn(2).setHeaderValue(res.getDisplay("label.position"));
+		colModel.getColumn(2).setMaxWidth(60);
+
+		// construct the parameter information panel
+		VerticalFlowLayout layout = new VerticalFlowLayout(0, false);
+		layout.setAlignment(VerticalFlowLayout.CENTER);
+		JPanel comPanel = new JPanel(layout);
+
+		JPanel panel = new JPanel();
+		panel.add(new JLabel(res.getDisplay("find.text") + ": "));
+		JLabel label = new JLabel(searchText.substring(0, Math.min(searchText.length(), 60)));
+		label.setForeground(UnixColor.BlueViolet);
+		panel.add(label);
+		comPanel.add(panel);
+		comPanel.add(new JLabel(res.getDisplay("label.directory") + ": " + directory.getAbsolutePath()));
+		if (unsearched > 0) {
+			label = new JLabel(res.getDisplay("msg.filesearch.unsearched") + " " + unsearched);
+			label.setForeground(UnixColor.FireBrick);
+			comPanel.add(label);
+		}
+
+		// construct the main panel
+		setPreferredSize(new Dimension(500, 300));
+		setLayout(new BorderLayout(0, 10));
+		add(comPanel, BorderLayout.NORTH);
+		add(new JScrollPane(table));
+	}
+
+	/** Adds a list selection listener that is notified each time a change
+	 * in table row selection occurs.
+	 *
+	 * @param x {@code ListSelectionListener}
+	 */
+	public void addListSelectionListener (ListSelectionListener x) {
+		table.getSelectionModel().addListSelectionListener(x);
+	}
+
+	/** Returns the currently selected text position or null if there is
+	 * nothing selected.
+	 *
+	 * @return {@code FileTextPosition} or null
+	 */
+	public FileTextPosition getSelectedItem () {
+		int index = table.getSelectedRow();
+		return index > -1 && index < items.length ? items[index] : null;
+	}
+
+	private class OurTableModel extends AbstractTableModel {
+
+		@Override
+		public int getColumnCount() {return 3;}
+
+		@Override
+		public int getRowCount() {return items.length;}
+
+		@Override
+		public Object getValueAt (int rowIndex, int columnIndex) {
+			FileTextPosition pos = items[rowIndex];
+			switch (columnIndex) {
+			case 0:  return pos.getFile().getName();
+			case 1:  return pos.getArticleTitle();
+			case 2:  return pos.getPosition();
+			default: return "";
+			}
+		}
+	}
+}
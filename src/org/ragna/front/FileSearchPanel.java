@@ -0,0 +1,180 @@
+/*
+*  File: FileSearchPanel.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.front;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JPasswordField;
+import javax.swing.JTextField;
+import javax.swing.event.AncestorEvent;
+import javax.swing.event.AncestorListener;
+
+import org.ragna.core.Global;
+import org.ragna.front.util.ResourceLoader;
+import org.ragna.util.PersistentOptions;
+
+import kse.utilclass.gui.VerticalFlowLayout;
+
+/** Input panel for the "search in files" function. The user defines a
+ * directory, the search text with options and an optional password for
+ * encrypted files.
+ */
+public class FileSearchPanel extends JPanel implements AncestorListener {
+
+	private ResourceLoader res = Global.res;
+	private JTextField dirFld;
+	private JTextField textFld;
+	private JPasswordField passFld;
+	private JCheckBox sensitiveChk;
+	private JCheckBox wholeWordChk;
+
+	public FileSearchPanel () {
+		init();
+	}
+
+	private void init () {
+		setLayout(new VerticalFlowLayout(6));
+
+		// directory input with chooser button
+		add(new JLabel(res.getDisplay("label.directory")));
+		JPanel panel = new JPanel(new BorderLayout(6, 0));
+		dirFld = new JTextField(30);
+		panel.add(dirFld);
+		JButton button = new JButton("...");
+		button.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {
+				chooseDirectory();
+			}
+		});
+		panel.add(button, BorderLayout.EAST);
+		add(panel);
+
+		// search text and options
+		add(new JLabel(res.getDisplay("find.text")));
+		textFld = new JTextField(30);
+		add(textFld);
+
+		sensitiveChk = new JCheckBox(res.getDisplay("find.checkCS"));
+		sensitiveChk.setIconTextGap(6);
+		wholeWordChk = new JCheckBox(res.getDisplay("find.checkWD"));
+		wholeWordChk.setIconTextGap(6);
+		panel = new JPanel();
+		panel.add(sensitiveChk);
+		panel.add(wholeWordChk);
+		add(panel);
+
+		// password for encrypted files
+		add(new JLabel(res.getDisplay("label.filesearch.password")));
+		passFld = new JPasswordField(30);
+		add(passFld);
+
+		addAncestorListener(this);
+	}
+
+	private void chooseDirectory () {
+		JFileChooser fc = new JFileChooser(getDirectory() == null ?
+				Global.getCurrentDirectory() : getDirectory());
+		fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+			dirFld.setText(fc.getSelectedFile().getAbsolutePath());
+		}
+	}
+
+	/** Returns the user selected directory or null if undefined.
+	 *
+	 * @return File or null
+	 */
+	public File getDirectory () {
+		String hs = dirFld.getText().trim();
+		return hs.isEmpty() ? null : new File(hs);
+	}
+
+	/** Returns the search text which the user has input. The result is
+	 * trimmed.
+	 *
+	 * @return String
+	 */
+	public String getInputText () {
+		return textFld.getText().trim();
+	}
+
+	/** Returns the password input of the user or null if the field is empty.
+	 *
+	 * @return char[] or null
+	 */
+	public char[] getPassword () {
+		char[] pass = passFld.getPassword();
+		return pass.length == 0 ? null : pass;
+	}
+
+	/** Returns the maximum value for search results.
+	 *
+	 * @return int
+	 */
+	public int getMaxSearchResults () {
+		return 1000;
+	}
+
+	public boolean isCaseSensitive () {
+		return sensitiveChk.isSelected();
+	}
+
+	public boolean isWholeWordOnly () {
+		return wholeWordChk.isSelected();
+	}
+
+	@Override
+	public void ancestorAdded (AncestorEvent event) {
+		PersistentOptions options = Global.getOptions();
+		sensitiveChk.setSelected(options.isOptionSet("searchCaseSensitive"));
+		wholeWordChk.setSelected(options.isOptionSet("searchWholeWords"));
+		String dir = options.getOption("fileSearchDirectory");
+		dirFld.setText(dir.isEmpty() ? Global.getCurrentDirectory().getAbsolutePath() : dir);
+		textFld.requestFocusInWindow();
+	}
+
+	@Override
+	public void ancestorMoved (AncestorEvent event) {
+	}
+
+	@Override
+	public void ancestorRemoved (AncestorEvent event) {
+		PersistentOptions options = Global.getOptions();
+		options.setOption("searchCaseSensitive", isCaseSensitive());
+		options.setOption("searchWholeWords", isWholeWordOnly());
+		File dir = getDirectory();
+		if (dir != null) {
+			options.setOption("fileSearchDirectory", dir.getAbsolutePath());
+		}
+	}
+}
@@ -0,0 +1,387 @@
+/*
+*  File: IncrementalFindBar.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.front;
+
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+
+import javax.swing.AbstractAction;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+
+import org.ragna.core.Global;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.UnixColor;
+
+/** An inline find bar for a text editor which highlights all occurrences of
+ * the input text while the user types (case-insensitive). Occurrences are
+ * held in a sorted array of text positions. When the query grows by typing,
+ * only the previous positions are verified instead of searching the text
+ * again. Highlights are painted by the editor for its visible viewport only
+ * (see {@code paintMatches()}).
+ */
+public class IncrementalFindBar extends JPanel {
+
+	private static final Color HIGHLIGHT_COLOR = new Color(255, 200, 0, 110);
+	private static final Color CURRENT_COLOR = new Color(255, 120, 0, 150);
+	private static final int REFRESH_DELAY = 400;
+
+	private JTextComponent editor;
+	private JTextField textFld;
+	private JLabel countLabel;
+
+	// match state
+	private int[] matches = new int[0];
+	private int current = -1;
+	private String query = "";
+	private String text;
+	private String lowerText;
+	private boolean textValid;
+	private Timer refreshTimer;
+
+	private DocumentListener textListener = new DocumentListener() {
+		@Override
+		public void insertUpdate (DocumentEvent e) {invalidateText();}
+
+		@Override
+		public void removeUpdate (DocumentEvent e) {invalidateText();}
+
+		@Override
+		public void changedUpdate (DocumentEvent e) {}
+	};
+
+	/** Creates a new find bar for the given text editor component.
+	 *
+	 * @param editor {@code JTextComponent}
+	 */
+	public IncrementalFindBar (JTextComponent editor) {
+		super(new FlowLayout(FlowLayout.LEFT, 6, 2));
+		this.editor = editor;
+		init();
+	}
+
+	private void init () {
+		add(new JLabel(Global.res.getDisplay("label.quickfind")));
+		textFld = new JTextField(20);
+		add(textFld);
+
+		JButton button = new JButton("<");
+		button.setToolTipText(Global.res.getDisplay("tooltip.find.previous"));
+		button.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {selectNext(false);}
+		});
+		add(button);
+		button = new JButton(">");
+		button.setToolTipText(Global.res.getDisplay("tooltip.find.next"));
+		button.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {selectNext(true);}
+		});
+		add(button);
+		countLabel = new JLabel();
+		add(countLabel);
+		button = new JButton("x");
+		button.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {close();}
+		});
+		add(button);
+		setVisible(false);
+
+		refreshTimer = new Timer(REFRESH_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {
+				if (isVisible()) {
+					updateMatches(false);
+				}
+			}
+		});
+		refreshTimer.setRepeats(false);
+
+		textFld.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate (DocumentEvent e) {updateMatches(true);}
+
+			@Override
+			public void removeUpdate (DocumentEvent e) {updateMatches(true);}
+
+			@Override
+			public void changedUpdate (DocumentEvent e) {}
+		});
+
+		// key bindings of the input field
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("ENTER"), "findNext");
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("F3"), "findNext");
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("shift ENTER"), "findPrevious");
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("shift F3"), "findPrevious");
+		textFld.getInputMap().put(KeyStroke.getKeyStroke("ESCAPE"), "closeBar");
+		textFld.getActionMap().put("findNext", new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {selectNext(true);}
+		});
+		textFld.getActionMap().put("findPrevious", new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {selectNext(false);}
+		});
+		textFld.getActionMap().put("closeBar", new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {close();}
+		});
+
+		// follow the text document of the editor
+		editor.getDocument().addDocumentListener(textListener);
+		editor.addPropertyChangeListener("document", new PropertyChangeListener() {
+			@Override
+			public void propertyChange (PropertyChangeEvent evt) {
+				Document oldDoc = (Document) evt.getOldValue();
+				Document newDoc = (Document) evt.getNewValue();
+				if (oldDoc != null) oldDoc.removeDocumentListener(textListener);
+				if (newDoc != null) newDoc.addDocumentListener(textListener);
+				invalidateText();
+			}
+		});
+	}
+
+	/** Shows this find bar and moves the input focus to its text field. The
+	 * current text selection of the editor, if short, is taken as query.
+	 */
+	public void open () {
+		String sel = editor.getSelectedText();
+		if (sel != null && !sel.isEmpty() && sel.length() < 80 && sel.indexOf('\n') == -1) {
+			textFld.setText(sel);
+		}
+		setVisible(true);
+		revalidate();
+		textFld.selectAll();
+		textFld.requestFocusInWindow();
+		updateMatches(true);
+	}
+
+	/** Hides this find bar, removes highlights and returns the input focus
+	 * to the editor.
+	 */
+	public void close () {
+		setVisible(false);
+		matches = new int[0];
+		current = -1;
+		query = "";
+		text = null;
+		lowerText = null;
+		editor.repaint();
+		editor.requestFocusInWindow();
+	}
+
+	/** Reacts to modifications of the editor text. As match positions may
+	 * have shifted, highlights are removed and the search is repeated after
+	 * a short delay, so that typing in large texts is not slowed down.
+	 */
+	private void invalidateText () {
+		textValid = false;
+		if (isVisible() && !textFld.getText().isEmpty()) {
+			matches = new int[0];
+			current = -1;
+			query = "";
+			refreshTimer.restart();
+		}
+	}
+
+	/** Returns the current text of the editor, loaded once per text version. */
+	private String getText () {
+		if (!textValid || text == null) {
+			Document doc = editor.getDocument();
+			try {
+				text = doc.getText(0, doc.getLength());
+			} catch (BadLocationException e) {
+				text = "";
+			}
+			String hs = text.toLowerCase();
+			lowerText = hs.length() == text.length() ? hs : null;
+			textValid = true;
+		}
+		return text;
+	}
+
+	/** Updates the match array for the current input text. Optionally the
+	 * first match behind the caret is selected in the editor.
+	 * 
+	 * @param select boolean whether to select a match in the editor
+	 */
+	private void updateMatches (boolean select) {
+		if (!isVisible()) return;
+		long time = System.nanoTime();
+		String q = textFld.getText();
+		String t = getText();
+		int[] result;
+
+		if (q.isEmpty()) {
+			result = new int[0];
+
+		} else if (!query.isEmpty() && q.length() > query.length() && q.startsWith(query)) {
+			// refine previous matches
+			result = new int[matches.length];
+			int n = 0;
+			for (int pos : matches) {
+				if (t.regionMatches(true, pos, q, 0, q.length())) {
+					result[n++] = pos;
+				}
+			}
+			result = Arrays.copyOf(result, n);
+
+		} else {
+			result = findAll(t, q);
+		}
+
+		matches = result;
+		query = q;
+		Log.debug(10, "(IncrementalFindBar.updateMatches) query [" + q + "], matches = " + matches.length
+				+ ", time = " + (System.nanoTime() - time) / 1000 + " us");
+
+		// select the first match behind the caret position
+		current = -1;
+		if (matches.length > 0) {
+			int index = Arrays.binarySearch(matches, editor.getSelectionStart());
+			current = index < 0 ? -index - 1 : index;
+			if (current >= matches.length) current = 0;
+			if (select) {
+				showCurrent();
+			}
+		}
+		textFld.setForeground(q.isEmpty() || matches.length > 0 ? null : UnixColor.FireBrick);
+		updateCountLabel();
+		editor.repaint();
+	}
+
+	/** Returns the sorted array of positions of all case-insensitive
+	 * occurrences of the query in the text.
+	 */
+	private int[] findAll (String t, String q) {
+		int[] result = new int[64];
+		int n = 0;
+		int length = q.length();
+
+		if (lowerText != null) {
+			String lq = q.toLowerCase();
+			int pos = lowerText.indexOf(lq);
+			while (pos > -1) {
+				if (n == result.length) result = Arrays.copyOf(result, n * 2);
+				result[n++] = pos;
+				pos = lowerText.indexOf(lq, pos + 1);
+			}
+		} else {
+			for (int pos = 0; pos <= t.length() - length; pos++) {
+				if (t.regionMatches(true, pos, q, 0, length)) {
+					if (n == result.length) result = Arrays.copyOf(result, n * 2);
+					result[n++] = pos;
+				}
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/** Moves the current match forward or backward and selects it in the
+	 * editor.
+	 *
+	 * @param forward boolean
+	 */
+	public void selectNext (boolean forward) {
+		if (matches.length == 0) return;
+		current = forward ? (current + 1) % matches.length
+				: (current - 1 + matches.length) % matches.length;
+		showCurrent();
+		updateCountLabel();
+		editor.repaint();
+	}
+
+	private void showCurrent () {
+		int pos = matches[current];
+		editor.select(pos, pos + query.length());
+		try {
+			@SuppressWarnings("deprecation")
+			Rectangle r = editor.modelToView(pos);
+			if (r != null) {
+				editor.scrollRectToVisible(r);
+			}
+		} catch (BadLocationException e) {
+		}
+	}
+
+	private void updateCountLabel () {
+		countLabel.setText(query.isEmpty() ? "" : (current + 1) + " / " + matches.length);
+	}
+
+	/** Paints highlights for the matches in the visible part of the editor.
+	 * This is called by the editor after painting its component.
+	 *
+	 * @param g {@code Graphics}
+	 */
+	@SuppressWarnings("deprecation")
+	public void paintMatches (Graphics g) {
+		if (!isVisible() || matches.length == 0) return;
+		Rectangle visible = editor.getVisibleRect();
+		int start = editor.viewToModel(new Point(visible.x, visible.y));
+		int end = editor.viewToModel(new Point(visible.x + visible.width, visible.y + visible.height));
+		int length = query.length();
+
+		// first match which may reach into the visible range
+		int index = Arrays.binarySearch(matches, Math.max(0, start - length));
+		if (index < 0) index = -index - 1;
+
+		try {
+			for (int i = index; i < matches.length && matches[i] <= end; i++) {
+				int pos = matches[i];
+				Rectangle r0 = editor.modelToView(pos);
+				Rectangle r1 = editor.modelToView(pos + length);
+				if (r0 == null || r1 == null) continue;
+				g.setColor(i == current ? CURRENT_COLOR : HIGHLIGHT_COLOR);
+				if (r0.y == r1.y) {
+					g.fillRect(r0.x, r0.y, Math.max(2, r1.x - r0.x), r0.height);
+				} else {
+					// match wraps over a line end
+					g.fillRect(r0.x, r0.y, Math.max(2, editor.getWidth() - r0.x), r0.height);
+					g.fillRect(0, r1.y, r1.x, r1.height);
+				}
+			}
+		} catch (BadLocationException e) {
+		}
+	}
+}
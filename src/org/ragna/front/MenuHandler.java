@@ -45,6 +45,7 @@ import org.ragna.util.PersistentOptions;
 import org.ragna.util.ActionManager.UnknownActionException;
 
 import kse.utilclass.gui.ActiveJMenu;
+import kse.utilclass.gui.MenuActivist;
 import kse.utilclass2.gui.JMenuBarReader;
 import kse.utilclass2.gui.SkilledJMenuBar;
 
@@ -114,8 +115,9 @@ public class MenuHandler {
    private JMenu createEditMenu () {
 	   JMenu menu = null;
 	   DocumentDisplay display = DisplayManager.get().getSelectedDisplay();
-	   if (display != null) {
-		   menu = display.getEditMenuAcivist().getJMenu(); 
+	   MenuActivist activist = display == null ? null : display.getEditMenuAcivist();
+	   if (activist != null) {
+		   menu = activist.getJMenu(); 
 	   }
 	   return menu;
    }
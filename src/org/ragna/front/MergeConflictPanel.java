@@ -0,0 +1,135 @@
+/*
+*  File: MergeConflictPanel.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.front;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+import java.util.Objects;
+
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableColumnModel;
+
+import org.ragna.core.DocumentMerge.Conflict;
+import org.ragna.core.DocumentMerge.Resolution;
+import org.ragna.core.Global;
+import org.ragna.front.util.MessageDialog;
+import org.ragna.front.util.ResourceLoader;
+
+/** Panel to let the user decide the conflicts of a merge of document and
+ * mirror individually. Each conflict is listed with its kind and article
+ * title; a marked row takes the version of the mirror. The resolutions of
+ * the conflicts are set by {@code applyChoices()}.
+ */
+public class MergeConflictPanel extends JPanel {
+
+	private ResourceLoader res = Global.res;
+	private Conflict[] items;
+	private boolean[] mirror;
+	private JTable table;
+
+	/** Creates a new merge conflict panel for the given conflicts. The
+	 * initial choices are the current resolutions of the conflicts.
+	 *
+	 * @param conflicts {@code List<Conflict>} conflicts of a merge
+	 * @param text String message text or resource token
+	 */
+	public MergeConflictPanel (List<Conflict> conflicts, String text) {
+		Objects.requireNonNull(conflicts);
+		items = conflicts.toArray(new Conflict[conflicts.size()]);
+		mirror = new boolean[items.length];
+		for (int i = 0; i < items.length; i++) {
+			mirror[i] = items[i].getResolution() == Resolution.THEIRS;
+		}
+
+		// construct the table
+		table = new JTable(new OurTableModel());
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		TableColumnModel colModel = table.getColumnModel();
+		colModel.getColumn(0).setHeaderValue(res.getDisplay("label.merge.mirror"));
+		colModel.getColumn(0).setMaxWidth(60);
+		colModel.getColumn(1).setHeaderValue(res.getDisplay("label.merge.conflict"));
+		colModel.getColumn(2).setHeaderValue(res.getDisplay("label.article"));
+
+		// construct the main panel
+		setPreferredSize(new Dimension(500, 300));
+		setLayout(new BorderLayout(0, 10));
+		if (text != null) {
+			add(MessageDialog.createMessageTextLabel(text), BorderLayout.NORTH);
+		}
+		add(new JScrollPane(table));
+	}
+
+	/** Sets the resolutions of the conflicts to the user's choices. */
+	public void applyChoices () {
+		if (table.isEditing()) {
+			table.getCellEditor().stopCellEditing();
+		}
+		for (int i = 0; i < items.length; i++) {
+			items[i].setResolution(mirror[i] ? Resolution.THEIRS : Resolution.OURS);
+		}
+	}
+
+	private class OurTableModel extends AbstractTableModel {
+
+		@Override
+		public int getColumnCount() {return 3;}
+
+		@Override
+		public int getRowCount() {return items.length;}
+
+		@Override
+		public Class<?> getColumnClass (int columnIndex) {
+			return columnIndex == 0 ? Boolean.class : String.class;
+		}
+
+		@Override
+		public boolean isCellEditable (int rowIndex, int columnIndex) {
+			return columnIndex == 0;
+		}
+
+		@Override
+		public void setValueAt (Object value, int rowIndex, int columnIndex) {
+			if (columnIndex == 0) {
+				mirror[rowIndex] = Boolean.TRUE.equals(value);
+				fireTableCellUpdated(rowIndex, columnIndex);
+			}
+		}
+
+		@Override
+		public Object getValueAt (int rowIndex, int columnIndex) {
+			Conflict c = items[rowIndex];
+			switch (columnIndex) {
+			case 0:  return mirror[rowIndex];
+			case 1:  return res.getDisplay("merge.conflict." + c.getType().name());
+			case 2:  return c.getTitle();
+			default: return "";
+			}
+		}
+	}
+}
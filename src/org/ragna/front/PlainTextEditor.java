@@ -24,6 +24,7 @@ Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
 package org.ragna.front;
 
 import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
@@ -57,6 +58,8 @@ public class PlainTextEditor extends AmpleTextArea implements ArticleEditor {
 	private static final Color BRIGHT_CARET_COLOR = UnixColor.LightGrey;
 	private static final Color DARK_CARET_COLOR = UnixColor.Indigo;
 	
+	private IncrementalFindBar findBar;
+	
 	public PlainTextEditor (String name) {
 		super (name);
 		init();
@@ -104,6 +107,7 @@ public class PlainTextEditor extends AmpleTextArea implements ArticleEditor {
 	private void init () {
         setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 0));
         setExecutor(ActionHandler.get().getExecutor());
+        findBar = new IncrementalFindBar(this);
         
         defineMenuActions();
         defineKeys();
@@ -125,6 +129,41 @@ public class PlainTextEditor extends AmpleTextArea implements ArticleEditor {
 		map.removeKeyStrokeBinding(key);
 		key2 = KeyStroke.getKeyStroke( KeyEvent.VK_T, InputEvent.ALT_MASK );
 		map.addActionForKeyStroke(key2, action);
+		
+		// CTRL-SHIFT-F opens the incremental find bar, F3 moves to next match
+		key = KeyStroke.getKeyStroke( KeyEvent.VK_F, InputEvent.CTRL_MASK | InputEvent.SHIFT_MASK );
+		map.addActionForKeyStroke(key, new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {
+				findBar.open();
+			}
+		});
+		key = KeyStroke.getKeyStroke( KeyEvent.VK_F3, 0 );
+		map.addActionForKeyStroke(key, new AbstractAction() {
+			@Override
+			public void actionPerformed (ActionEvent e) {
+				if (findBar.isVisible()) {
+					findBar.selectNext(true);
+				} else {
+					findBar.open();
+				}
+			}
+		});
+	}
+	
+	/** Returns the incremental find bar of this editor. The bar is not part 
+	 * of the editor component and has to be placed by the editor's container.
+	 * 
+	 * @return {@code IncrementalFindBar}
+	 */
+	public IncrementalFindBar getFindBar () {return findBar;}
+	
+	@Override
+	protected void paintComponent (Graphics g) {
+		super.paintComponent(g);
+		if (findBar != null) {
+			findBar.paintMatches(g);
+		}
 	}
 
 	private void defineMenuActions() {
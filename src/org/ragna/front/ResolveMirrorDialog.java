@@ -35,6 +35,7 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 
 import org.ragna.core.ActionHandler;
+import org.ragna.core.DocumentDiff;
 import org.ragna.core.PadDocument;
 import org.ragna.front.util.ButtonBarDialog;
 import org.ragna.front.util.ButtonBarListener;
@@ -50,10 +51,11 @@ public class ResolveMirrorDialog extends ButtonBarDialog implements ButtonBarLis
    public static final int REPLACE_ACTION = 1;
    public static final int DELETE_ACTION = 2;
    public static final int SHOW_ACTION = 3;
+   public static final int MERGE_ACTION = 4;
    public static final int NO_ACTION = 0;
 
    private File origFile;
-   private JRadioButton deleteButton, actionButton, openButton;
+   private JRadioButton deleteButton, actionButton, mergeButton, openButton;
    private int action;
 
    /**
@@ -65,12 +67,28 @@ public class ResolveMirrorDialog extends ButtonBarDialog implements ButtonBarLis
     * @throws IOException if an IO error occurred 
     */
    public ResolveMirrorDialog (PadDocument document, File mirror)  throws IllegalArgumentException, IOException {
+	  this(document, mirror, null);
+   }
+
+   /**
+    * Constructs a mirror resolving dialog to obtain user's choice of action
+    * which shows a summary of the differences between document and mirror.
+    * 
+    * @param document {@code PadDocument} the reference document
+    * @param mirror File the mirror file
+    * @param diff {@code DocumentDiff} differences from document to mirror, 
+    *        may be null
+    * @throws IllegalArgumentException if the original file was not found (undefined)
+    * @throws IOException if an IO error occurred 
+    */
+   public ResolveMirrorDialog (PadDocument document, File mirror, DocumentDiff diff)  
+		   throws IllegalArgumentException, IOException {
 	  super();
       setModal(true);
-      init(document, mirror);
+      init(document, mirror, diff);
    }
 
-   private void init (PadDocument document, File mirror) throws IOException {
+   private void init (PadDocument document, File mirror, DocumentDiff diff) throws IOException {
 	  Objects.requireNonNull(document, "document is null");
 	  Objects.requireNonNull(mirror, "mirror is null");
       ButtonGroup grp;
@@ -111,12 +129,20 @@ public class ResolveMirrorDialog extends ButtonBarDialog implements ButtonBarLis
       msgLabel.setFont( msgLabel.getFont().deriveFont(Font.PLAIN) );
       pane.add( msgLabel );
       
+      // summary of article changes in the mirror
+      if (diff != null) {
+    	  JLabel diffLabel = new JLabel( diff.getSummaryText() );
+    	  diffLabel.setFont( diffLabel.getFont().deriveFont(Font.PLAIN) );
+    	  pane.add( diffLabel );
+      }
+      
       // create radio buttons
       panel = new JPanel( new VerticalFlowLayout(10) );
       pane.add( panel );
       grp = new ButtonGroup();
 	  actionButton = new JRadioButton( ActionHandler.displayText("radio.resolvemirror.replace") );
       deleteButton = new JRadioButton( ActionHandler.displayText("radio.resolvemirror.delete") );
+      mergeButton = new JRadioButton( ActionHandler.displayText("radio.resolvemirror.merge") );
       openButton = new JRadioButton( ActionHandler.displayText("radio.resolvemirror.open") );
       if (isReplacer) {
     	  actionButton.setSelected(true);
@@ -125,6 +151,10 @@ public class ResolveMirrorDialog extends ButtonBarDialog implements ButtonBarLis
       } else {
     	  deleteButton.setSelected(true);
       }
+      if (diff != null && !diff.isEmpty()) {
+    	  grp.add( mergeButton );
+    	  panel.add( mergeButton );
+      }
       grp.add( deleteButton );
       grp.add( openButton );
       panel.add( deleteButton );
@@ -168,7 +198,8 @@ public class ResolveMirrorDialog extends ButtonBarDialog implements ButtonBarLis
 
    @Override
    public boolean okButtonPerformed () {
-      action = actionButton.isSelected() ? REPLACE_ACTION : deleteButton.isSelected() ? DELETE_ACTION : SHOW_ACTION;
+      action = actionButton.isSelected() ? REPLACE_ACTION : mergeButton.isSelected() ? MERGE_ACTION 
+    		  : deleteButton.isSelected() ? DELETE_ACTION : SHOW_ACTION;
       dispose();
       return true;
    }
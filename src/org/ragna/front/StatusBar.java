@@ -62,7 +62,7 @@ public class StatusBar extends JPanel {
    private static Timer timer;
    
    /** Marker to identify the operation target for this status-bar. */
-   private enum OperationType { message, counter, dataformat, activity, font, activeCell }; 
+   private enum OperationType { message, counter, dataformat, activity, font, activeCell, mirror }; 
 
    private Queue<MessageOrder> msgQueue = 
                     new ArrayBlockingQueue<MessageOrder>(MSG_QUEUE_CAPACITY);
@@ -72,6 +72,7 @@ public class StatusBar extends JPanel {
    private JLabel          activeLabel = new JLabel();
    private JLabel          formatLabel = new JLabel();
    private JLabel          counterLabel = new JLabel();
+   private JLabel          mirrorLabel = new JLabel();
    private RemoverTask     statusTextRemover;
    private RemoverTask     activeCellRemover;
    private MessageOrder    currentMsgOrder;
@@ -126,6 +127,13 @@ private void init () {
          BorderFactory.createMatteBorder( 1, 0, 1, 1, Color.gray ),
          BorderFactory.createEmptyBorder( 2, 4, 2, 4 ) ));
    
+   // mirror latency cell
+   rightPanel.add( mirrorLabel, BorderLayout.WEST );
+   mirrorLabel.setVisible( false );
+   mirrorLabel.setBorder( BorderFactory.createCompoundBorder(  
+         BorderFactory.createMatteBorder( 1, 0, 1, 1, Color.gray ),
+         BorderFactory.createEmptyBorder( 2, 4, 2, 4 ) ));
+   
 }  // init
 
 /** Sets the {@code Timer} thread for this status-bar. If the value is null
@@ -233,6 +241,16 @@ public void setRecordCounterCell ( String text ) {
    startOperation( OperationType.counter, text );
 }
 
+/** Sets the content of the "Mirror" cell of the status line, which shows
+ *  the latency of the last mirror write. 
+ *  If <b>null</b> the cell will be invisible. 
+ * 
+ *  @param text new content of Mirror cell
+ */
+public void setMirrorCell ( String text ) {
+   startOperation( OperationType.mirror, text );
+}
+
 /** Informs StatusBar about the current program activity modus. This will set 
  *  the content of the "Program Activity" cell.
  * 
@@ -520,6 +538,15 @@ private class SwingOperation implements Runnable {
             }
             break;
             
+         case mirror:
+            if ( par == null ) {
+               mirrorLabel.setVisible( false );
+            } else {
+               mirrorLabel.setText( par.toString() );
+               mirrorLabel.setVisible( true );
+            }
+            break;
+            
          case activity:
             boolean activ = par != null && ((Integer)par).intValue() == ACTIVE;
 //            Log.log( 10, "(StatusBar.SwingOperation.run) ACTIVITY with ".concat( String.valueOf( activ )));
@@ -534,6 +561,7 @@ private class SwingOperation implements Runnable {
                if ( font != null & counterLabel != null ) {
                   font = font.deriveFont( Font.PLAIN );
                   counterLabel.setFont( font );
+                  mirrorLabel.setFont( font );
                   formatLabel.setFont( font );
                   textField.setFont( font );
                }
@@ -35,8 +35,10 @@ import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 
+import org.ragna.core.ArticleRankIndex.RankedTextPosition;
 import org.ragna.core.Global;
 import org.ragna.core.TextSearcher.DocumentTextPosition;
 import org.ragna.front.util.ResourceLoader;
@@ -53,6 +55,7 @@ public class TextLocationListPanel extends JPanel {
 	private JScrollPane scrollPane;
 	private String expression;
 	private int scope;
+	private boolean ranked;
 	
 	/** Creates a new location list panel w/ the given text locations and
 	 * search parameters.
@@ -81,6 +84,7 @@ public class TextLocationListPanel extends JPanel {
 	private void init (DocumentTextPosition[] positions) {
 		Objects.requireNonNull(positions);
 		items = positions;
+		ranked = positions.length > 0 && positions[0] instanceof RankedTextPosition;
 
 		// construct the table
 		model = new OurTableModel();
@@ -90,18 +94,21 @@ public class TextLocationListPanel extends JPanel {
 		
 		// set the column headers
 		TableColumnModel colModel = table.getColumnModel();
-		switch (model.columns) {
-		case 2:  
-			colModel.getColumn(0).setHeaderValue(res.getDisplay("label.article"));
-			colModel.getColumn(1).setHeaderValue(res.getDisplay("label.position"));
-			colModel.getColumn(1).setMaxWidth(60);
-			break;
-		case 3:
-			colModel.getColumn(0).setHeaderValue(res.getDisplay("label.document"));
-			colModel.getColumn(1).setHeaderValue(res.getDisplay("label.article"));
-			colModel.getColumn(2).setHeaderValue(res.getDisplay("label.position"));
-			colModel.getColumn(2).setMaxWidth(60);
-			break;
+		for (int i = 0; i < model.columns.length; i++) {
+			TableColumn column = colModel.getColumn(i);
+			switch (model.columns[i]) {
+			case 0: column.setHeaderValue(res.getDisplay("label.document")); break;
+			case 1: column.setHeaderValue(res.getDisplay("label.article")); break;
+			case 2: column.setHeaderValue(res.getDisplay("label.position"));
+					column.setMaxWidth(60);
+					break;
+			case 3: column.setHeaderValue(res.getDisplay("label.score"));
+					column.setMaxWidth(60);
+					break;
+			case 4: column.setHeaderValue(res.getDisplay("label.snippet"));
+					column.setPreferredWidth(250);
+					break;
+			}
 		}
 		
 		// construct the parameter information panel
@@ -134,7 +141,7 @@ public class TextLocationListPanel extends JPanel {
 		}
 		
 		// construct the main panel
-		setPreferredSize(new Dimension(400, 250));
+		setPreferredSize(new Dimension(ranked ? 600 : 400, 250));
 		setLayout(new BorderLayout(0, 10));
 		add(comPanel, BorderLayout.NORTH);
 		scrollPane = new JScrollPane(table);
@@ -184,10 +191,16 @@ public class TextLocationListPanel extends JPanel {
 	}
 	
 	private class OurTableModel extends AbstractTableModel {
-		private int columns;
+		/** Column identifiers: 0 = document, 1 = article, 2 = position, 
+		 * 3 = score, 4 = snippet. */
+		private int[] columns;
 		
 		OurTableModel () {
-			columns = scope == 0 ? 3 : 2;
+			if (ranked) {
+				columns = scope == 0 ? new int[] {0, 1, 3, 4} : new int[] {1, 3, 4};
+			} else {
+				columns = scope == 0 ? new int[] {0, 1, 2} : new int[] {1, 2};
+			}
 		}
 		
 //		/** Counts the number of different documents in the list of text
@@ -209,7 +222,7 @@ public class TextLocationListPanel extends JPanel {
 //		}
 
 		@Override
-		public int getColumnCount() {return columns;}
+		public int getColumnCount() {return columns.length;}
 
 		@Override
 		public int getRowCount() {return items.length;}
@@ -217,14 +230,13 @@ public class TextLocationListPanel extends JPanel {
 		@Override
 		public Object getValueAt (int rowIndex, int columnIndex) {
 			DocumentTextPosition pos = items[rowIndex];
-			if (columns == 2) {
-				columnIndex++;
-			}
 			Object obj;
-			switch (columnIndex) {
+			switch (columns[columnIndex]) {
 			case 0:  obj = pos.getDocument().getShortTitle(); break;
 			case 1:  obj = pos.getArticle().getShortTitle(); break;
 			case 2:  obj = pos.getCursorPos(); break;
+			case 3:  obj = String.format("%.2f", ((RankedTextPosition)pos).getScore()); break;
+			case 4:  obj = ((RankedTextPosition)pos).getSnippet(); break;
 			default: obj = "";
 			}
 			return obj;
@@ -23,6 +23,8 @@ Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
 
 package org.ragna.front;
 
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,6 +55,7 @@ public class TextSearchPanel extends JPanel implements AncestorListener {
 	private JComboBox<String> textFld;
 	private JCheckBox sensitiveChk;
 	private JCheckBox wholeWordChk;
+	private JCheckBox rankedChk;
 	private JRadioButton scopeDoc, scopeArt, scopeAll;
 	private boolean articleEnabled = true;
 	
@@ -77,10 +80,22 @@ public class TextSearchPanel extends JPanel implements AncestorListener {
 		sensitiveChk.setIconTextGap(6);
 		wholeWordChk = new JCheckBox(res.getDisplay("find.checkWD"));
 		wholeWordChk.setIconTextGap(6);
+		rankedChk = new JCheckBox(res.getDisplay("find.checkRK"));
+		rankedChk.setIconTextGap(6);
+		rankedChk.setToolTipText(res.getDisplay("tooltip.find.ranked"));
+		rankedChk.addItemListener(new ItemListener() {
+			@Override
+			public void itemStateChanged (ItemEvent e) {
+				// ranked search works on normalised words only
+				sensitiveChk.setEnabled(!isRankedSearch());
+				wholeWordChk.setEnabled(!isRankedSearch());
+			}
+		});
 
 		JPanel panel = new JPanel();
 		panel.add(sensitiveChk);
 		panel.add(wholeWordChk);
+		panel.add(rankedChk);
 //		panel.setBackground(UnixColor.Thistle);
 		blockPanel.add(panel);
 		
@@ -189,11 +204,25 @@ public class TextSearchPanel extends JPanel implements AncestorListener {
 		wholeWordChk.setSelected(v);
 	}
 
+	/** Whether the user requested a search ranked by relevance of articles
+	 * instead of a list of text positions.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isRankedSearch () {
+		return rankedChk.isSelected();
+	}
+
+	public void setRankedSearch (boolean v) {
+		rankedChk.setSelected(v);
+	}
+
 	@Override
 	public void ancestorAdded(AncestorEvent event) {
 		PersistentOptions options = Global.getOptions();
 		setCaseSensitive(options.isOptionSet("searchCaseSensitive"));
 		setWholeWordOnly(options.isOptionSet("searchWholeWords"));
+		setRankedSearch(options.isOptionSet("searchRanked"));
 		
 		// retrieve history list of search values into combo-box
 		List<String> list = options.getStringList("textSearchValues");
@@ -220,6 +249,7 @@ public class TextSearchPanel extends JPanel implements AncestorListener {
 		PersistentOptions options = Global.getOptions();
 		options.setOption("searchCaseSensitive", isCaseSensitive());
 		options.setOption("searchWholeWords", isWholeWordOnly());
+		options.setOption("searchRanked", isRankedSearch());
 		
 		// complete the value input (end edit)
 		getInputText();
@@ -113,13 +113,13 @@ public class ToolbarHandler {
 
    public static JToolBar createTreeToolBar() {
       AwarenessToolBar toolbar = new AwarenessToolBar("hasTreeToolbar");
-      toolbar.loadToolbarFromActions2(TOOLBAR_VALUES_TREE);
+      toolbar.loadToolbarWhenVisible(TOOLBAR_VALUES_TREE);
       return toolbar;
    }
 
    public static JToolBar createArticleToolBar () {
       AwarenessToolBar toolbar = new AwarenessToolBar("hasArticleToolbar");
-      toolbar.loadToolbarFromActions2(TOOLBAR_VALUES_ARTICLE);
+      toolbar.loadToolbarWhenVisible(TOOLBAR_VALUES_ARTICLE);
       return toolbar;
    }
 
@@ -201,6 +201,8 @@ public class ToolbarHandler {
                         implements PropertyChangeListener {
       
       private String visibleProperty;
+      /** Action names waiting to be loaded when the toolbar becomes visible. */
+      private String pendingActions;
       
       /** Creates a new {@code AwarenessToolBar} which is visible with the given
        * property in global options.
@@ -216,9 +218,24 @@ public class ToolbarHandler {
          boolean visible = Global.getOptions().isOptionSet(visibleProperty);
          setVisible(visible);
          setMinimumSize(new Dimension(0,0));
-         
-         // register at global options for property change events
+      }
+      
+      /** Registers at global options for property change events while this
+       * toolbar is part of a displayable hierarchy, so that toolbars of 
+       * released document displays are not held by the options.
+       */
+      @Override
+      public void addNotify () {
+         super.addNotify();
+         setVisible(Global.getOptions().isOptionSet(visibleProperty));
          Global.getOptions().addPropertyChangeListener(visibleProperty, this);
+         loadPendingActions();
+      }
+      
+      @Override
+      public void removeNotify () {
+         Global.getOptions().removePropertyChangeListener(visibleProperty, this);
+         super.removeNotify();
       }
       
       /** Loads the contents (icons etc.) of this toolbar by use of a definition
@@ -278,6 +295,28 @@ public class ToolbarHandler {
          if ( key.equals(visibleProperty) ) {
             boolean visible = Boolean.valueOf(newValue);
             setVisible(visible);
+            loadPendingActions();
+         }
+      }
+
+      /** Loads the contents of this toolbar in the modus of 
+       * {@code loadToolbarFromActions2()}. If the toolbar is currently not
+       * visible, loading is postponed until it becomes visible, which saves
+       * the buttons of hidden toolbars in every document display.
+       * 
+       * @param actions String list of names
+       */
+      public void loadToolbarWhenVisible (String actions) {
+         pendingActions = actions;
+         loadPendingActions();
+      }
+      
+      private void loadPendingActions () {
+         if (pendingActions != null && isVisible()) {
+            String actions = pendingActions;
+            pendingActions = null;
+            loadToolbarFromActions2(actions);
+            revalidate();
          }
       }
 
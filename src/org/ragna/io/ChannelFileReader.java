@@ -0,0 +1,179 @@
+/*
+*  File: ChannelFileReader.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/** A character reader which decodes a file read through a file-channel
+ * into a large direct buffer, avoiding the copying of file data through
+ * stream buffers. Characters are decoded in large chunks; runs of ASCII
+ * bytes are converted directly without the charset decoder. The ASCII
+ * shortcut requires an ASCII compatible charset without decoding state,
+ * which is the case for all charsets allowed for Treepad files.
+ *
+ * <p>The file is not memory-mapped because a mapping outlives the closing
+ * of its channel until garbage collection, and on some platforms a mapped
+ * file cannot be replaced, as it is by a subsequent save of the document.
+ *
+ * <p>Malformed or unmappable input is replaced as with
+ * {@code InputStreamReader}.
+ */
+public class ChannelFileReader extends Reader {
+
+	/** Size of the file read buffer. */
+	private static final int READ_BUFFER = 4 * 1024 * 1024;
+	/** Size of the decoded character chunk. */
+	private static final int CHUNK_SIZE = 256 * 1024;
+	/** Maximum number of bytes passed to the decoder at once. */
+	private static final int DECODE_SPAN = 256;
+
+	private FileChannel channel;
+	private CharsetDecoder decoder;
+	private long fileLength;
+	private long readPos;
+	private ByteBuffer window = ByteBuffer.allocateDirect(READ_BUFFER);
+	private CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+	private boolean flushed;
+
+	/** Creates a reader for the given file and charset.
+	 *
+	 * @param file File cleartext file
+	 * @param charset {@code Charset} ASCII compatible, stateless charset
+	 * @throws IOException
+	 */
+	public ChannelFileReader (File file, Charset charset) throws IOException {
+		Objects.requireNonNull(file, "file is null");
+		Objects.requireNonNull(charset, "charset is null");
+		if (!file.isFile())
+			throw new FileNotFoundException(file.getAbsolutePath());
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		fileLength = channel.size();
+		chars.flip();
+		window.flip();
+		readWindow();
+	}
+
+	/** Moves unread bytes to the start of the window and fills it up with
+	 * the following data of the file.
+	 */
+	private void readWindow () throws IOException {
+		window.compact();
+		while (window.hasRemaining() && readPos < fileLength) {
+			int n = channel.read(window, readPos);
+			if (n < 0) {
+				// file has been truncated
+				fileLength = readPos;
+				break;
+			}
+			readPos += n;
+		}
+		window.flip();
+	}
+
+	/** Fills the character buffer with the next chunk of decoded data.
+	 *
+	 * @return boolean false if the end of data is reached
+	 */
+	private boolean fillChars () throws IOException {
+		if (flushed) return false;
+		chars.clear();
+		while (chars.hasRemaining()) {
+			// convert a leading ASCII run directly
+			int pos = window.position();
+			int n = Math.min(window.remaining(), chars.remaining());
+			int i = 0;
+			for (byte b; i < n && (b = window.get(pos + i)) >= 0; i++) {
+				chars.put((char) b);
+			}
+			window.position(pos + i);
+			if (!chars.hasRemaining()) break;
+
+			// decode a short span of non-ASCII input
+			int limit = window.limit();
+			boolean endOfInput = readPos == fileLength;
+			if (window.hasRemaining()) {
+				pos = window.position();
+				int stop = Math.min(limit, pos + DECODE_SPAN);
+				window.limit(stop);
+				CoderResult cr = decoder.decode(window, chars, endOfInput && stop == limit);
+				window.limit(limit);
+				if (cr.isOverflow()) break;
+				if (window.position() > pos) continue;
+			}
+
+			// window exhausted or ending with an incomplete sequence
+			if (endOfInput) {
+				decoder.decode(window, chars, true);
+				decoder.flush(chars);
+				flushed = true;
+				break;
+			}
+			readWindow();
+		}
+		chars.flip();
+		return chars.hasRemaining() || !flushed;
+	}
+
+	@Override
+	public int read (char[] cbuf, int off, int len) throws IOException {
+		if (channel == null)
+			throw new IOException("reader closed");
+		if (len == 0) return 0;
+		while (!chars.hasRemaining()) {
+			if (!fillChars()) return -1;
+		}
+		int n = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, n);
+		return n;
+	}
+
+	@Override
+	public boolean ready () throws IOException {
+		return channel != null && (chars.hasRemaining() || !flushed);
+	}
+
+	@Override
+	public void close () throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			window = null;
+		}
+	}
+}
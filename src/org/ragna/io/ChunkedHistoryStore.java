@@ -0,0 +1,478 @@
+/*
+*  File: ChunkedHistoryStore.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.Util;
+
+/** A deduplicating history store for file versions. Files are split into
+ * chunks at content-defined boundaries (gear rolling hash), so that an
+ * edit only changes the chunks around it. Chunks are stored once as
+ * compressed blobs named by their SHA-256 value; a version is a manifest
+ * file listing the chunks of the file. Disk use thereby grows with the
+ * changed data of a file rather than with its size.
+ *
+ * <p>Versions are retained in layers like in {@code LayeredFileSafe}: the
+ * youngest version of each of the last days, months and years. Manifest
+ * files carry the modify time of the stored file and are returned as the
+ * history of a file; their content is obtained by {@code restore()}.
+ */
+public class ChunkedHistoryStore {
+
+	private static final String VERSION_SUFFIX = ".hver";
+	private static final byte[] MAGIC = "RHVM1".getBytes(StandardCharsets.US_ASCII);
+	private static final int HASH_LENGTH = 32;
+
+	private static final int MIN_CHUNK = 2 * 1024;
+	private static final int AVG_CHUNK = 8 * 1024;
+	private static final int MAX_CHUNK = 64 * 1024;
+	/** Cut condition before reaching the average size (15 bits zero). */
+	private static final int SHIFT_SMALL = 64 - 15;
+	/** Cut condition after reaching the average size (11 bits zero). */
+	private static final int SHIFT_LARGE = 64 - 11;
+	private static final long[] GEAR = new long[256];
+
+	static {
+		Random rnd = new Random(0x5241474eL);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = rnd.nextLong();
+		}
+	}
+
+	private final File chunkDir;
+	private final File versionDir;
+	private final int days;
+	private final int months;
+	private final int years;
+
+	/** Creates a history store in the given directory.
+	 *
+	 * @param dir File store directory
+	 * @param days int number of daily versions
+	 * @param months int number of monthly versions
+	 * @param years int number of yearly versions
+	 */
+	public ChunkedHistoryStore (File dir, int days, int months, int years) {
+		Objects.requireNonNull(dir, "dir is null");
+		chunkDir = new File(dir, "chunks");
+		versionDir = new File(dir, "versions");
+		this.days = days;
+		this.months = months;
+		this.years = years;
+	}
+
+	/** Stores a version of the given file. Does nothing if the file is
+	 * identical to its youngest stored version.
+	 *
+	 * @param file File file to store
+	 * @return File version manifest or null if nothing was stored
+	 * @throws IOException
+	 */
+	public synchronized File storeFile (File file) throws IOException {
+		Objects.requireNonNull(file, "file is null");
+		if (!file.isFile())
+			throw new FileNotFoundException(file.getAbsolutePath());
+		long time = System.currentTimeMillis();
+		long fileTime = file.lastModified();
+
+		// chunk the file and write new chunk blobs
+		MessageDigest fileDigest = sha256();
+		List<byte[]> hashes = new ArrayList<>();
+		List<Integer> lengths = new ArrayList<>();
+		long length = 0;
+		int stored = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buf = new byte[MAX_CHUNK * 2];
+			int fill = 0, n;
+			boolean eof = false;
+			while (true) {
+				while (!eof && fill < buf.length) {
+					n = in.read(buf, fill, buf.length - fill);
+					if (n == -1) {
+						eof = true;
+					} else {
+						fill += n;
+					}
+				}
+				if (fill == 0) break;
+
+				int len = cutPoint(buf, fill);
+				MessageDigest digest = sha256();
+				digest.update(buf, 0, len);
+				byte[] hash = digest.digest();
+				fileDigest.update(buf, 0, len);
+				if (writeChunk(hash, buf, len)) {
+					stored += len;
+				}
+				hashes.add(hash);
+				lengths.add(len);
+				length += len;
+				System.arraycopy(buf, len, buf, 0, fill - len);
+				fill -= len;
+			}
+		}
+		byte[] fileHash = fileDigest.digest();
+
+		// skip an unchanged file
+		File dir = getVersionDir(file);
+		File[] history = getHistory(file);
+		if (history.length > 0 && Arrays.equals(fileHash, readManifest(history[0]).fileHash)) {
+			return null;
+		}
+
+		// write the version manifest
+		dir.mkdirs();
+		File manifest = new File(dir, fileTime + VERSION_SUFFIX);
+		File temp = new File(dir, fileTime + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.write(MAGIC);
+			out.writeLong(length);
+			out.write(fileHash);
+			out.writeInt(hashes.size());
+			for (int i = 0; i < hashes.size(); i++) {
+				out.write(hashes.get(i));
+				out.writeInt(lengths.get(i));
+			}
+		}
+		Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		manifest.setLastModified(fileTime);
+
+		pruneVersions(dir);
+		Log.log(8, "(ChunkedHistoryStore.storeFile) stored version of " + file + ", " + hashes.size()
+				+ " chunks, new data = " + stored + " of " + length + ", time = "
+				+ (System.currentTimeMillis() - time) + " ms");
+		return manifest;
+	}
+
+	/** Returns the length of the next chunk in the given buffer. */
+	private static int cutPoint (byte[] buf, int fill) {
+		if (fill <= MIN_CHUNK) return fill;
+		int max = Math.min(fill, MAX_CHUNK);
+		int avg = Math.min(max, AVG_CHUNK);
+		long h = 0;
+		int i = MIN_CHUNK;
+		for (; i < avg; i++) {
+			h = (h << 1) + GEAR[buf[i] & 0xff];
+			if (h >>> SHIFT_SMALL == 0) return i + 1;
+		}
+		for (; i < max; i++) {
+			h = (h << 1) + GEAR[buf[i] & 0xff];
+			if (h >>> SHIFT_LARGE == 0) return i + 1;
+		}
+		return max;
+	}
+
+	/** Writes a chunk blob if it does not exist.
+	 *
+	 * @return boolean true if the blob was written
+	 */
+	private boolean writeChunk (byte[] hash, byte[] data, int len) throws IOException {
+		File f = getChunkFile(hash);
+		if (f.isFile()) return false;
+
+		// compress the chunk, keep it plain if compression does not pay
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data, 0, len);
+		deflater.finish();
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(len / 2 + 64);
+		byte[] buf = new byte[8192];
+		while (!deflater.finished() && bout.size() < len) {
+			bout.write(buf, 0, deflater.deflate(buf));
+		}
+		boolean compressed = deflater.finished() && bout.size() < len;
+		deflater.end();
+
+		f.getParentFile().mkdirs();
+		File temp = new File(f.getParentFile(), f.getName() + ".tmp");
+		try (OutputStream out = new FileOutputStream(temp)) {
+			out.write(compressed ? 1 : 0);
+			if (compressed) {
+				bout.writeTo(out);
+			} else {
+				out.write(data, 0, len);
+			}
+		}
+		Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return true;
+	}
+
+	/** Reads the data of a chunk blob. */
+	private byte[] readChunk (byte[] hash, int length) throws IOException {
+		byte[] blob = Files.readAllBytes(getChunkFile(hash).toPath());
+		if (blob.length == 0)
+			throw new IOException("empty chunk blob");
+		if (blob[0] == 0) {
+			return Arrays.copyOfRange(blob, 1, blob.length);
+		}
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(blob, 1, blob.length - 1);
+			byte[] data = new byte[length];
+			int n = inflater.inflate(data);
+			if (n != length || !inflater.finished())
+				throw new IOException("chunk length mismatch");
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("chunk data damaged", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/** Restores the file version of the given manifest into the target file.
+	 *
+	 * @param version File version manifest
+	 * @param target File destination file
+	 * @throws IOException if the version is damaged or cannot be written
+	 */
+	public synchronized void restore (File version, File target) throws IOException {
+		Objects.requireNonNull(target, "target is null");
+		Manifest m = readManifest(version);
+		MessageDigest digest = sha256();
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target), 65536)) {
+			for (int i = 0; i < m.hashes.length; i++) {
+				byte[] data = readChunk(m.hashes[i], m.lengths[i]);
+				if (data.length != m.lengths[i])
+					throw new IOException("chunk length mismatch");
+				digest.update(data);
+				out.write(data);
+			}
+		}
+		if (!Arrays.equals(digest.digest(), m.fileHash)) {
+			target.delete();
+			throw new IOException("history version is damaged: " + version);
+		}
+		target.setLastModified(version.lastModified());
+	}
+
+	/** Whether the given file is a version manifest of this store.
+	 *
+	 * @param file File
+	 * @return boolean
+	 */
+	public boolean isVersionFile (File file) {
+		File dir = file.getParentFile();
+		return file.getName().endsWith(VERSION_SUFFIX) && dir != null
+				&& versionDir.equals(dir.getParentFile());
+	}
+
+	/** Returns the version manifests of the given file in descending time
+	 * order (youngest first).
+	 *
+	 * @param file File original file
+	 * @return {@code File[]}
+	 * @throws IOException
+	 */
+	public synchronized File[] getHistory (File file) throws IOException {
+		File[] files = getVersionDir(file).listFiles((d, name) -> name.endsWith(VERSION_SUFFIX));
+		if (files == null) return new File[0];
+		Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+		return files;
+	}
+
+	/** Removes all versions of the given file and their unused chunks.
+	 *
+	 * @param file File original file
+	 */
+	public synchronized void clearFile (File file) {
+		try {
+			File dir = getVersionDir(file);
+			File[] files = dir.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					f.delete();
+				}
+			}
+			dir.delete();
+			collectGarbage();
+		} catch (IOException e) {
+			Log.log(5, "(ChunkedHistoryStore.clearFile) unable to clear history of " + file + ": " + e);
+		}
+	}
+
+	/** Removes the versions which have run out of their retention time
+	 * and the chunks which are no longer referenced.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void promote () throws IOException {
+		File[] dirs = versionDir.listFiles(File::isDirectory);
+		if (dirs == null) return;
+		for (File dir : dirs) {
+			pruneVersions(dir);
+		}
+		collectGarbage();
+	}
+
+	/** Deletes the versions in the given directory which are not retained
+	 * in the daily, monthly or yearly layers. The youngest version is
+	 * always retained.
+	 */
+	private void pruneVersions (File dir) {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(VERSION_SUFFIX));
+		if (files == null || files.length == 0) return;
+		Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+
+		ZoneId zone = ZoneId.systemDefault();
+		LocalDate today = LocalDate.now(zone);
+		YearMonth month = YearMonth.from(today);
+		Set<Object> layers = new HashSet<>();
+		for (int i = 0; i < files.length; i++) {
+			LocalDate date = Instant.ofEpochMilli(files[i].lastModified()).atZone(zone).toLocalDate();
+			YearMonth ym = YearMonth.from(date);
+			boolean keep = i == 0;
+			if (!date.isBefore(today.minusDays(days - 1))) {
+				keep |= layers.add(date);
+			}
+			if (!ym.isBefore(month.minusMonths(months - 1))) {
+				keep |= layers.add(ym);
+			}
+			if (date.getYear() > today.getYear() - years) {
+				keep |= layers.add(date.getYear());
+			}
+			if (!keep) {
+				files[i].delete();
+			}
+		}
+	}
+
+	/** Deletes all chunk blobs which are not referenced by a version. */
+	private void collectGarbage () throws IOException {
+		File[] dirs = chunkDir.listFiles(File::isDirectory);
+		if (dirs == null) return;
+
+		// mark referenced chunks
+		Set<String> used = new HashSet<>();
+		File[] versions = versionDir.listFiles(File::isDirectory);
+		if (versions != null) {
+			for (File dir : versions) {
+				File[] files = dir.listFiles((d, name) -> name.endsWith(VERSION_SUFFIX));
+				if (files == null) continue;
+				for (File f : files) {
+					for (byte[] hash : readManifest(f).hashes) {
+						used.add(Util.bytesToHex(hash));
+					}
+				}
+			}
+		}
+
+		// sweep unreferenced chunks
+		int count = 0;
+		for (File dir : dirs) {
+			File[] files = dir.listFiles();
+			if (files == null) continue;
+			for (File f : files) {
+				if (!used.contains(f.getName()) && f.delete()) {
+					count++;
+				}
+			}
+			dir.delete();
+		}
+		if (count > 0) {
+			Log.log(8, "(ChunkedHistoryStore.collectGarbage) removed chunks: " + count);
+		}
+	}
+
+	private File getChunkFile (byte[] hash) {
+		String name = Util.bytesToHex(hash);
+		return new File(new File(chunkDir, name.substring(0, 2)), name);
+	}
+
+	private File getVersionDir (File file) throws IOException {
+		byte[] hash = sha256().digest(file.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+		return new File(versionDir, Util.bytesToHex(Arrays.copyOf(hash, 16)));
+	}
+
+	private Manifest readManifest (File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("not a history version: " + file);
+			Manifest m = new Manifest();
+			m.length = in.readLong();
+			m.fileHash = new byte[HASH_LENGTH];
+			in.readFully(m.fileHash);
+			int count = in.readInt();
+			if (count < 0 || count > m.length / MIN_CHUNK + 1)
+				throw new IOException("illegal chunk count in " + file);
+			m.hashes = new byte[count][HASH_LENGTH];
+			m.lengths = new int[count];
+			for (int i = 0; i < count; i++) {
+				in.readFully(m.hashes[i]);
+				m.lengths[i] = in.readInt();
+			}
+			return m;
+		}
+	}
+
+	private static MessageDigest sha256 () {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	private static class Manifest {
+		long length;
+		byte[] fileHash;
+		byte[][] hashes;
+		int[] lengths;
+	}
+}
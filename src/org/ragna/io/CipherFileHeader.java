@@ -0,0 +1,181 @@
+/*
+*  File: CipherFileHeader.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jpws.pwslib.data.PwsFileHeaderV3;
+import org.jpws.pwslib.data.PwsPassphrase;
+
+import kse.com.fhash.main.FHL_FileInfo;
+import kse.utilclass.misc.Util;
+
+/** The cleartext part of the PWS3 header of an encrypted document file,
+ * consisting of salt, key stretching iterations and the hash of the
+ * stretched passphrase. The header is read with a single probe of the
+ * file and allows to verify key material without opening a cipher stream.
+ *
+ * <p>Headers are cached per file in the {@code FileMetadataCache}. A header
+ * also stores the results of key verifications (as digests, not the keys),
+ * the cipher format variant and the file information of the last 
+ * successful opening.
+ */
+public class CipherFileHeader {
+
+	/** Length of the cleartext header in bytes. */
+	public static final int HEADER_LENGTH = 72;
+	private static final byte[] PWS3_TAG = new byte[] {'P', 'W', 'S', '3'};
+
+	private byte[] salt;
+	private int iterations;
+	private byte[] passHash;
+	private Map<String, Boolean> verified = new HashMap<>();
+	private int format = -1;
+	private FHL_FileInfo fileInfo;
+
+	/** Creates a cipher header from the leading bytes of a file.
+	 *
+	 * @param data byte[] file data of at least {@code HEADER_LENGTH}
+	 */
+	CipherFileHeader (byte[] data) {
+		salt = Arrays.copyOfRange(data, 4, 36);
+		iterations = (data[36] & 0xff) | (data[37] & 0xff) << 8 | (data[38] & 0xff) << 16
+				| (data[39] & 0xff) << 24;
+		passHash = Arrays.copyOfRange(data, 40, 72);
+	}
+
+	/** Whether the given leading bytes of a file show the PWS3 format tag.
+	 *
+	 * @param data byte[] file data
+	 * @return boolean
+	 */
+	static boolean isPWS3 (byte[] data) {
+		return data.length >= PWS3_TAG.length && Util.equalArrays(PWS3_TAG, Arrays.copyOf(data, 4));
+	}
+
+	/** Returns the cipher header of the given file from the file metadata
+	 * cache. Returns null if the file is not an encrypted file of the PWS3
+	 * format.
+	 *
+	 * @param file File
+	 * @return {@code CipherFileHeader} or null
+	 * @throws IOException if the file cannot be read
+	 */
+	public static CipherFileHeader get (File file) throws IOException {
+		return FileMetadataCache.get().getCipherHeader(file);
+	}
+
+	/** Whether the given key material is valid for the file of this header.
+	 * The result of a verification is cached.
+	 *
+	 * @param key byte[] machine-near passphrase
+	 * @return boolean
+	 */
+	public boolean verifyKey (byte[] key) {
+		Objects.requireNonNull(key, "key is null");
+		String digest = keyDigest(key);
+		synchronized (verified) {
+			Boolean result = verified.get(digest);
+			if (result != null) return result;
+		}
+
+		// stretch the key with salt and iterations of the header
+		byte[] hash = PwsFileHeaderV3.genRandHash(new PwsPassphrase(key, "ASCII"), salt, iterations);
+		boolean ok = Arrays.equals(hash, passHash);
+		synchronized (verified) {
+			verified.put(digest, ok);
+		}
+		return ok;
+	}
+
+	/** Returns the stretched key (P') of the given key material if it is
+	 * valid for the file of this header, otherwise null. The stretching is
+	 * performed here with the key bytes taken literally; key material which
+	 * the cipher library would transform may result in null although it is
+	 * valid. A positive result is recorded for {@code verifyKey()}.
+	 *
+	 * @param key byte[] machine-near passphrase
+	 * @return byte[] stretched key or null
+	 */
+	byte[] stretchKey (byte[] key) {
+		Objects.requireNonNull(key, "key is null");
+		MessageDigest md = sha256();
+		md.update(key);
+		md.update(salt);
+		byte[] stretched = md.digest();
+		for (int i = 0; i < iterations; i++) {
+			stretched = md.digest(stretched);
+		}
+
+		if (!Arrays.equals(md.digest(stretched), passHash)) {
+			Arrays.fill(stretched, (byte) 0);
+			return null;
+		}
+		synchronized (verified) {
+			verified.put(keyDigest(key), Boolean.TRUE);
+		}
+		return stretched;
+	}
+
+	private static MessageDigest sha256 () {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private String keyDigest (byte[] key) {
+		MessageDigest md = sha256();
+		md.update(salt);
+		return Util.bytesToHex(md.digest(key));
+	}
+
+	public int getIterations () {return iterations;}
+
+	/** Returns the cipher format variant which was successful with the last
+	 * opening of the file or -1 if unknown.
+	 *
+	 * @return int
+	 */
+	public int getFormat () {return format;}
+
+	public void setFormat (int format) {this.format = format;}
+
+	/** Returns the file information of the last successful opening of the
+	 * file or null if unknown.
+	 *
+	 * @return {@code FHL_FileInfo} or null
+	 */
+	public FHL_FileInfo getFileInfo () {return fileInfo;}
+
+	public void setFileInfo (FHL_FileInfo info) {this.fileInfo = info;}
+}
@@ -0,0 +1,175 @@
+/*
+*  File: CipherStreamWriter.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import org.jpws.pwslib.data.HeaderFieldList;
+import org.jpws.pwslib.data.PwsBlockOutputStream;
+import org.jpws.pwslib.data.PwsFileOutputSocket;
+import org.jpws.pwslib.data.PwsPassphrase;
+import org.jpws.pwslib.data.PwsRawField;
+
+import kse.com.fhash.main.FHL_FileInfo;
+
+/** An output stream which encrypts its data into the FHL file format
+ * (PWS3 container) and writes the ciphertext directly to a target output
+ * stream. This is the streaming counterpart of {@code CipherOutputFile}
+ * which can only write to a file. The data header of the format contains
+ * cleartext length and CRC, hence these values of the given file info
+ * must be known before the stream is created.
+ *
+ * <p>Closing this stream finalises the cipher container but does not close
+ * the target stream.
+ */
+public class CipherStreamWriter extends OutputStream {
+
+	/** FHL header field type in the PWS3 header. */
+	private static final int FHL_HEADER_FIELD = 21;
+
+	private PwsBlockOutputStream blockOut;
+	private byte[] block;
+	private int fill;
+	private boolean closed;
+
+	/** Creates a new cipher output stream on the given target. The cipher
+	 * header is written immediately.
+	 *
+	 * @param output OutputStream ciphertext target
+	 * @param info {@code FHL_FileInfo} file information incl. cleartext length
+	 *        and CRC
+	 * @param key byte[] machine-near encryption key
+	 * @throws IOException
+	 */
+	public CipherStreamWriter (OutputStream output, FHL_FileInfo info, byte[] key) throws IOException {
+		Objects.requireNonNull(output, "output is null");
+		Objects.requireNonNull(info, "info is null");
+		Objects.requireNonNull(key, "key is null");
+
+		HeaderFieldList header = new HeaderFieldList();
+		header.setField(new PwsRawField(FHL_HEADER_FIELD, createDataHeader(info)));
+
+		// the target is shielded from being closed by the cipher socket
+		OutputStream target = new FilterOutputStream(output) {
+			@Override
+			public void write (byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close () throws IOException {
+				flush();
+			}
+		};
+
+		PwsFileOutputSocket socket = new PwsFileOutputSocket(target,
+				new PwsPassphrase(key, "ASCII"), header);
+		socket.setIterations(kse.com.fhash.main.Global.enhancedLoops ? 2500000 : 250000);
+		blockOut = socket.getBlockOutputStream();
+		block = new byte[blockOut.getBlockSize() * 256];
+	}
+
+	/** Renders the FHL data header from the given file info. */
+	private static byte[] createDataHeader (FHL_FileInfo info) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(512);
+		DataOutputStream out = new DataOutputStream(bout);
+		out.write("FHL000".getBytes());
+		out.writeShort(2);
+		out.writeLong(info.storeTime);
+		out.writeLong(info.fileTime);
+		out.writeShort(info.compression);
+		out.writeInt(info.fileCrc);
+		out.writeLong(info.fileLength);
+		out.writeUTF(info.fileName == null ? "" : info.fileName);
+		out.writeUTF(info.comment == null ? "" : info.comment);
+		return bout.toByteArray();
+	}
+
+	@Override
+	public void write (int b) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		if (fill == block.length) {
+			blockOut.writeBlocks(block, 0, fill);
+			fill = 0;
+		}
+		block[fill++] = (byte) b;
+	}
+
+	@Override
+	public void write (byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		while (len > 0) {
+			if (fill == block.length) {
+				blockOut.writeBlocks(block, 0, fill);
+				fill = 0;
+			}
+			int n = Math.min(len, block.length - fill);
+			System.arraycopy(b, off, block, fill, n);
+			fill += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** Writes buffered data in whole cipher blocks; a remainder below the
+	 * cipher block size stays buffered.
+	 */
+	@Override
+	public void flush () throws IOException {
+		if (closed) return;
+		int blockSize = blockOut.getBlockSize();
+		int n = fill - fill % blockSize;
+		if (n > 0) {
+			blockOut.writeBlocks(block, 0, n);
+			System.arraycopy(block, n, block, 0, fill - n);
+			fill -= n;
+		}
+	}
+
+	/** Writes the remaining data, zero-padded to the cipher block size, and
+	 * finalises the cipher container. The target stream is not closed.
+	 */
+	@Override
+	public void close () throws IOException {
+		if (closed) return;
+		flush();
+		if (fill > 0) {
+			int blockSize = blockOut.getBlockSize();
+			for (int i = fill; i < blockSize; i++) {
+				block[i] = 0;
+			}
+			blockOut.writeBlocks(block, 0, blockSize);
+			fill = 0;
+		}
+		blockOut.close();
+		closed = true;
+	}
+}
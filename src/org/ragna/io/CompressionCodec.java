@@ -0,0 +1,68 @@
+/*
+*  File: CompressionCodec.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for compression methods applied to the cleartext of encrypted
+ * document files. The codec is identified in the file by its ID value
+ * which is stored in the "compression" field of the file information.
+ * Available codecs are obtained from {@code CompressionCodecs}.
+ */
+public interface CompressionCodec {
+
+   /** Returns the identifier of this codec as stored in the file information.
+    *
+    * @return int codec ID
+    */
+   int getID ();
+
+   /** Returns the option name of this codec.
+    *
+    * @return String
+    */
+   String getName ();
+
+   /** Returns an output stream which compresses data into the given target.
+    * Closing the returned stream finishes compression and closes the target.
+    *
+    * @param out OutputStream target stream
+    * @param length long expected length of cleartext, -1 if unknown
+    * @return OutputStream
+    * @throws IOException
+    */
+   OutputStream getOutputStream (OutputStream out, long length) throws IOException;
+
+   /** Returns an input stream which renders the decompressed data of the
+    * given source stream.
+    *
+    * @param in InputStream compressed data source
+    * @return InputStream
+    * @throws IOException
+    */
+   InputStream getInputStream (InputStream in) throws IOException;
+}
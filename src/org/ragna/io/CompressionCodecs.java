@@ -0,0 +1,222 @@
+/*
+*  File: CompressionCodecs.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import kse.utilclass.misc.Log;
+
+/** Provides the available {@code CompressionCodec} instances by their IDs
+ * and option names and performs the automatic codec selection.
+ *
+ * <p>The automatic selection compresses a sample of the first blocks of the
+ * cleartext with the fast LZ codec and with deflate. Deflate is chosen if
+ * its result is smaller than that of LZ by a factor which depends on
+ * whether speed or ratio is preferred. If neither codec gains noticeably
+ * on the sample, no compression is applied.
+ */
+public final class CompressionCodecs {
+
+   /** Codec ID for no compression. */
+   public static final int NONE = 0;
+   /** Codec ID for GZIP deflate compression (the traditional format). */
+   public static final int DEFLATE = 1;
+   /** Codec ID for the fast LZ compression. */
+   public static final int LZ = 2;
+
+   /** Option value for automatic codec selection. */
+   public static final String AUTO = "auto";
+
+   /** Recommended size of the cleartext sample for automatic selection. */
+   public static final int SAMPLE_SIZE = 4 * LZCodec.BLOCK_SIZE;
+
+   /** Cleartext length above which deflate compresses in parallel. */
+   private static final long PARALLEL_COMPRESSION_THRESHOLD = 4000000;
+   /** Maximum relative size of a sample to be worth compression. */
+   private static final double MIN_GAIN_RATIO = 0.95;
+   /** Deflate/LZ size ratio below which deflate is chosen in speed mode. */
+   private static final double DEFLATE_RATIO_SPEED = 0.6;
+   /** Deflate/LZ size ratio below which deflate is chosen in ratio mode. */
+   private static final double DEFLATE_RATIO_SIZE = 0.95;
+
+   private static final CompressionCodec NONE_CODEC = new NoneCodec();
+   private static final CompressionCodec LZ_CODEC = new LZCodec();
+
+   private CompressionCodecs () {
+   }
+
+   /** Returns the codec for the given ID. Deflate is returned with default
+    * compression level.
+    *
+    * @param id int codec ID as stored in file information
+    * @return {@code CompressionCodec}
+    * @throws IllegalArgumentException if the ID is unknown
+    */
+   public static CompressionCodec forID (int id) {
+      switch (id) {
+      case NONE:    return NONE_CODEC;
+      case DEFLATE: return new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+      case LZ:      return LZ_CODEC;
+      default: throw new IllegalArgumentException("unknown compression codec: " + id);
+      }
+   }
+
+   /** Returns the codec for the given option name ("none", "deflate", "lz").
+    * Returns null for "auto" and for unknown names.
+    *
+    * @param name String codec name
+    * @param level int deflate compression level (-1..9)
+    * @return {@code CompressionCodec} or null
+    */
+   public static CompressionCodec forName (String name, int level) {
+      Objects.requireNonNull(name, "name is null");
+      switch (name.trim().toLowerCase()) {
+      case "none":    return NONE_CODEC;
+      case "deflate": return new DeflateCodec(level);
+      case "lz":      return LZ_CODEC;
+      default: return null;
+      }
+   }
+
+   /** Selects a codec for a cleartext by compressing the given sample with
+    * the candidate codecs.
+    *
+    * @param sample byte[] first bytes of the cleartext
+    * @param sampleLength int length of the sample
+    * @param preferSpeed boolean true = speed is preferred over ratio
+    * @param level int deflate compression level (-1..9)
+    * @return {@code CompressionCodec}
+    */
+   public static CompressionCodec select (byte[] sample, int sampleLength, boolean preferSpeed, int level) {
+      Objects.requireNonNull(sample, "sample is null");
+      if (sampleLength == 0) return NONE_CODEC;
+
+      // compress the sample with both codecs
+      long time = System.nanoTime();
+      byte[] buffer = new byte[LZCodec.maxCompressedLength(LZCodec.BLOCK_SIZE)];
+      int[] table = new int[1 << 14];
+      int lzSize = 0;
+      for (int pos = 0; pos < sampleLength; pos += LZCodec.BLOCK_SIZE) {
+         int len = Math.min(LZCodec.BLOCK_SIZE, sampleLength - pos);
+         byte[] block = Arrays.copyOfRange(sample, pos, pos + len);
+         lzSize += Math.min(len, LZCodec.compress(block, len, buffer, table));
+      }
+      long lzTime = System.nanoTime() - time;
+
+      time = System.nanoTime();
+      Deflater deflater = new Deflater(level, true);
+      int deflateSize = 0;
+      try {
+         deflater.setInput(sample, 0, sampleLength);
+         deflater.finish();
+         while (!deflater.finished()) {
+            deflateSize += deflater.deflate(buffer);
+         }
+      } finally {
+         deflater.end();
+      }
+      long deflateTime = System.nanoTime() - time;
+
+      CompressionCodec codec;
+      double limit = preferSpeed ? DEFLATE_RATIO_SPEED : DEFLATE_RATIO_SIZE;
+      if (Math.min(lzSize, deflateSize) > sampleLength * MIN_GAIN_RATIO) {
+         codec = NONE_CODEC;
+      } else if (deflateSize < lzSize * limit) {
+         codec = new DeflateCodec(level);
+      } else {
+         codec = LZ_CODEC;
+      }
+
+      Log.log(8, "(CompressionCodecs.select) sample = " + sampleLength + ", LZ = " + lzSize + " ("
+            + lzTime / 1000 + " us), deflate = " + deflateSize + " (" + deflateTime / 1000
+            + " us), speed = " + preferSpeed + " --> " + codec.getName());
+      return codec;
+   }
+
+//  *********  INNER CLASSES  *********
+
+   /** Codec which does not compress. */
+   private static class NoneCodec implements CompressionCodec {
+
+      @Override
+      public int getID () {return NONE;}
+
+      @Override
+      public String getName () {return "none";}
+
+      @Override
+      public OutputStream getOutputStream (OutputStream out, long length) {
+         return out;
+      }
+
+      @Override
+      public InputStream getInputStream (InputStream in) {
+         return in;
+      }
+   }
+
+   /** GZIP deflate codec with a compression level. Long data is compressed
+    * in parallel.
+    */
+   private static class DeflateCodec implements CompressionCodec {
+      private int level;
+
+      DeflateCodec (int level) {
+         if (level < -1 || level > 9)
+            throw new IllegalArgumentException("illegal compression level: " + level);
+         this.level = level;
+      }
+
+      @Override
+      public int getID () {return DEFLATE;}
+
+      @Override
+      public String getName () {return "deflate";}
+
+      @Override
+      public OutputStream getOutputStream (OutputStream out, long length) throws IOException {
+         if (length > PARALLEL_COMPRESSION_THRESHOLD && ParallelGzipOutputStream.getThreadCount() > 1) {
+            return new ParallelGzipOutputStream(out, level);
+         }
+         final int lev = level;
+         return new GZIPOutputStream(out, 4096) {
+            {
+               def.setLevel(lev);
+            }
+         };
+      }
+
+      @Override
+      public InputStream getInputStream (InputStream in) throws IOException {
+         return new GZIPInputStream(in, 4096);
+      }
+   }
+}
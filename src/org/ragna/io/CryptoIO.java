@@ -0,0 +1,129 @@
+/*
+*  File: CryptoIO.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+
+package org.ragna.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/** Encryption and serialisation helpers for the binary files of the
+ * application directory, like mirror journals and session snapshots.
+ *
+ * <p>Data is encrypted with AES-GCM under a key which is derived from a
+ * document's key material by PBKDF2, so that these files allow no faster
+ * password tests than the encrypted document files themselves.
+ */
+final class CryptoIO {
+
+	/** Length of a nonce for {@code crypt()}. */
+	static final int NONCE_LENGTH = 12;
+	/** Default PBKDF2 iterations for {@code deriveKey()}. */
+	static final int KDF_ITERATIONS = 310000;
+
+	private CryptoIO () {
+	}
+
+	/** Derives a 256-bit AES key from document key material by
+	 * PBKDF2-HMAC-SHA256.
+	 *
+	 * @param key byte[] document key material
+	 * @param salt byte[] salt
+	 * @param iterations int PBKDF2 iterations
+	 * @return byte[] derived key
+	 * @throws IOException
+	 */
+	static byte[] deriveKey (byte[] key, byte[] salt, int iterations) throws IOException {
+		char[] ca = new char[key.length * 2];
+		for (int i = 0; i < key.length; i++) {
+			ca[2 * i] = Character.forDigit((key[i] >>> 4) & 0xf, 16);
+			ca[2 * i + 1] = Character.forDigit(key[i] & 0xf, 16);
+		}
+		PBEKeySpec spec = new PBEKeySpec(ca, salt, iterations, 256);
+		try {
+			SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+			return factory.generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IOException("key derivation failure: " + e, e);
+		} finally {
+			spec.clearPassword();
+			Arrays.fill(ca, '0');
+		}
+	}
+
+	/** Encrypts or decrypts the given data with AES-GCM.
+	 *
+	 * @param mode int {@code Cipher.ENCRYPT_MODE} or {@code Cipher.DECRYPT_MODE}
+	 * @param key byte[] derived key
+	 * @param nonce byte[] nonce of {@code NONCE_LENGTH}, unique for the key
+	 * @param data byte[] data
+	 * @return byte[] result
+	 * @throws IOException if the operation fails, including authentication
+	 */
+	static byte[] crypt (int mode, byte[] key, byte[] nonce, byte[] data) throws IOException {
+		try {
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, nonce));
+			return cipher.doFinal(data);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("cipher failure: " + e, e);
+		}
+	}
+
+	/** Writes a text as UTF-8 with a leading length.
+	 *
+	 * @param out {@code DataOutputStream}
+	 * @param text String
+	 * @throws IOException
+	 */
+	static void writeText (DataOutputStream out, String text) throws IOException {
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	/** Reads a text written by {@code writeText()}.
+	 *
+	 * @param in {@code DataInputStream}
+	 * @return String
+	 * @throws IOException
+	 */
+	static String readText (DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			throw new IOException("illegal text length: " + length);
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,350 @@
+/*
+*  File: DocumentFileSearcher.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ragna.core.Global;
+import org.ragna.core.TextSearcher;
+import org.ragna.exception.UnknownFileFormatException;
+import org.ragna.util.OptionBag;
+
+import kse.utilclass.io.IOService;
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.Util;
+
+/** Searches the Treepad document files of a directory tree for text
+ * occurrences without opening them as {@code PadDocument}s. Each file is
+ * streamed through the decryption path of the {@code IO_Manager} and a
+ * lightweight scanner of Treepad records which holds only the current
+ * article's text in memory. Files are processed in parallel by a fixed
+ * number of threads. Encrypted files are opened with the first matching
+ * key of a given set; files which cannot be opened are reported separately.
+ */
+public class DocumentFileSearcher {
+
+	private static final String END_NODE_MARKER = "<end node> 5P9i0s8y19Z";
+
+	private String token;
+	private boolean caseSense;
+	private boolean wholeWords;
+	private int maximum;
+	private List<byte[]> keys = new ArrayList<>();
+	private List<File> lockedFiles = Collections.synchronizedList(new ArrayList<>());
+	private List<File> failedFiles = Collections.synchronizedList(new ArrayList<>());
+	private AtomicInteger hitCounter = new AtomicInteger();
+	private AtomicInteger fileCounter = new AtomicInteger();
+	private volatile boolean cancelled;
+
+	/** Creates a new file searcher for the given search token.
+	 *
+	 * @param token String text to search
+	 * @param sensitive boolean true = search case-sensitive
+	 * @param wholeWords boolean true = search only whole words
+	 * @param maximum int maximum number of result positions
+	 */
+	public DocumentFileSearcher (String token, boolean sensitive, boolean wholeWords, int maximum) {
+		Objects.requireNonNull(token, "token is null");
+		Util.requirePositive(maximum);
+		this.token = token;
+		this.caseSense = sensitive;
+		this.wholeWords = wholeWords;
+		this.maximum = maximum;
+	}
+
+	/** Adds a decryption key to be attempted at encrypted files.
+	 *
+	 * @param key byte[] machine-near passphrase, may be null (ignored)
+	 */
+	public void addKey (byte[] key) {
+		if (key == null) return;
+		for (byte[] k : keys) {
+			if (Arrays.equals(k, key)) return;
+		}
+		keys.add(key);
+	}
+
+	/** Whether the given file is a searchable Treepad document file by its
+	 * name (".hjt", ".hjt.fhl" or ".fhl").
+	 *
+	 * @param file File
+	 * @return boolean
+	 */
+	public static boolean isSearchableFile (File file) {
+		String name = file.getName().toLowerCase();
+		return file.isFile() && (name.endsWith(".hjt") || name.endsWith(".fhl"));
+	}
+
+	/** Collects the searchable document files of the given directory tree in
+	 * a sorted order.
+	 *
+	 * @param dir File directory
+	 * @return {@code List<File>}
+	 */
+	public static List<File> collectFiles (File dir) {
+		List<File> list = new ArrayList<>();
+		collectFiles(dir, list);
+		return list;
+	}
+
+	private static void collectFiles (File dir, List<File> list) {
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.isDirectory()) {
+				collectFiles(f, list);
+			} else if (isSearchableFile(f)) {
+				list.add(f);
+			}
+		}
+	}
+
+	/** Searches all document files of the given directory tree and returns
+	 * the list of found text positions in the order of files and articles.
+	 * This blocks until all files are scanned or the search is cancelled.
+	 *
+	 * @param dir File root directory
+	 * @param threads int number of parallel working threads
+	 * @return {@code List<FileTextPosition>}
+	 * @throws InterruptedException
+	 */
+	public List<FileTextPosition> search (File dir, int threads) throws InterruptedException {
+		Objects.requireNonNull(dir, "dir is null");
+		if (threads < 1)
+			throw new IllegalArgumentException("illegal thread number: " + threads);
+
+		List<File> files = collectFiles(dir);
+		Log.log(6, "(DocumentFileSearcher.search) searching " + files.size() + " files in "
+				+ dir + ", threads = " + threads);
+		long time = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<List<FileTextPosition>>> futures = new ArrayList<>();
+		try {
+			for (File f : files) {
+				futures.add(executor.submit(() -> searchFile(f)));
+			}
+
+			// collect results in order of files
+			List<FileTextPosition> result = new ArrayList<>();
+			for (Future<List<FileTextPosition>> future : futures) {
+				try {
+					result.addAll(future.get());
+				} catch (ExecutionException e) {
+					Log.log(1, "(DocumentFileSearcher.search) file search failure: " + e.getCause());
+				}
+			}
+
+			Log.log(6, "(DocumentFileSearcher.search) found " + result.size() + " positions in "
+					+ fileCounter.get() + " files, time = " + (System.currentTimeMillis() - time) + " ms");
+			return result.size() > maximum ? new ArrayList<>(result.subList(0, maximum)) : result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** Stops a running search as early as possible. */
+	public void cancel () {
+		cancelled = true;
+	}
+
+	public boolean isCancelled () {return cancelled;}
+
+	/** Returns the list of encrypted files for which none of the keys was
+	 * valid.
+	 *
+	 * @return {@code List<File>}
+	 */
+	public List<File> getLockedFiles () {return new ArrayList<>(lockedFiles);}
+
+	/** Returns the list of files which could not be scanned due to errors.
+	 *
+	 * @return {@code List<File>}
+	 */
+	public List<File> getFailedFiles () {return new ArrayList<>(failedFiles);}
+
+	/** Returns the number of files which were scanned.
+	 *
+	 * @return int
+	 */
+	public int getScannedFiles () {return fileCounter.get();}
+
+	/** Searches a single document file and returns the list of its text
+	 * positions.
+	 *
+	 * @param file File
+	 * @return {@code List<FileTextPosition>}
+	 */
+	private List<FileTextPosition> searchFile (File file) {
+		List<FileTextPosition> list = new ArrayList<>();
+		if (cancelled || hitCounter.get() >= maximum) return list;
+		IO_Manager ioManager = IO_Manager.get();
+		InputStream input = null;
+		boolean access = false;
+
+		try {
+			file = file.getCanonicalFile();
+			IOService.get().acquireFileAccess(file);
+			access = true;
+
+			// open decrypted input stream, try all keys for encrypted files
+			if (ioManager.isFileEncrypted(file)) {
+				for (byte[] key : keys) {
+					input = ioManager.openDecryptedInputStream(file, new byte[][] {key}, false);
+					if (input != null) break;
+				}
+				if (input == null) {
+					lockedFiles.add(file);
+					return list;
+				}
+			} else {
+				input = ioManager.openDecryptedInputStream(file, new byte[][] {null}, false);
+			}
+
+			// determine text encoding from document options
+			input = new BufferedInputStream(input);
+			input.mark(1000);
+			String encoding = null;
+			OptionBag options = ioManager.detectDocumentOptions(input, file.getAbsolutePath());
+			if (options != null) {
+				encoding = options.getOption("text-encoding");
+			}
+			if (encoding == null || !Global.isTreepadCompatibleCharset(encoding)) {
+				encoding = Global.getDefaultTreepadEncoding();
+			}
+			input.reset();
+
+			scanRecords(file, new BufferedReader(new InputStreamReader(input, encoding)), list);
+			fileCounter.incrementAndGet();
+
+		} catch (IOException | InterruptedException e) {
+			Log.log(6, "(DocumentFileSearcher.searchFile) unable to scan file " + file + ": " + e);
+			failedFiles.add(file);
+		} finally {
+			if (input != null) {
+				try { input.close();
+				} catch (IOException e) {
+				}
+			}
+			if (access) {
+				IOService.get().releaseFileAccess(file);
+			}
+		}
+		return list;
+	}
+
+	/** Scans the Treepad records of the given reader and adds text positions
+	 * of the search token to the result list. Only the text of the current
+	 * article is held in memory.
+	 */
+	private void scanRecords (File file, BufferedReader reader, List<FileTextPosition> list)
+			throws IOException {
+		String line = reader.readLine();
+		if (line == null || line.toLowerCase().indexOf("treepad version 2.7") == -1)
+			throw new UnknownFileFormatException("not a Treepad 2.7 file!");
+
+		StringBuilder content = new StringBuilder();
+		String dtLine, nodeLine, titleLine, depthLine;
+		int index = 0;
+
+		while (!cancelled && (dtLine = reader.readLine()) != null
+			&& (nodeLine = reader.readLine()) != null && (titleLine = reader.readLine()) != null
+			&& (depthLine = reader.readLine()) != null) {
+
+			if (!dtLine.equalsIgnoreCase("dt=text") || !nodeLine.toLowerCase().startsWith("<node>")
+				|| depthLine.isEmpty()) {
+				throw new StreamCorruptedException("the Treepad file is not version-2.7-compatible");
+			}
+
+			// read article content
+			content.setLength(0);
+			boolean terminated = false;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(END_NODE_MARKER)) {
+					terminated = true;
+					break;
+				}
+				content.append(line).append('\n');
+			}
+			if (!terminated)
+				throw new StreamCorruptedException("unterminated article: " + index);
+			if (content.length() > 0) {
+				content.setLength(content.length()-1);
+			}
+
+			// search the article text
+			int[] posArr = TextSearcher.findTextPositions(content.toString(), token, caseSense, wholeWords);
+			for (int pos : posArr) {
+				if (hitCounter.incrementAndGet() > maximum) return;
+				list.add(new FileTextPosition(file, index, titleLine, pos));
+			}
+			index++;
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** A text find position within a document file which is not open.
+	 * The article is identified by its index in the document order.
+	 */
+	public static class FileTextPosition {
+		private File file;
+		private int articleIndex;
+		private String title;
+		private int position;
+
+		public FileTextPosition (File file, int articleIndex, String title, int position) {
+			Objects.requireNonNull(file, "file is null");
+			this.file = file;
+			this.articleIndex = articleIndex;
+			this.title = title == null ? "" : title;
+			this.position = position;
+		}
+
+		public File getFile () {return file;}
+
+		public int getArticleIndex () {return articleIndex;}
+
+		public String getArticleTitle () {return title;}
+
+		public int getPosition () {return position;}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+*  File: FileCopier.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+import kse.utilclass.misc.Log;
+
+/** Copies files through file-channels, letting the operating system
+ * transfer the data (e.g. by <i>copy_file_range</i> or <i>sendfile</i>)
+ * without passing it through the Java heap. The copy is verified by CRC32
+ * values; the CRC of the source is calculated on a separate thread while
+ * the transfer is running. Neither file is memory-mapped, because a mapping
+ * outlives its channel until garbage collection and on some platforms
+ * prevents the renaming or replacement of the file.
+ *
+ * <p>The data is first copied into a temporary file in the target
+ * directory, which replaces the target only after successful verification,
+ * by an atomic move where the file system supports it.
+ */
+public class FileCopier {
+
+	/** Size of the read buffer for CRC calculation. */
+	private static final int READ_BUFFER = 1024 * 1024;
+
+	private FileCopier () {
+	}
+
+	/** Copies the source file to the target file and verifies the copy.
+	 * An existing target file is replaced.
+	 *
+	 * @param source File file to copy
+	 * @param target File destination file
+	 * @param keepTime boolean whether the target receives the modify time of
+	 *        the source
+	 * @return int CRC32 value of the copied data
+	 * @throws IOException if copying fails or the copy is found corrupted
+	 * @throws InterruptedException
+	 */
+	public static int copyFile (File source, File target, boolean keepTime)
+			throws IOException, InterruptedException {
+		Objects.requireNonNull(source, "source is null");
+		Objects.requireNonNull(target, "target is null");
+		if (!source.isFile())
+			throw new FileNotFoundException(source.getAbsolutePath());
+		source = source.getCanonicalFile();
+		target = target.getAbsoluteFile();
+		if (source.equals(target.getCanonicalFile()))
+			throw new IllegalArgumentException("source and target are identical: " + source);
+		File dir = target.getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+
+		long time = System.currentTimeMillis();
+		File temp = File.createTempFile(target.getName() + "-", ".tmp", dir);
+		try {
+			long size;
+			int crc1;
+			try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				 FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.READ, 
+						 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+				// calculate the source CRC in parallel to the transfer
+				final FileChannel sourceChannel = in;
+				FutureTask<Integer> sourceCrc = new FutureTask<>(() -> channelCrc(sourceChannel));
+				Thread crcThread = new Thread(sourceCrc, "Ragna-Copy-CRC");
+				crcThread.setDaemon(true);
+				crcThread.start();
+
+				// let the system transfer the data
+				size = in.size();
+				long position = 0;
+				while (position < size) {
+					if (Thread.interrupted()) {
+						sourceCrc.cancel(true);
+						throw new InterruptedException();
+					}
+					position += in.transferTo(position, size - position, out);
+				}
+				out.force(false);
+
+				// verify the copy
+				int crc2 = channelCrc(out);
+				try {
+					crc1 = sourceCrc.get();
+				} catch (ExecutionException e) {
+					throw new IOException("CRC calculation failed: " + source, e.getCause());
+				}
+				if (crc1 != crc2 || out.size() != size) {
+					throw new IOException("file copy verification failed: " + source + " -> " + target);
+				}
+			}
+
+			if (keepTime) {
+				temp.setLastModified(source.lastModified());
+			}
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, 
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Log.log(3, "(FileCopier.copyFile) atomic move not supported, replacing " + target);
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+
+			Log.log(8, "(FileCopier.copyFile) copied " + size + " bytes, " + source + " -> " + target
+					+ ", time = " + (System.currentTimeMillis() - time) + " ms");
+			return crc1;
+
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/** Calculates the CRC32 value of the entire content of the given channel
+	 * by positional reads into a direct buffer. Other than a memory-mapped
+	 * view, this leaves nothing behind which could hinder the replacement
+	 * of the file.
+	 *
+	 * @param channel {@code FileChannel}
+	 * @return int CRC32 value
+	 * @throws IOException
+	 */
+	public static int channelCrc (FileChannel channel) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER);
+		long pos = 0;
+		int len;
+		while ((len = channel.read(buffer, pos)) > -1) {
+			pos += len;
+			buffer.flip();
+			crc.update(buffer);
+			buffer.clear();
+		}
+		return (int) crc.getValue();
+	}
+}
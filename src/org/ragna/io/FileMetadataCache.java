@@ -0,0 +1,234 @@
+/*
+*  File: FileMetadataCache.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import kse.com.fhash.main.FHL_FileInfo;
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.UUID;
+
+/** A cache of metadata of document files, keyed by canonical file path.
+ * An entry holds the encryption status and cipher header of a file, which
+ * are obtained from a single read of the file's leading bytes, and further
+ * the document UUID and the text encoding as far as they became known by
+ * opening or saving the file. Entries are valid as long as length and
+ * modify time of the file are unchanged; the least recently used entries
+ * are evicted above a maximum size.
+ */
+public class FileMetadataCache {
+
+	private static final int MAX_ENTRIES = 256;
+
+	private static FileMetadataCache instance = new FileMetadataCache();
+
+	public static FileMetadataCache get () {
+		return instance;
+	}
+
+	private Map<File, Entry> map = new LinkedHashMap<File, Entry>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<File, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private int probes;
+
+	private FileMetadataCache () {
+	}
+
+	/** Returns the valid cache entry for the given file, reading the file's
+	 * header if necessary.
+	 *
+	 * @param file File
+	 * @return {@code Entry}
+	 * @throws IOException
+	 */
+	private Entry getEntry (File file) throws IOException {
+		Objects.requireNonNull(file, "file is null");
+		file = file.getCanonicalFile();
+		synchronized (map) {
+			Entry entry = map.get(file);
+			if (entry != null && entry.isCurrent(file)) {
+				return entry;
+			}
+		}
+
+		// probe the file's header
+		if (!file.isFile())
+			throw new FileNotFoundException(file.getAbsolutePath());
+		long length = file.length();
+		long time = file.lastModified();
+		byte[] data = readHead(file, CipherFileHeader.HEADER_LENGTH);
+		Entry entry = new Entry(length, time, data);
+
+		synchronized (map) {
+			map.put(file, entry);
+			probes++;
+		}
+		Log.log(8, "(FileMetadataCache.getEntry) probed file header: " + file + ", encrypted = "
+				+ entry.encrypted);
+		return entry;
+	}
+
+	private static byte[] readHead (File file, int length) throws IOException {
+		byte[] buf = new byte[length];
+		int fill = 0, n;
+		try (InputStream in = new FileInputStream(file)) {
+			while (fill < length && (n = in.read(buf, fill, length - fill)) > -1) {
+				fill += n;
+			}
+		}
+		return fill == length ? buf : Arrays.copyOf(buf, fill);
+	}
+
+	/** Whether the given file is encrypted in our format.
+	 *
+	 * @param file File
+	 * @return boolean
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean isEncrypted (File file) throws IOException {
+		return getEntry(file).encrypted;
+	}
+
+	/** Returns the cipher header of the given file or null if the file is
+	 * not encrypted.
+	 *
+	 * @param file File
+	 * @return {@code CipherFileHeader} or null
+	 * @throws IOException if the file cannot be read
+	 */
+	public CipherFileHeader getCipherHeader (File file) throws IOException {
+		return getEntry(file).header;
+	}
+
+	/** Returns the FHL file information of the given encrypted file as
+	 * obtained from its last opening or null if unknown.
+	 *
+	 * @param file File
+	 * @return {@code FHL_FileInfo} or null
+	 * @throws IOException if the file cannot be read
+	 */
+	public FHL_FileInfo getFileInfo (File file) throws IOException {
+		CipherFileHeader header = getEntry(file).header;
+		return header == null ? null : header.getFileInfo();
+	}
+
+	/** Returns the document UUID of the given file or null if unknown.
+	 *
+	 * @param file File
+	 * @return {@code UUID} or null
+	 * @throws IOException if the file cannot be read
+	 */
+	public UUID getUUID (File file) throws IOException {
+		return getEntry(file).uuid;
+	}
+
+	/** Returns the text encoding of the given file or null if unknown.
+	 *
+	 * @param file File
+	 * @return String charset name or null
+	 * @throws IOException if the file cannot be read
+	 */
+	public String getEncoding (File file) throws IOException {
+		return getEntry(file).encoding;
+	}
+
+	/** Stores document UUID and text encoding for the given file.
+	 *
+	 * @param file File
+	 * @param uuid {@code UUID}, may be null
+	 * @param encoding String charset name, may be null
+	 */
+	public void putDocumentData (File file, UUID uuid, String encoding) {
+		try {
+			Entry entry = getEntry(file);
+			if (uuid != null) {
+				entry.uuid = uuid;
+			}
+			if (encoding != null) {
+				entry.encoding = encoding;
+			}
+		} catch (IOException e) {
+			Log.log(5, "(FileMetadataCache.putDocumentData) unable to store file data: " + e);
+		}
+	}
+
+	/** Removes the entry of the given file.
+	 *
+	 * @param file File
+	 */
+	public void invalidate (File file) {
+		try {
+			file = file.getCanonicalFile();
+		} catch (IOException e) {
+		}
+		synchronized (map) {
+			map.remove(file);
+		}
+	}
+
+	/** Returns the number of file header reads performed by this cache.
+	 *
+	 * @return int
+	 */
+	public int getProbeCount () {
+		synchronized (map) {
+			return probes;
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	private static class Entry {
+		private long length;
+		private long time;
+		private boolean encrypted;
+		private CipherFileHeader header;
+		private volatile UUID uuid;
+		private volatile String encoding;
+
+		Entry (long length, long time, byte[] data) {
+			this.length = length;
+			this.time = time;
+			encrypted = CipherFileHeader.isPWS3(data);
+			if (encrypted && data.length >= CipherFileHeader.HEADER_LENGTH) {
+				header = new CipherFileHeader(data);
+			}
+		}
+
+		boolean isCurrent (File file) {
+			return file.length() == length && file.lastModified() == time;
+		}
+	}
+}
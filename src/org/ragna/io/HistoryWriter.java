@@ -0,0 +1,263 @@
+/*
+*  File: HistoryWriter.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import kse.utilclass.misc.Log;
+
+/** Writes file history copies and history promotions of the IO-manager on
+ * a dedicated background thread. Requests wait in a bounded queue; a file
+ * pushed again while its request is waiting is copied only once, after
+ * {@code COALESCE_WINDOW} from its first push. If the queue is full, the
+ * requesting thread waits for a free place.
+ */
+public class HistoryWriter {
+
+	/** Maximum number of waiting file requests. */
+	private static final int QUEUE_CAPACITY = 32;
+	/** Time a push request waits for further pushes of the same file (ms). */
+	private static final long COALESCE_WINDOW = 3000;
+
+	private final IO_Manager ioMan;
+	private final Map<File, Long> queue = new LinkedHashMap<>();
+	private long promotionTime;
+	private boolean busy, flushing;
+	private Thread thread;
+
+	private long pushCount, copyCount, lastLag;
+
+	HistoryWriter (IO_Manager ioMan) {
+		this.ioMan = Objects.requireNonNull(ioMan);
+	}
+
+	/** Queues a history copy of the given file. Does nothing if a copy of
+	 * the file is already waiting.
+	 *
+	 * @param file File file to copy
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 *         waiting for a free queue place
+	 */
+	public synchronized void push (File file) throws InterruptedException {
+		file = file.getAbsoluteFile();
+		pushCount++;
+		if (queue.containsKey(file)) return;
+		while (queue.size() >= QUEUE_CAPACITY) {
+			wait();
+		}
+		queue.put(file, System.currentTimeMillis());
+		start();
+		notifyAll();
+	}
+
+	/** Queues a promotion of the history storage. Does nothing if a
+	 * promotion is already waiting.
+	 */
+	public synchronized void promote () {
+		if (promotionTime == 0) {
+			promotionTime = System.currentTimeMillis();
+			start();
+			notifyAll();
+		}
+	}
+
+	/** Removes a waiting history copy of the given file.
+	 *
+	 * @param file File
+	 */
+	public synchronized void cancel (File file) {
+		if (queue.remove(file.getAbsoluteFile()) != null) {
+			notifyAll();
+		}
+	}
+
+	/** Performs all waiting requests without delay and waits until they are
+	 * completed or the given time has elapsed.
+	 *
+	 * @param timeout long maximum waiting time (ms)
+	 * @return boolean true = all requests completed
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean flush (long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		flushing = true;
+		notifyAll();
+		try {
+			long now;
+			while ((busy || !queue.isEmpty() || promotionTime != 0)
+					&& (now = System.currentTimeMillis()) < end) {
+				wait(end - now);
+			}
+			return !busy && queue.isEmpty() && promotionTime == 0;
+		} finally {
+			flushing = false;
+		}
+	}
+
+	/** Returns the number of waiting requests, including a promotion.
+	 *
+	 * @return int
+	 */
+	public synchronized int getQueueDepth () {
+		return queue.size() + (promotionTime == 0 ? 0 : 1);
+	}
+
+	/** Returns the waiting time of the oldest waiting request (ms), or 0 if
+	 * there is no waiting request.
+	 *
+	 * @return long milliseconds
+	 */
+	public synchronized long getLag () {
+		long oldest = promotionTime;
+		for (long time : queue.values()) {
+			if (oldest == 0 || time < oldest) {
+				oldest = time;
+			}
+		}
+		return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+	}
+
+	/** Returns the time between request and completion of the latest
+	 * history copy (ms).
+	 *
+	 * @return long milliseconds
+	 */
+	public synchronized long getLastLag () {
+		return lastLag;
+	}
+
+	/** Returns the number of push requests received.
+	 *
+	 * @return long
+	 */
+	public synchronized long getPushCount () {
+		return pushCount;
+	}
+
+	/** Returns the number of history copies written. The difference to
+	 * the number of push requests was saved by coalescing.
+	 *
+	 * @return long
+	 */
+	public synchronized long getCopyCount () {
+		return copyCount;
+	}
+
+	/** Starts the worker thread if it is not running. */
+	private void start () {
+		if (thread == null) {
+			thread = new Thread(this::work, "Ragna-History-Writer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			thread.start();
+		}
+	}
+
+	/** Worker thread body; on termination a new thread is started with the
+	 * next request.
+	 */
+	private void work () {
+		try {
+			performRequests();
+		} finally {
+			synchronized (this) {
+				busy = false;
+				thread = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/** Performs due requests in order of arrival until the thread is
+	 * interrupted.
+	 */
+	private void performRequests () {
+		while (true) {
+			File file = null;
+			long requestTime = 0;
+			boolean promote = false;
+
+			synchronized (this) {
+				busy = false;
+				notifyAll();
+				try {
+					while (true) {
+						if (promotionTime != 0) {
+							promote = true;
+							promotionTime = 0;
+							break;
+						}
+						if (queue.isEmpty()) {
+							wait();
+							continue;
+						}
+						Iterator<Map.Entry<File, Long>> it = queue.entrySet().iterator();
+						Map.Entry<File, Long> first = it.next();
+						long delay = first.getValue() + COALESCE_WINDOW - System.currentTimeMillis();
+						if (!flushing && delay > 0) {
+							wait(delay);
+							continue;
+						}
+						file = first.getKey();
+						requestTime = first.getValue();
+						it.remove();
+						notifyAll();
+						break;
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				busy = true;
+			}
+
+			long start = System.currentTimeMillis();
+			try {
+				if (promote) {
+					ioMan.executeHistoryPromotion();
+				} else {
+					ioMan.storeFileHistory(file);
+				}
+			} catch (IOException | RuntimeException e) {
+				Log.log(3, "(HistoryWriter.work) failed history operation on " + file + ": " + e);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (file != null) {
+				long end = System.currentTimeMillis();
+				synchronized (this) {
+					copyCount++;
+					lastLag = end - requestTime;
+				}
+				Log.log(6, "(HistoryWriter.work) history copy of " + file.getName() + " in "
+						+ (end - start) + " ms, lag " + lastLag + " ms, queue " + getQueueDepth());
+			}
+		}
+	}
+}
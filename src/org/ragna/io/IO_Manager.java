@@ -27,23 +27,33 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import org.ragna.core.ActionHandler;
 import org.ragna.core.DefaultOptions;
@@ -56,14 +66,12 @@ import org.ragna.exception.FileInUseException;
 import org.ragna.exception.UnknownFileFormatException;
 import org.ragna.front.GUIService;
 import org.ragna.util.OptionBag;
+import org.ragna.util.PersistentOptions;
 
 import kse.com.fhash.main.CipherInputFile;
-import kse.com.fhash.main.CipherOutputFile;
 import kse.com.fhash.main.FHL_FileInfo;
 import kse.com.fhash.main.Functions;
 import kse.utilclass.io.IOService;
-import kse.utilclass.misc.DirectByteOutputStream;
-import kse.utilclass.misc.IntResult;
 import kse.utilclass.misc.Log;
 import kse.utilclass.misc.UUID;
 import kse.utilclass.misc.Util;
@@ -100,11 +108,16 @@ public class IO_Manager {
 
    private static final int STREAM_BUFFER_SIZE = 4096;
    private static final int COMPRESSION_THRESHOLD = 10000;
+   private static final long SPOOL_MEMORY_LIMIT = 32 * 1024 * 1024;
+   private static final int PIPELINE_THRESHOLD = 1000000;
+   private static final int CHANNEL_OPEN_THRESHOLD = 1000000;
    private static final int HISTORY_DAYS = 10;
    private static final int HISTORY_MONTHS = 6;
    private static final int HISTORY_YEARS = 3;
+   private static final String HISTORY_STORE_NAME = "store";
    
    public static enum StreamDirection {INPUT, OUTPUT};
+   public static enum WritePurpose {FILE, MIRROR};
    public static enum SystemFileType {ANY_FILE, ANY_PAD_FILE, ANY_DOCUMENT_FILE, 
                 DOCUMENT_FILE, DOCUMENT_BACKUP, TREEPAD_DOCUMENT, TREEPAD_ENCRYPTED, 
                 RAGNA_DOCUMENT};
@@ -114,6 +127,8 @@ public class IO_Manager {
 
    private Map<UUID, String> externMap = new Hashtable<UUID, String>();   
    private LayeredFileSafe         	fileSafe;
+   private ChunkedHistoryStore		historyStore;
+   private HistoryWriter			historyWriter = new HistoryWriter(this);
    
    // these locks are used to serialise parallel document open and save operations
    private Object 					saveLock = new Object();
@@ -200,6 +215,8 @@ public class IO_Manager {
    /** Writes the given pad-document to the given external file by applying
     * the appropriate writer module. This produces a cleartext or an 
     * encrypted output, depending on the "encryption" property of the document. 
+    * With option "atomicSave" the file is replaced atomically after the
+    * complete document has been written to a temporary file.
     * <p>NOTE: This method does not update the file history or the external 
     * file map and does not reset the 'isModified' property of the document.
     * 
@@ -213,6 +230,11 @@ public class IO_Manager {
    public void saveDocument (PadDocument doc, File file, String encoding) throws IOException {
 	   Objects.requireNonNull(doc, "document is null");
 	   Objects.requireNonNull(file, "file is null");
+	   if (Global.getOptions().isOptionSet("atomicSave")) {
+		   saveDocumentAtomic(doc, file, encoding);
+		   return;
+	   }
+	   
 	   OutputStream output = null;
        try {
 	      // obtain basic IO file access (output stream)
@@ -233,7 +255,81 @@ public class IO_Manager {
     	   if (output != null) {
    		      output.close();
     	   }
+    	   // the file has a new header
+    	   FileMetadataCache.get().invalidate(file);
        }
+       FileMetadataCache.get().putDocumentData(file, doc.getUUID(), encoding);
+   }
+   
+   /** Writes the given pad-document to the given external file in a 
+    * crash-safe manner. The document is written to a temporary sibling file
+    * via a file-channel, which is forced to the storage device and then 
+    * atomically moved to the destination. An interrupted operation thus 
+    * leaves either the previous or the new file, never a truncated one.
+    * If the destination is a symbolic link, its target file is replaced.
+    * 
+    * @param doc <code>PadDocument</code>
+    * @param file File output destination
+    * @param encoding String charset name or null for global default
+    * @throws IOException
+    */
+   private void saveDocumentAtomic (PadDocument doc, File file, String encoding) throws IOException {
+	   // the canonical file excludes other access paths and keeps symbolic links
+	   file = file.getCanonicalFile();
+	   File dir = file.getParentFile();
+	   try {
+		   IOService.get().acquireFileAccess(file);
+	   } catch (InterruptedException e) {
+		   throw new IOException("waiting for file-access interrupted", e);
+	   }
+	   
+	   File temp = null;
+	   try {
+		   Log.debug(8, "(IO_Manager.saveDocumentAtomic) saving document to file: ".concat(file.getAbsolutePath()) );
+		   temp = File.createTempFile(file.getName() + "-", ".tmp", dir);
+		   Path tempPath = temp.toPath();
+		   Path path = file.toPath();
+		   
+		   // write and force the temporary file
+		   try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, 
+				   StandardOpenOption.TRUNCATE_EXISTING)) {
+			   ChannelOutputStream out = new ChannelOutputStream(channel);
+			   saveDocument(doc, out, encoding);
+			   out.flush();
+			   channel.force(true);
+		   }
+		   
+		   // take over access permissions of an existing file
+		   if (file.exists()) {
+			   try {
+				   Files.setPosixFilePermissions(tempPath, Files.getPosixFilePermissions(path));
+			   } catch (UnsupportedOperationException | IOException e) {
+			   }
+		   }
+		   
+		   // replace the destination
+		   try {
+			   Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		   } catch (AtomicMoveNotSupportedException e) {
+			   Log.log(3, "(IO_Manager.saveDocumentAtomic) atomic move not supported, replacing " + file);
+			   Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+		   }
+		   temp = null;
+		   
+		   // persist the directory entry (not supported on all platforms)
+		   try (FileChannel dirChannel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			   dirChannel.force(true);
+		   } catch (IOException e) {
+		   }
+		   
+	   } finally {
+		   if (temp != null) {
+			   temp.delete();
+		   }
+		   IOService.get().releaseFileAccess(file);
+		   FileMetadataCache.get().invalidate(file);
+	   }
+	   FileMetadataCache.get().putDocumentData(file, doc.getUUID(), encoding);
    }
    
    /** Attempts to retrieve document options, walking from the given external 
@@ -247,15 +343,22 @@ public class IO_Manager {
     * @return {@code OptionBag} or null if not successful
     * @throws IOException
     */
-   private OptionBag detectDocumentOptions (InputStream in, String filepath) throws IOException {
+   OptionBag detectDocumentOptions (InputStream in, String filepath) throws IOException {
 	  OptionBag options = DefaultPadDocument.getDocumentOptionsFromPath(filepath);
 	  if (options != null) {
 		  Log.log(8, "(IO_Manager.detectDocumentOptions) retrieved document options from path: " + filepath);
 		  return options;
 	  }
 
-	  // attempt at UUID hook
-	  UUID uuid = TreepadReader.readUUID(in);
+	  // attempt at UUID hook, known UUIDs of files are cached
+	  UUID uuid = null;
+	  try {
+		  uuid = FileMetadataCache.get().getUUID(new File(filepath));
+	  } catch (IOException e) {
+	  }
+	  if (uuid == null) {
+		  uuid = TreepadReader.readUUID(in);
+	  }
 	  if (uuid != null) {
 		  options = DefaultPadDocument.getDocumentOptionsFromID(uuid);
 		  if (options != null) {
@@ -283,8 +386,28 @@ public class IO_Manager {
     */
    public void saveDocument (PadDocument doc, OutputStream output, String encoding) 
 		   		throws IOException {
+	  saveDocument(doc, output, encoding, WritePurpose.FILE);
+   }
+   
+   /** Writes the given pad-document to the given output stream by applying
+    * the appropriate writer module. This produces a cleartext or an 
+    * encrypted output, depending on the "encryption" property of the document. 
+    * The purpose of the output determines the compression codec for
+    * encrypted output. Does not close the output stream.
+    * 
+    * @param doc <code>PadDocument</code>
+    * @param output OutputStream
+    * @param encoding String charset name or null for global default
+    * @param purpose {@code WritePurpose} 
+    * @throws IllegalCharsetNameException
+    * @throws UnsupportedCharsetNameException
+    * @throws IOException
+    */
+   public void saveDocument (PadDocument doc, OutputStream output, String encoding,
+		   		WritePurpose purpose) throws IOException {
+	  Objects.requireNonNull(purpose, "purpose is null");
 	  if (doc.isEncrypted()) {
-		  writeDocumentEncrypted(doc, output, encoding, doc.getPassphrase());
+		  writeDocumentEncrypted(doc, output, encoding, doc.getPassphrase(), purpose);
 	  } else {
 		  writeDocumentCleartext(doc, output, encoding);
 	  }
@@ -294,29 +417,99 @@ public class IO_Manager {
     * the appropriate writer module. This produces an encrypted output 
     * irrespective of the encryption property of the document; the passphrase
     * argument is required. Does not close the output stream.
+    * <p>The document is serialised once into a spool buffer, which keeps
+    * the cleartext in memory up to a limit and beyond that in an encrypted
+    * temporary file. This pass determines cleartext length and CRC, which are
+    * required in the cipher header, and samples the cleartext for automatic
+    * codec selection. The buffer is then streamed through compression and
+    * cipher into the output. The output thus represents a single snapshot
+    * of the document, even if it is modified during the operation.
     * 
     * @param doc <code>PadDocument</code>
     * @param output OutputStream
     * @param encoding String charset name or null for a global default value
     * @param key byte[] encryption key
+    * @param purpose {@code WritePurpose} 
     * @throws IllegalCharsetNameException
     * @throws UnsupportedCharsetNameException
     * @throws IOException
     */
    private void writeDocumentEncrypted (PadDocument doc, OutputStream output, 
-                             String encoding, byte[] key) throws IOException {
+                             String encoding, byte[] key, WritePurpose purpose) throws IOException {
 	  Objects.requireNonNull(doc, "document is null");
 	  Objects.requireNonNull(output, "output is null");
 	  Objects.requireNonNull(key, "key is null");
-      
-      InputStream input = encryptedDocumentInputStream(doc, key, encoding);
-      try {
-		 Util.transferData(input, output, STREAM_BUFFER_SIZE);
-      } catch (InterruptedException e) {
-    	  throw new IOException("thread interrupted", e);
-      } finally {
-    	  input.close();
-      }
+	  
+	  // serialise the document once, measuring length and CRC of the cleartext
+	  SpoolBuffer spool = new SpoolBuffer(SPOOL_MEMORY_LIMIT);
+	  try {
+		  ChecksumOutputStream check = new ChecksumOutputStream(spool, CompressionCodecs.SAMPLE_SIZE);
+		  writeDocumentCleartext(doc, check, encoding);
+		  check.close();
+		  
+		  FHL_FileInfo info = new FHL_FileInfo();
+		  info.fileName = "noname";
+		  info.storeTime = System.currentTimeMillis();
+		  info.fileTime = info.storeTime;
+		  info.fileLength = check.getCount();
+		  info.fileCrc = check.getCrc();
+		  CompressionCodec codec = selectCompressionCodec(purpose, check);
+		  info.compression = (short) codec.getID();
+		  if (codec.getID() != CompressionCodecs.NONE) {
+			  info.comment = "compressed Ragna Scribe text document: " + doc.getTitle();
+		  } else {
+			  info.comment = "Ragna Scribe text document: " + doc.getTitle();
+		  }
+		  
+		  // stream the cleartext: spool -> compression -> cipher -> output
+		  CipherStreamWriter cout = new CipherStreamWriter(output, info, key);
+		  OutputStream out = codec.getOutputStream(cout, info.fileLength);
+		  try (InputStream in = spool.getInputStream()) {
+			  byte[] buffer = new byte[64 * 1024];
+			  int n;
+			  while ((n = in.read(buffer)) > -1) {
+				  out.write(buffer, 0, n);
+			  }
+		  }
+		  out.close();
+		  
+		  Log.log(8, "(IO_Manager.writeDocumentEncrypted) streamed encrypted document, cleartext length = " 
+				  + info.fileLength + ", codec = " + codec.getName());
+	  } finally {
+		  spool.dispose();
+	  }
+   }
+   
+   /** Determines the compression codec for an encrypted document output 
+    * from the global options of the given purpose. Documents below a 
+    * threshold length are not compressed.
+    * 
+    * @param purpose {@code WritePurpose}
+    * @param check {@code ChecksumOutputStream} result of the measuring pass
+    * @return {@code CompressionCodec}
+    */
+   private CompressionCodec selectCompressionCodec (WritePurpose purpose, ChecksumOutputStream check) {
+	  if (check.getCount() <= COMPRESSION_THRESHOLD) {
+		  return CompressionCodecs.forID(CompressionCodecs.NONE);
+	  }
+	  
+	  PersistentOptions options = Global.getOptions();
+	  String name = options.getOption(purpose == WritePurpose.MIRROR ? 
+			  "mirrorCompressionCodec" : "compressionCodec");
+	  int level = options.getIntOption("compressionLevel");
+	  if (level < 1 || level > 9) {
+		  level = Deflater.DEFAULT_COMPRESSION;
+	  }
+	  
+	  CompressionCodec codec = name.isEmpty() ? null : CompressionCodecs.forName(name, level);
+	  if (codec == null) {
+		  if (!name.isEmpty() && !name.equals(CompressionCodecs.AUTO)) {
+			  Log.log(3, "(IO_Manager.selectCompressionCodec) unknown codec option: " + name + ", using auto");
+		  }
+		  codec = CompressionCodecs.select(check.getSample(), check.getSampleLength(), 
+				  purpose == WritePurpose.MIRROR, level);
+	  }
+	  return codec;
    }
    
    /** Writes the given pad-document to the given output stream by applying
@@ -346,79 +539,6 @@ public class IO_Manager {
       writer.write(output, doc);
    }
    
-   /** Encrypts the given document with the given key material and renders
-    * the encrypted results as an input-stream. The temporary file containing
-    * this stream gets deleted when the resulting input stream is closed.
-    * <p>Currently the size limit is 2.1 G.
-    * 
-    * @param doc {@code PadDocument}
-    * @param key byte[]
-    * @param encoding String charset name or null for VM default
-    * @return {@code InputStream}
-    * @throws IOException 
-    */
-   @SuppressWarnings("resource")
-   private InputStream encryptedDocumentInputStream (PadDocument doc, byte[] key, 
-		   			   String encoding) throws IOException {
-	   Objects.requireNonNull(doc, "document is null");
-	   Objects.requireNonNull(key, "key is null");
-	   
-	   InputStream input;
-	   OutputStream out;
-	   DirectByteOutputStream bout;
-	   FHL_FileInfo info = new FHL_FileInfo();
-	   info.fileName = "noname";
-	   info.storeTime = System.currentTimeMillis();
-	   info.fileTime = info.storeTime;
-
-	   // create the document cleartext serialisation (internal)
-//	   File clrOutF = File.createTempFile("ragna-", ".tmp");
-//	   out = new FileOutputStream(clrOutF);
-	   bout = new DirectByteOutputStream(STREAM_BUFFER_SIZE);
-	   writeDocumentCleartext(doc, bout, encoding);
-//	   out.close();
-	   long origLength = bout.size();
-	   info.fileLength = origLength;
-//	   input = new FileInputStream(clrOutF);
-	   input = new ByteArrayInputStream(bout.getBuffer(), 0, bout.size());
-
-	   if (origLength > COMPRESSION_THRESHOLD) {
-		   // create a ZIP input from cleartext stream
-		   IntResult ires = new IntResult();
-		   input = Util.getZipInputStream(input, origLength, ires);
-		   info.compression = 1;
-		   info.fileCrc = ires.getValue();
-		   info.comment = "compressed Ragna Scribe text document: " + doc.getTitle();
-	   } else {
-		   info.comment = "Ragna Scribe text document: " + doc.getTitle();
-	   }
-	   
-	   // remove cleartext file
-//	   clrOutF.delete();
-	   
-	   // create the ciphertext output file (intermediary in TEMP)
-	   File outF = File.createTempFile("ragna-", ".enc");
-	   CipherOutputFile coutFile = new CipherOutputFile(outF, info, key);
-	   out = coutFile.getOutputStream();
-	   try {
-		   Util.transferData(input, out, STREAM_BUFFER_SIZE);
-	   } catch (InterruptedException e) {
-		   throw new IOException("interrupted while writing");
-	   } finally {
-		   out.close();
-	   }
-
-	   // open an input stream of encrypted data
-	   input = new FileInputStream(outF) {
-		  @Override
-		  public void close() throws IOException {
-			 super.close();
-			 outF.delete();
-		  }
-	   };
-	   return input;
-   }
-   
    /** Deletes the external data-file of the given document, if it exists,
     * and also deletes any history files associated to the argument. 
     * <p>This does not remove the pad-document from any container and does not
@@ -439,6 +559,8 @@ public class IO_Manager {
 			   IOService.get().acquireFileAccess(file);
 			   try {
 				   ok = file.delete();
+				   historyWriter.cancel(file);
+				   historyStore.clearFile(file);
 				   fileSafe.clearFile(file);
 			   } catch (IOException e) {
 				   e.printStackTrace();
@@ -485,6 +607,8 @@ public class IO_Manager {
     * @throws IOException 
     */
    public boolean deleteFileHistory (File file) throws IOException {
+	   historyWriter.cancel(file);
+	   historyStore.clearFile(file);
 	   fileSafe.clearFile(file);
 	   return true;
 	   
@@ -587,6 +711,8 @@ public class IO_Manager {
     */
    public void setFileHistoryDir (File dir) {
        fileSafe = new LayeredFileSafe(dir, HISTORY_DAYS, HISTORY_MONTHS, HISTORY_YEARS);
+       historyStore = new ChunkedHistoryStore(new File(dir, HISTORY_STORE_NAME), 
+    		   HISTORY_DAYS, HISTORY_MONTHS, HISTORY_YEARS);
    }
    
    /** Puts the given filepath expression to memorise in this IO-manager as 
@@ -742,6 +868,12 @@ public class IO_Manager {
     * @throws IOException 
     */
    public boolean isValidSecretKey (File file, byte[] key) throws IOException {
+	   // verify against the cipher header if available
+	   CipherFileHeader header = CipherFileHeader.get(file);
+	   if (header != null) {
+		   return key != null && header.verifyKey(key);
+	   }
+	   
 	   InputStream stream = null;
 	   try {
 		   stream = openDecryptedInputStream(file, new byte[][] {key}, false);
@@ -774,7 +906,7 @@ public class IO_Manager {
     * @throws IOException 
     * @throws InterruptedException 
     */
-   private InputStream openDecryptedInputStream (File file, byte[][] keyarr, boolean useGUI) 
+   InputStream openDecryptedInputStream (File file, byte[][] keyarr, boolean useGUI) 
 		   		throws IOException, InterruptedException {
 	  Objects.requireNonNull(file, "file is null");
 	  Objects.requireNonNull(keyarr, "keyarr is null");
@@ -798,7 +930,7 @@ public class IO_Manager {
 			  input = openCipherInputStream(file, passphrase, info);
 		  }
 		  
-		  if (useGUI) synchronized (openLock) {
+		  if (useGUI && input == null) synchronized (openLock) {
 		  while (input == null) {
 			  // obtain key material from user
 			  String hstr = Global.res.getDisplay("msg.input.password");
@@ -831,10 +963,24 @@ public class IO_Manager {
 		  
 	      // otherwise return key material in parameter
 		  keyarr[0] = passphrase;
+		  
+		  // large files are decrypted, decompressed and parsed concurrently
+		  boolean pipelined = isPipelinedOpen(file);
+		  if (pipelined && !(input instanceof ParallelDecryptInputStream)) {
+			  input = new PipelineInputStream(input, "decrypt");
+		  }
 	      
-	      // install ZIP input-stream if coded in file
-	      if (info.compression == 1) {
-	         input = new GZIPInputStream(input, STREAM_BUFFER_SIZE);
+	      // install decompression input-stream if coded in file
+	      if (info.compression != CompressionCodecs.NONE) {
+	    	 try {
+	    		input = CompressionCodecs.forID(info.compression).getInputStream(input);
+	    	 } catch (IllegalArgumentException e) {
+	    		input.close();
+	    		throw new UnknownFileFormatException("unknown compression in file: " + info.compression);
+	    	 }
+	    	 if (pipelined) {
+	    		 input = new PipelineInputStream(input, "inflate");
+	    	 }
 	      }
 	      
 	  // non-encrypted file
@@ -844,9 +990,71 @@ public class IO_Manager {
 	  return input;
    }
    
+   /** Whether the given encrypted file shall be opened with a pipeline of
+    * concurrent stages. This is the case if option "pipelinedOpen" is set,
+    * multiple processors are available and the file is larger than a 
+    * threshold.
+    * 
+    * @param file File
+    * @return boolean
+    */
+   private boolean isPipelinedOpen (File file) {
+	   return Global.getOptions().isOptionSet("pipelinedOpen") && 
+			  Runtime.getRuntime().availableProcessors() > 1 &&
+			  file.length() > PIPELINE_THRESHOLD;
+   }
+   
+   /** Whether the given encrypted file shall be decrypted in parallel. This 
+    * is the case if option "parallelDecrypt" is set, multiple processors 
+    * are available and the file is larger than a threshold.
+    * 
+    * @param file File
+    * @return boolean
+    */
+   private boolean isParallelDecrypt (File file) {
+	   return Global.getOptions().isOptionSet("parallelDecrypt") && 
+			  ParallelDecryptInputStream.getThreadCount() > 1 &&
+			  file.length() > PIPELINE_THRESHOLD;
+   }
+   
+   /** Whether the given file shall be read through a file-channel reader.
+    * This is the case if option "channelOpen" is set and the file is a
+    * cleartext file larger than a threshold.
+    * 
+    * @param file File
+    * @return boolean
+    */
+   private boolean isChannelOpen (File file) throws IOException {
+	   return Global.getOptions().isOptionSet("channelOpen") && 
+			  file.length() > CHANNEL_OPEN_THRESHOLD && !isFileEncrypted(file);
+   }
+   
+   /** Reads a pad-document of the Treepad format from the given cleartext 
+    * file through a file-channel reader.
+    * 
+    * @param file File cleartext document file
+    * @param encoding String character set of the file
+    * @return {@code PadDocument}
+    * @throws UnknownFileFormatException if the file format could not be recognised
+    * @throws StreamCorruptedException if the file contained false formatting
+    * @throws IOException
+    */
+   private PadDocument openChannelDocument (File file, String encoding) throws IOException {
+	   long time = System.currentTimeMillis();
+	   try (Reader reader = new ChannelFileReader(file, Charset.forName(encoding))) {
+		   PadDocument doc = new TreepadReader(encoding).read(reader);
+		   Log.log(8, "(IO_Manager.openChannelDocument) read file (" + file.length() 
+		   		+ " bytes) in " + (System.currentTimeMillis() - time) + " ms: " + file);
+		   return doc;
+	   }
+   }
+   
    /** Attempts to open a {@code CipherInputFile} with the given key material
     * and render a cleartext input-stream of its data.
-    * This loops for two attempts concerning possible divergent file formats.
+    * The key is first verified against the cached cipher header of the file,
+    * so that invalid keys are rejected without opening the file. There are 
+    * two divergent file formats; the format which succeeded with the last 
+    * opening of the file is attempted first.
     * 
     * @param file File encrypted input file
     * @param key byte[] passphrase
@@ -855,15 +1063,47 @@ public class IO_Manager {
     */
    private InputStream openCipherInputStream (File file, byte[] key, FHL_FileInfo info) {
 	   Objects.requireNonNull(info, "info is null");
-	   InputStream input;
-	   FHL_FileInfo info2;
-	   int ct = 0;
-	   do { 
-		   CipherInputFile cinF = new CipherInputFile(file, key, ct==0 ? 0 : 2);
+	   CipherFileHeader header;
+	   try {
+		   header = CipherFileHeader.get(file);
+	   } catch (IOException e) {
+		   header = null;
+	   }
+	   
+	   // large files are decrypted in parallel if their layout allows it
+	   if (header != null && isParallelDecrypt(file)) {
+		   try {
+			   InputStream input = ParallelDecryptInputStream.open(file, header, key, info);
+			   if (input != null) return input;
+		   } catch (IOException e) {
+			   Log.log(5, "(IO_Manager.openCipherInputStream) parallel decryption failed: " + e);
+		   }
+	   }
+	   
+	   // reject invalid key material by header verification
+	   if (header != null && !header.verifyKey(key)) {
+		   Log.log(5, "(IO_Manager.openCipherInputStream) key rejected by cipher header: " + file.getName());
+		   info.errorCode = 6;
+		   return null;
+	   }
+	   
+	   // order of format variants to attempt
+	   int[] formats = header != null && header.getFormat() == 2 ? new int[] {2, 0} : new int[] {0, 2};
+	   InputStream input = null;
+	   FHL_FileInfo info2 = null;
+	   for (int format : formats) { 
+		   CipherInputFile cinF = new CipherInputFile(file, key, format);
 		   input = cinF.getInputStream();
 		   info2 = cinF.getFileInfo();
-		   Log.log(5, "(IO_Manager.openCipherInputStream) open CipherInputFile, loop = " + ct + ", success = " + (input != null));
-	   } while (++ct == 1 && input == null);
+		   Log.log(5, "(IO_Manager.openCipherInputStream) open CipherInputFile, format = " + format + ", success = " + (input != null));
+		   if (input != null) {
+			   if (header != null) {
+				   header.setFormat(format);
+				   header.setFileInfo(info2);
+			   }
+			   break;
+		   }
+	   }
 	   
 	   info.readFrom(info2);
 	   return input;
@@ -919,10 +1159,15 @@ public class IO_Manager {
 	    	  // get encoding setting of document from its system stored options
 	    	  if (options != null) {
 	    		  encoding = options.getOption("text-encoding");
-	    		  if (encoding != null) {
+	    		  if (encoding != null && !encoding.isEmpty()) {
 	    			  Log.debug(8, "(IO_Manager.openDocument) detected Treepad encoding " + encoding);
 	    		  }
 	    	  }
+	    	  
+	    	  // otherwise get encoding of the file if it is known
+	    	  if (encoding == null || encoding.isEmpty()) {
+	    		  encoding = FileMetadataCache.get().getEncoding(file);
+	    	  }
 	
 	    	  // otherwise get encoding from global option for the Treepad type
 	    	  if (encoding == null || encoding.isEmpty()) {
@@ -941,11 +1186,23 @@ public class IO_Manager {
 			  encoding = enc2;
 	      }
 		  
-	      // read document via input stream and set encryption status
-	      input.reset();
-	      PadDocument document = openDocument(input, encoding);
+	      // read document via input stream or file-channel and set encryption status
+	      PadDocument document;
+	      if (isChannelOpen(file)) {
+	    	  input.close();
+	    	  input = null;
+	    	  document = openChannelDocument(file, encoding);
+	      } else {
+	    	  input.reset();
+	    	  document = openDocument(input, encoding);
+	      }
 	      document.setEncrypted(passphrase);
 	      
+	      // replay a crashed session's journal on a mirror file
+	      if (Global.getMirrorFileManager() != null && Global.isMirrorFilepath(filepath)) {
+	    	  document = MirrorJournal.recover(document);
+	      }
+	      
 	      // restore article properties from document options
 	      if (options != null) {
 	    	  // create a Map from article-IDs to properties expressions (lists of properties)
@@ -972,6 +1229,7 @@ public class IO_Manager {
 	      }
 	      
 	      document.resetModified();
+	      FileMetadataCache.get().putDocumentData(file, document.getUUID(), encoding);
 		  Log.log(3, "(IO_Manager.openDocument) opened document " + document.getUUID().toHexString() + ", path=" + filepath);
 	      return document;
 	      
@@ -1008,7 +1266,8 @@ public class IO_Manager {
    }
 
    /** Copies a source file to a target file while ensuring data security
-    * via CRC checking and file access control (IOService).
+    * via CRC checking and file access control (IOService). The data is
+    * transferred through file-channels by the {@code FileCopier}.
     *  
     * @param source File 
     * @param target File
@@ -1023,26 +1282,26 @@ public class IO_Manager {
 	   ios.acquireFileAccess(target);
 	   
 	   try {
-		   Util.copyFile2(source, target, true);
+		   FileCopier.copyFile(source, target, true);
 	   } finally {
 		   ios.releaseFileAccess(source);
 		   ios.releaseFileAccess(target);
+		   FileMetadataCache.get().invalidate(target);
 	   }
    }
 
    /** Whether the given file is an encrypted format of our parlance.
     * This performs an investigation of the file's content by reading a section
-    * of it. If the file does not exist or an IO error occurs, false is 
-    * returned.
+    * of it; the result is cached in the {@code FileMetadataCache}. If the file
+    * does not exist or an IO error occurs, false is returned.
     *  
     * @param file File file to investigate
     * @return boolean true = is encrypted, false = not encrypted  
     */
    public boolean isFileEncrypted (File file) throws IOException {
-	  // open file to detect encryption status
+	  // detect encryption status from file header (cached)
 	  try {
-		  byte[] buf = Util.readFileSpace(file, 0, 4);
-		  return Util.equalArrays(new byte[] {'P', 'W', 'S', '3'}, buf);
+		  return FileMetadataCache.get().isEncrypted(file);
 	  } catch (IOException e) {
 		  return false;
 	  }
@@ -1052,12 +1311,23 @@ public class IO_Manager {
     * the security file copies available assigned to the given original file.
     * The files returned by this method are unique.
     *  
+    * Versions of the deduplicating history store are represented by their
+    * manifest files, which are resolved by {@code restoreFile()}.
+    *  
     * @param f File object file identity
     * @return {@code File[]}
     * @throws IOException 
     */
    public File[] getFileHistory (File f) throws IOException {
-       return fileSafe.getHistory(f);
+	   File[] files = historyStore.getHistory(f);
+	   File[] safeFiles = fileSafe.getHistory(f);
+	   if (safeFiles == null || safeFiles.length == 0) return files;
+	   if (files.length == 0) return safeFiles;
+	   
+	   File[] all = Arrays.copyOf(files, files.length + safeFiles.length);
+	   System.arraycopy(safeFiles, 0, all, files.length, safeFiles.length);
+	   Arrays.sort(all, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+	   return all;
    }
    
    /** Returns an array of files in descending time order (youngest first) of 
@@ -1071,32 +1341,105 @@ public class IO_Manager {
     */
    public File[] getFileHistory (PadDocument document) throws IOException {
 	   String path = getExternalFileReference(document.getUUID());
-       return path == null ? null : fileSafe.getHistory(new File(path));
+       return path == null ? null : getFileHistory(new File(path));
+   }
+   
+   /** Copies the given file or history version into the target file.
+    * A history version of the deduplicating store is reassembled from its
+    * chunks, any other file is copied.
+    * 
+    * @param source File file or history version
+    * @param target File destination file
+    * @throws IOException
+    * @throws InterruptedException
+    */
+   public void restoreFile (File source, File target) throws IOException, InterruptedException {
+	   if (historyStore.isVersionFile(source)) {
+		   historyStore.restore(source, target);
+	   } else {
+		   copyFile(source, target);
+	   }
    }
    
    /** Triggers the file history storage system to update its state to current 
-    * time.
+    * time. With system option "asyncHistory" the promotion is performed
+    * by the history writer thread.
     */
    public void promoteHistory () {
+	   if (Global.getOptions().isOptionSet("asyncHistory")) {
+		   historyWriter.promote();
+		   return;
+	   }
 	   try {
-		   fileSafe.promote();
+		   executeHistoryPromotion();
 	   } catch (IOException e) {
 		   e.printStackTrace();
 	   }
    }
 
+   /** Promotes the layers of the file history storage to current time.
+    * 
+    * @throws IOException
+    */
+   void executeHistoryPromotion () throws IOException {
+	   fileSafe.promote();
+	   historyStore.promote();
+   }
+
    /** Writes a history copy of the given file if system option "useFileHistory"
-    * is set, otherwise does nothing.
+    * is set, otherwise does nothing. With option "asyncHistory" the copy is
+    * queued to the history writer, which coalesces repeated pushes of the
+    * same file.
     * 
     * @param f File file to copy
     * @throws IOException
     */
    public void pushFileHistory (File f) throws IOException {
-	   if (Global.getOptions().isOptionSet("useFileHistory")) {
-		   fileSafe.storeFile(f);
+	   PersistentOptions options = Global.getOptions();
+	   if (options.isOptionSet("useFileHistory")) {
+		   try {
+			   if (options.isOptionSet("asyncHistory")) {
+				   historyWriter.push(f);
+			   } else {
+				   storeFileHistory(f);
+			   }
+		   } catch (InterruptedException e) {
+			   Thread.currentThread().interrupt();
+			   throw new InterruptedIOException("history copy interrupted: " + f);
+		   }
 	   }
    }
 
+   /** Writes a history copy of the given file under file access control.
+    * With option "dedupHistory" the copy is stored in the deduplicating 
+    * history store.
+    * 
+    * @param f File file to copy
+    * @throws IOException
+    * @throws InterruptedException if the calling thread was interrupted while 
+    *         waiting for file access
+    */
+   void storeFileHistory (File f) throws IOException, InterruptedException {
+	   IOService.get().acquireFileAccess(f);
+	   try {
+		   if (Global.getOptions().isOptionSet("dedupHistory")) {
+			   historyStore.storeFile(f);
+		   } else {
+			   fileSafe.storeFile(f);
+		   }
+	   } finally {
+		   IOService.get().releaseFileAccess(f);
+	   }
+   }
+
+   /** Returns the background writer of file history copies.
+    * 
+    * @return {@code HistoryWriter}
+    */
+   public HistoryWriter getHistoryWriter () {
+	   return historyWriter;
+   }
+
    /** Listens to property changes in registered documents.
     * We react to: "uuidChanged", "encryptionChanged".
     */
@@ -1125,4 +1468,110 @@ public class IO_Manager {
 	  }
 	   
    }
+
+   /** An output stream writing to a file-channel through a large direct
+    * buffer. Closing the stream does not close the channel.
+    */
+   private static class ChannelOutputStream extends OutputStream {
+	  private static final int BUFFER_SIZE = 1024 * 1024;
+	  private FileChannel channel;
+	  private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	  
+	  ChannelOutputStream (FileChannel channel) {
+		  this.channel = channel;
+	  }
+
+	  @Override
+	  public void write (int b) throws IOException {
+		  if (!buffer.hasRemaining()) {
+			  flushBuffer();
+		  }
+		  buffer.put((byte) b);
+	  }
+
+	  @Override
+	  public void write (byte[] b, int off, int len) throws IOException {
+		  while (len > 0) {
+			  if (!buffer.hasRemaining()) {
+				  flushBuffer();
+			  }
+			  int n = Math.min(len, buffer.remaining());
+			  buffer.put(b, off, n);
+			  off += n;
+			  len -= n;
+		  }
+	  }
+	  
+	  private void flushBuffer () throws IOException {
+		  buffer.flip();
+		  while (buffer.hasRemaining()) {
+			  channel.write(buffer);
+		  }
+		  buffer.clear();
+	  }
+
+	  @Override
+	  public void flush () throws IOException {
+		  flushBuffer();
+	  }
+   }
+   
+   /** An output stream which counts the bytes written and calculates their
+    * CRC32 value before passing them on to an optional target stream.
+    * Optionally the leading bytes are kept as a sample.
+    */
+   private static class ChecksumOutputStream extends OutputStream {
+	  private OutputStream out;
+	  private CRC32 crc = new CRC32();
+	  private byte[] sample;
+	  private long count;
+	   
+	  /** Creates a new checksum stream.
+	   * 
+	   * @param out OutputStream target stream or null for none
+	   * @param sampleSize int size of the data sample to keep
+	   */
+	  ChecksumOutputStream (OutputStream out, int sampleSize) {
+		  this.out = out;
+		  sample = new byte[sampleSize];
+	  }
+
+	  @Override
+	  public void write (int b) throws IOException {
+		  if (count < sample.length) {
+			  sample[(int) count] = (byte) b;
+		  }
+		  crc.update(b);
+		  count++;
+		  if (out != null) out.write(b);
+	  }
+
+	  @Override
+	  public void write (byte[] b, int off, int len) throws IOException {
+		  if (count < sample.length) {
+			  System.arraycopy(b, off, sample, (int) count, (int) Math.min(len, sample.length - count));
+		  }
+		  crc.update(b, off, len);
+		  count += len;
+		  if (out != null) out.write(b, off, len);
+	  }
+	  
+	  public byte[] getSample () {return sample;}
+	  
+	  public int getSampleLength () {return (int) Math.min(count, sample.length);}
+
+	  @Override
+	  public void flush () throws IOException {
+		  if (out != null) out.flush();
+	  }
+
+	  @Override
+	  public void close () throws IOException {
+		  if (out != null) out.close();
+	  }
+	  
+	  public long getCount () {return count;}
+	  
+	  public int getCrc () {return (int) crc.getValue();}
+   }
 }
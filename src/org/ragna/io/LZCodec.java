@@ -0,0 +1,369 @@
+/*
+*  File: LZCodec.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/** A fast compression codec of the LZ77 family implemented in pure Java.
+ * The block format follows the LZ4 sequence layout: a token byte with
+ * literal and match lengths, the literals, a 16 bit match offset and length
+ * extensions. Matches are found through a single hash table of 4-byte
+ * sequences without chain search, which favours speed over ratio.
+ *
+ * <p>The stream format consists of a magic number and a series of blocks,
+ * each preceded by its cleartext and its stored length. A block which does
+ * not compress is stored as is. A cleartext length of zero terminates the
+ * stream.
+ */
+public class LZCodec implements CompressionCodec {
+
+   /** Size of a cleartext block. */
+   public static final int BLOCK_SIZE = 64 * 1024;
+
+   private static final int MAGIC = 0x524C5A31;  // "RLZ1"
+   private static final int MIN_MATCH = 4;
+   private static final int LAST_LITERALS = 5;
+   private static final int MATCH_SEARCH_LIMIT = 12;
+   private static final int HASH_LOG = 14;
+   private static final int MAX_OFFSET = 0xFFFF;
+
+   @Override
+   public int getID () {return CompressionCodecs.LZ;}
+
+   @Override
+   public String getName () {return "lz";}
+
+   @Override
+   public OutputStream getOutputStream (OutputStream out, long length) throws IOException {
+      return new LZOutputStream(out);
+   }
+
+   @Override
+   public InputStream getInputStream (InputStream in) throws IOException {
+      return new LZInputStream(in);
+   }
+
+   /** Returns the maximum size of compressed data for a cleartext of the
+    * given length.
+    *
+    * @param length int cleartext length
+    * @return int
+    */
+   public static int maxCompressedLength (int length) {
+      return length + length / 255 + 16;
+   }
+
+   private static int readInt (byte[] b, int i) {
+      return (b[i] & 0xff) | (b[i+1] & 0xff) << 8 | (b[i+2] & 0xff) << 16 | (b[i+3] & 0xff) << 24;
+   }
+
+   private static int hash (int sequence) {
+      return (sequence * -1640531535) >>> (32 - HASH_LOG);
+   }
+
+   /** Compresses a block of data. The target array must have at least the
+    * length of {@code maxCompressedLength(length)}.
+    *
+    * @param src byte[] cleartext
+    * @param length int length of cleartext (from index 0)
+    * @param dst byte[] target array
+    * @param table int[] hash table of size 2^14, contents are overwritten
+    * @return int length of compressed data in dst
+    */
+   public static int compress (byte[] src, int length, byte[] dst, int[] table) {
+      Arrays.fill(table, -1);
+      int ip = 0, anchor = 0, op = 0;
+      int matchLimit = length - MATCH_SEARCH_LIMIT;
+
+      while (ip < matchLimit) {
+         int sequence = readInt(src, ip);
+         int h = hash(sequence);
+         int ref = table[h];
+         table[h] = ip;
+
+         if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+            // skip faster through data which does not match
+            ip += 1 + ((ip - anchor) >>> 6);
+            continue;
+         }
+
+         // extend the match
+         int len = MIN_MATCH;
+         int max = length - LAST_LITERALS - ip;
+         while (len < max && src[ref + len] == src[ip + len]) len++;
+
+         op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, len);
+         ip += len;
+         anchor = ip;
+      }
+
+      // final literals
+      return writeSequence(src, anchor, length - anchor, dst, op, 0, 0);
+   }
+
+   private static int writeSequence (byte[] src, int litStart, int litLen, byte[] dst, int op,
+         int offset, int matchLen) {
+      int tokenPos = op++;
+      int token = Math.min(litLen, 15) << 4;
+      if (litLen >= 15) {
+         op = writeLength(dst, op, litLen - 15);
+      }
+      System.arraycopy(src, litStart, dst, op, litLen);
+      op += litLen;
+
+      if (matchLen > 0) {
+         dst[op++] = (byte) offset;
+         dst[op++] = (byte) (offset >>> 8);
+         int ml = matchLen - MIN_MATCH;
+         token |= Math.min(ml, 15);
+         if (ml >= 15) {
+            op = writeLength(dst, op, ml - 15);
+         }
+      }
+      dst[tokenPos] = (byte) token;
+      return op;
+   }
+
+   private static int writeLength (byte[] dst, int op, int len) {
+      while (len >= 255) {
+         dst[op++] = (byte) 255;
+         len -= 255;
+      }
+      dst[op++] = (byte) len;
+      return op;
+   }
+
+   /** Decompresses a block of data.
+    *
+    * @param src byte[] compressed data
+    * @param length int length of compressed data (from index 0)
+    * @param dst byte[] target array
+    * @param dstLength int expected length of cleartext
+    * @throws StreamCorruptedException if the data is invalid
+    */
+   public static void decompress (byte[] src, int length, byte[] dst, int dstLength)
+         throws StreamCorruptedException {
+      int ip = 0, op = 0;
+      try {
+         while (ip < length) {
+            int token = src[ip++] & 0xff;
+
+            // literals
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+               int b;
+               do {
+                  b = src[ip++] & 0xff;
+                  litLen += b;
+               } while (b == 255);
+            }
+            if (op + litLen > dstLength || ip + litLen > length)
+               throw new StreamCorruptedException("LZ block literal overflow");
+            System.arraycopy(src, ip, dst, op, litLen);
+            ip += litLen;
+            op += litLen;
+            if (ip == length) break;
+
+            // match
+            int offset = (src[ip] & 0xff) | (src[ip+1] & 0xff) << 8;
+            ip += 2;
+            int matchLen = token & 0x0f;
+            if (matchLen == 15) {
+               int b;
+               do {
+                  b = src[ip++] & 0xff;
+                  matchLen += b;
+               } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            int ref = op - offset;
+            if (offset == 0 || ref < 0 || op + matchLen > dstLength)
+               throw new StreamCorruptedException("LZ block illegal match");
+            for (int i = 0; i < matchLen; i++) {
+               dst[op++] = dst[ref++];
+            }
+         }
+      } catch (ArrayIndexOutOfBoundsException e) {
+         throw new StreamCorruptedException("LZ block truncated");
+      }
+      if (op != dstLength)
+         throw new StreamCorruptedException("LZ block length mismatch: " + op + ", expected " + dstLength);
+   }
+
+//  *********  INNER CLASSES  *********
+
+   /** Output stream compressing into the LZ stream format. Closing this
+    * stream closes the target stream.
+    */
+   public static class LZOutputStream extends FilterOutputStream {
+      private DataOutputStream dout;
+      private byte[] block = new byte[BLOCK_SIZE];
+      private byte[] buffer = new byte[maxCompressedLength(BLOCK_SIZE)];
+      private int[] table = new int[1 << HASH_LOG];
+      private int fill;
+      private boolean closed;
+
+      public LZOutputStream (OutputStream out) throws IOException {
+         super(out);
+         dout = new DataOutputStream(out);
+         dout.writeInt(MAGIC);
+      }
+
+      @Override
+      public void write (int b) throws IOException {
+         if (closed)
+            throw new IOException("stream closed");
+         if (fill == block.length) {
+            writeBlock();
+         }
+         block[fill++] = (byte) b;
+      }
+
+      @Override
+      public void write (byte[] b, int off, int len) throws IOException {
+         if (closed)
+            throw new IOException("stream closed");
+         while (len > 0) {
+            if (fill == block.length) {
+               writeBlock();
+            }
+            int n = Math.min(len, block.length - fill);
+            System.arraycopy(b, off, block, fill, n);
+            fill += n;
+            off += n;
+            len -= n;
+         }
+      }
+
+      private void writeBlock () throws IOException {
+         if (fill == 0) return;
+         int n = compress(block, fill, buffer, table);
+         dout.writeInt(fill);
+         if (n < fill) {
+            dout.writeInt(n);
+            dout.write(buffer, 0, n);
+         } else {
+            // store incompressible block
+            dout.writeInt(fill);
+            dout.write(block, 0, fill);
+         }
+         fill = 0;
+      }
+
+      @Override
+      public void flush () throws IOException {
+         writeBlock();
+         dout.flush();
+      }
+
+      @Override
+      public void close () throws IOException {
+         if (closed) return;
+         try {
+            writeBlock();
+            dout.writeInt(0);
+            dout.flush();
+         } finally {
+            closed = true;
+            out.close();
+         }
+      }
+   }
+
+   /** Input stream rendering the cleartext of the LZ stream format. */
+   public static class LZInputStream extends InputStream {
+      private DataInputStream din;
+      private byte[] block = new byte[BLOCK_SIZE];
+      private byte[] buffer = new byte[maxCompressedLength(BLOCK_SIZE)];
+      private int length, pos;
+      private boolean eof;
+
+      public LZInputStream (InputStream in) throws IOException {
+         din = new DataInputStream(in);
+         if (din.readInt() != MAGIC)
+            throw new StreamCorruptedException("not an LZ compressed stream");
+      }
+
+      private boolean readBlock () throws IOException {
+         if (eof) return false;
+         int rawLength, compLength;
+         try {
+            rawLength = din.readInt();
+            if (rawLength == 0) {
+               eof = true;
+               return false;
+            }
+            compLength = din.readInt();
+         } catch (EOFException e) {
+            throw new StreamCorruptedException("LZ stream truncated");
+         }
+         if (rawLength < 0 || rawLength > BLOCK_SIZE || compLength < 0 || compLength > rawLength)
+            throw new StreamCorruptedException("illegal LZ block header");
+
+         if (compLength == rawLength) {
+            din.readFully(block, 0, rawLength);
+         } else {
+            din.readFully(buffer, 0, compLength);
+            decompress(buffer, compLength, block, rawLength);
+         }
+         length = rawLength;
+         pos = 0;
+         return true;
+      }
+
+      @Override
+      public int read () throws IOException {
+         if (pos == length && !readBlock()) return -1;
+         return block[pos++] & 0xff;
+      }
+
+      @Override
+      public int read (byte[] b, int off, int len) throws IOException {
+         if (len == 0) return 0;
+         if (pos == length && !readBlock()) return -1;
+         int n = Math.min(len, length - pos);
+         System.arraycopy(block, pos, b, off, n);
+         pos += n;
+         return n;
+      }
+
+      @Override
+      public int available () throws IOException {
+         return length - pos;
+      }
+
+      @Override
+      public void close () throws IOException {
+         din.close();
+      }
+   }
+}
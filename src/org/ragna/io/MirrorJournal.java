@@ -0,0 +1,816 @@
+/*
+*  File: MirrorJournal.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.crypto.Cipher;
+
+import org.ragna.core.DefaultPadDocument;
+import org.ragna.core.Global;
+import org.ragna.core.PadArticle;
+import org.ragna.core.PadDocument;
+import org.ragna.core.PadDocument.DocumentType;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.UUID;
+
+/** An append-only journal of article-level changes of a document which
+ * complements the full mirror files of the mirror system.
+ *
+ * <p>Instead of writing the complete document at each modification, the
+ * mirror adapter appends the changes since the last append to the journal:
+ * the full state of an article when first touched in a journal generation,
+ * content deltas (common prefix and suffix against the last journaled text)
+ * thereafter, and the article order (UUID and depth of all articles) when
+ * the structure changed. Journal frames are encrypted with a key derived
+ * from the document's key by PBKDF2 if the document is encrypted. From time
+ * to time the journal is compacted by writing a full mirror, after which a
+ * new journal generation starts.
+ *
+ * <p>Journal files are named after the mirror identifier, the session and
+ * the generation. The header of a journal file holds a fingerprint of the
+ * document content of the full mirror the journal builds upon and the
+ * article UUIDs of that content, which are not stored in the mirror. After
+ * a program crash, the latest journal of a terminated session whose base
+ * fingerprint matches the mirror file is replayed on top of it when the
+ * mirror is opened ({@code recover()}).
+ */
+public class MirrorJournal {
+
+	/** Name of the journal directory in the application directory. */
+	public static final String JOURNAL_DIR_NAME = "journals";
+
+	private static final String FILE_SUFFIX = ".jnl";
+	private static final byte[] MAGIC = "RJNL2".getBytes(StandardCharsets.US_ASCII);
+	private static final int SALT_LENGTH = 16;
+	private static final int FINGERPRINT_LENGTH = 32;
+	private static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+	/** Journal size below which no compaction is performed. */
+	private static final long MIN_COMPACTION_SIZE = 256 * 1024;
+
+	private static final int ARTICLE_RECORD = 1;
+	private static final int DELTA_RECORD = 2;
+	private static final int ORDER_RECORD = 3;
+
+	/** Start time of this program session, part of journal file names. */
+	private static final long SESSION = System.currentTimeMillis();
+
+	private static Map<String, MirrorJournal> journals = new HashMap<>();
+	private static SecureRandom random = new SecureRandom();
+
+	private PadDocument document;
+	private String identifier;
+	private PropertyChangeListener listener = new DocumentListener();
+	private Set<UUID> dirty = new HashSet<>();
+	private Map<UUID, ArticleState> journaled = new HashMap<>();
+	private int structureHash;
+	private boolean structureWritten;
+
+	private int generation;
+	private File file;
+	private File previous;
+	private byte[] salt;
+	private byte[] fileKey;
+	private long size;
+	private long baseSize;
+	private byte[] baseFingerprint;
+	private byte[] baseUuids;
+	private long baseModifyTime;
+	private boolean baseWritten;
+	private volatile boolean keyChanged;
+
+	/** Returns the journal for the given document and mirror identifier,
+	 * creating it if necessary.
+	 *
+	 * @param document {@code PadDocument}
+	 * @param identifier String mirror identifier of the document
+	 * @return {@code MirrorJournal}
+	 */
+	public static synchronized MirrorJournal get (PadDocument document, String identifier) {
+		Objects.requireNonNull(document, "document is null");
+		Objects.requireNonNull(identifier, "identifier is null");
+		MirrorJournal journal = journals.get(identifier);
+		if (journal == null || journal.document != document) {
+			if (journal != null) {
+				journal.dispose();
+			}
+			journal = new MirrorJournal(document, identifier);
+			journals.put(identifier, journal);
+		}
+		return journal;
+	}
+
+	/** Resets the journal of the given mirror identifier after its mirror
+	 * has been removed (e.g. the document was saved). The journal files of
+	 * this session are deleted; the next change leads to a full mirror.
+	 *
+	 * @param identifier String mirror identifier
+	 */
+	public static synchronized void reset (String identifier) {
+		MirrorJournal journal = journals.get(identifier);
+		if (journal != null) {
+			journal.resetJournal();
+		}
+	}
+
+	/** Removes the journal of the given mirror identifier from service and
+	 * deletes its files of this session.
+	 *
+	 * @param identifier String mirror identifier
+	 */
+	public static synchronized void remove (String identifier) {
+		MirrorJournal journal = journals.remove(identifier);
+		if (journal != null) {
+			journal.dispose();
+		}
+	}
+
+	private MirrorJournal (PadDocument document, String identifier) {
+		this.document = document;
+		this.identifier = identifier;
+		document.addPropertyChangeListener(listener);
+	}
+
+	/** Returns the directory of journal files.
+	 *
+	 * @return File
+	 */
+	public static File getJournalDirectory () {
+		return new File(Global.getApplicationDirectory(), JOURNAL_DIR_NAME);
+	}
+
+	/** Whether the journal has grown so large that a full mirror should be
+	 * written, or there is no full mirror in this session or since the
+	 * document's key changed.
+	 *
+	 * @return boolean
+	 */
+	public synchronized boolean isCompactionDue () {
+		return !baseWritten || keyChanged || size > Math.max(MIN_COMPACTION_SIZE, baseSize / 4);
+	}
+
+	/** Appends the changes of the document since the last append to the
+	 * journal. Does nothing if there are no changes.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush () throws IOException {
+		// remove the journal of the preceding generation (its mirror is written)
+		if (previous != null) {
+			previous.delete();
+			previous = null;
+		}
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bout);
+		int records = 0;
+
+		// article records for modified articles
+		UUID[] uuids;
+		synchronized (dirty) {
+			uuids = dirty.toArray(new UUID[dirty.size()]);
+			dirty.clear();
+		}
+		for (UUID uuid : uuids) {
+			PadArticle article = document.getArticle(uuid);
+			if (article == null) continue;
+			ArticleState state = new ArticleState(article.getTitle(), article.getContent());
+			ArticleState old = journaled.put(uuid, state);
+			if (old == null) {
+				out.writeByte(ARTICLE_RECORD);
+				out.write(uuid.getBytes());
+				CryptoIO.writeText(out, state.title);
+				CryptoIO.writeText(out, state.text);
+				records++;
+			} else if (!old.equals(state)) {
+				int prefix = commonPrefix(old.text, state.text);
+				int suffix = commonSuffix(old.text, state.text, prefix);
+				out.writeByte(DELTA_RECORD);
+				out.write(uuid.getBytes());
+				CryptoIO.writeText(out, state.title);
+				out.writeInt(prefix);
+				out.writeInt(suffix);
+				CryptoIO.writeText(out, state.text.substring(prefix, state.text.length() - suffix));
+				records++;
+			}
+		}
+
+		// order record if the article structure changed
+		int hash = 1;
+		List<PadArticle> list = new ArrayList<>(document.getArticleCount());
+		for (PadArticle article : document) {
+			hash = 31 * (31 * hash + article.getUUID().hashCode()) + article.getOrderDepth();
+			list.add(article);
+		}
+		if (!structureWritten || hash != structureHash) {
+			out.writeByte(ORDER_RECORD);
+			out.writeInt(list.size());
+			for (PadArticle article : list) {
+				out.write(article.getUUID().getBytes());
+				out.writeInt(article.getOrderDepth());
+			}
+			structureHash = hash;
+			structureWritten = true;
+			records++;
+		}
+
+		if (records > 0) {
+			appendFrame(bout.toByteArray());
+			Log.log(8, "(MirrorJournal.flush) appended " + records + " records to journal "
+					+ file.getName() + ", size = " + size);
+		}
+	}
+
+	/** Starts the compaction of the journal into a full mirror. Pending
+	 * changes are appended to the current generation if it builds upon a
+	 * written mirror, and a new journal generation is opened, based on the
+	 * current document content. The preceding journal is deleted with the
+	 * next append, when its mirror is expected to be stored.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void beginCompaction () throws IOException {
+		if (baseWritten) {
+			flush();
+		} else {
+			// the changes are contained in the full mirror
+			synchronized (dirty) {
+				dirty.clear();
+			}
+		}
+		previous = file;
+		file = null;
+		fileKey = null;
+		generation++;
+		journaled.clear();
+		structureWritten = false;
+		size = 0;
+		baseModifyTime = document.getModifyTime();
+		baseFingerprint = fingerprint(document);
+		ByteArrayOutputStream uuids = new ByteArrayOutputStream(document.getArticleCount() * 16);
+		for (PadArticle article : document) {
+			uuids.write(article.getUUID().getBytes());
+		}
+		baseUuids = uuids.toByteArray();
+	}
+
+	/** Completes a compaction after the full mirror has been written. If the
+	 * document was modified while the mirror was written, the mirror may not
+	 * match the base of the new journal generation; then the next change
+	 * leads to a full mirror again.
+	 *
+	 * @param mirrorSize long size of the full mirror in bytes
+	 */
+	public synchronized void endCompaction (long mirrorSize) {
+		baseSize = mirrorSize;
+		baseWritten = document.getModifyTime() == baseModifyTime;
+		keyChanged = false;
+	}
+
+	/** Deletes the journal files of this session and reverts to the initial
+	 * state (no full mirror written).
+	 */
+	private synchronized void resetJournal () {
+		deleteFile(file);
+		deleteFile(previous);
+		file = null;
+		previous = null;
+		fileKey = null;
+		generation++;
+		journaled.clear();
+		structureWritten = false;
+		size = 0;
+		baseWritten = false;
+		synchronized (dirty) {
+			dirty.clear();
+		}
+	}
+
+	private synchronized void dispose () {
+		document.removePropertyChangeListener(listener);
+		resetJournal();
+	}
+
+	private static void deleteFile (File f) {
+		if (f != null && f.exists() && !f.delete()) {
+			Log.log(5, "(MirrorJournal) unable to delete journal file: " + f);
+		}
+	}
+
+	/** Appends a frame to the journal file, creating the file if necessary.
+	 * Frames are encrypted (AES-GCM) with a key derived from the document's
+	 * key material or carry a CRC if the document is not encrypted. The key
+	 * is derived once per journal file.
+	 */
+	private void appendFrame (byte[] payload) throws IOException {
+		if (file == null) {
+			if (baseFingerprint == null)
+				throw new IllegalStateException("no base mirror");
+			File dir = getJournalDirectory();
+			dir.mkdirs();
+			file = new File(dir, identifier + "-" + SESSION + "-" + generation + FILE_SUFFIX);
+			salt = new byte[SALT_LENGTH];
+			random.nextBytes(salt);
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+				out.write(MAGIC);
+				out.write(salt);
+				out.writeInt(CryptoIO.KDF_ITERATIONS);
+				out.write(baseFingerprint);
+				out.writeInt(baseUuids.length / 16);
+				out.write(baseUuids);
+			}
+			// the size of a journal counts its frames only
+			size = 0;
+		}
+
+		byte[] frame;
+		byte[] key = document.getPassphrase();
+		if (key != null) {
+			if (fileKey == null) {
+				fileKey = CryptoIO.deriveKey(key, salt, CryptoIO.KDF_ITERATIONS);
+			}
+			Arrays.fill(key, (byte) 0);
+			byte[] nonce = new byte[CryptoIO.NONCE_LENGTH];
+			random.nextBytes(nonce);
+			byte[] cipher = CryptoIO.crypt(Cipher.ENCRYPT_MODE, fileKey, nonce, payload);
+			frame = new byte[1 + CryptoIO.NONCE_LENGTH + cipher.length];
+			frame[0] = 1;
+			System.arraycopy(nonce, 0, frame, 1, CryptoIO.NONCE_LENGTH);
+			System.arraycopy(cipher, 0, frame, 1 + CryptoIO.NONCE_LENGTH, cipher.length);
+		} else {
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			frame = new byte[1 + 4 + payload.length];
+			frame[0] = 0;
+			writeInt(frame, 1, (int) crc.getValue());
+			System.arraycopy(payload, 0, frame, 5, payload.length);
+		}
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			byte[] len = new byte[4];
+			writeInt(len, 0, frame.length);
+			out.write(len);
+			out.write(frame);
+			out.getChannel().force(false);
+		}
+		size += 4 + frame.length;
+	}
+
+	/** Returns a digest over order, titles and texts of the articles of the
+	 * given document, which identifies the base of a journal generation.
+	 * Article UUIDs are not included as they are not stored in documents.
+	 *
+	 * @param doc {@code PadDocument}
+	 * @return byte[] SHA-256 digest
+	 */
+	private static byte[] fingerprint (PadDocument doc) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] buf = new byte[4];
+			for (PadArticle article : doc) {
+				writeInt(buf, 0, article.getOrderDepth());
+				md.update(buf);
+				for (String text : new String[] {article.getTitle(), article.getContent()}) {
+					byte[] data = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+					writeInt(buf, 0, data.length);
+					md.update(buf);
+					md.update(data);
+				}
+			}
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeInt (byte[] buf, int off, int v) {
+		buf[off] = (byte) (v >>> 24);
+		buf[off + 1] = (byte) (v >>> 16);
+		buf[off + 2] = (byte) (v >>> 8);
+		buf[off + 3] = (byte) v;
+	}
+
+	private static UUID readUUID (DataInputStream in) throws IOException {
+		byte[] data = new byte[16];
+		in.readFully(data);
+		return new UUID(data);
+	}
+
+	private static int commonPrefix (String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < n && a.charAt(i) == b.charAt(i)) i++;
+		return i;
+	}
+
+	private static int commonSuffix (String a, String b, int prefix) {
+		int n = Math.min(a.length(), b.length()) - prefix;
+		int i = 0;
+		while (i < n && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) i++;
+		return i;
+	}
+
+//  *********  RECOVERY  *********
+
+	/** Returns the journal files of terminated sessions which recorded the
+	 * given mirror identifier, in order of session and generation.
+	 *
+	 * @param identifier String mirror identifier
+	 * @return {@code List<File>}, may be empty
+	 */
+	private static List<File> getStaleJournals (String identifier) {
+		List<File> result = new ArrayList<>();
+		File[] files = getJournalDirectory().listFiles();
+		if (files == null) return result;
+
+		String prefix = identifier + "-";
+		for (File f : files) {
+			long[] parts = parseName(f.getName(), prefix);
+			if (parts != null && parts[0] != SESSION) {
+				result.add(f);
+			}
+		}
+		result.sort((a, b) -> {
+			long[] pa = parseName(a.getName(), prefix);
+			long[] pb = parseName(b.getName(), prefix);
+			return pa[0] != pb[0] ? Long.compare(pa[0], pb[0]) : Long.compare(pa[1], pb[1]);
+		});
+		return result;
+	}
+
+	/** Returns session and generation of a journal file name or null. */
+	private static long[] parseName (String name, String prefix) {
+		if (!name.startsWith(prefix) || !name.endsWith(FILE_SUFFIX)) return null;
+		String[] parts = name.substring(prefix.length(), name.length() - FILE_SUFFIX.length()).split("-");
+		if (parts.length != 2) return null;
+		try {
+			return new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/** Whether there are journal files of a terminated session for the given
+	 * mirror identifier.
+	 *
+	 * @param identifier String mirror identifier
+	 * @return boolean
+	 */
+	public static boolean hasStaleJournal (String identifier) {
+		return !getStaleJournals(identifier).isEmpty();
+	}
+
+	/** Deletes the journal files of terminated sessions for the given mirror
+	 * identifier. This is due when the mirrors they build upon are removed.
+	 *
+	 * @param identifier String mirror identifier
+	 */
+	public static void removeStaleJournals (String identifier) {
+		for (File f : getStaleJournals(identifier)) {
+			deleteFile(f);
+		}
+	}
+
+	/** Replays the journal of a terminated session which builds upon the
+	 * content of the given document on top of it and returns the resulting
+	 * document. The given document is typically read from a mirror file.
+	 * Of several matching journals the latest is replayed. Journals which
+	 * build upon other mirrors are ignored. If there is no matching journal,
+	 * the given document is returned.
+	 *
+	 * @param base {@code PadDocument} document read from its mirror
+	 * @return {@code PadDocument} recovered document
+	 */
+	public static PadDocument recover (PadDocument base) {
+		Objects.requireNonNull(base, "base is null");
+		List<File> files = getStaleJournals(base.getUUID().toHexString());
+		if (files.isEmpty()) return base;
+
+		// find the latest journal built upon the given base
+		byte[] fingerprint = fingerprint(base);
+		File journal = null;
+		JournalHeader header = null;
+		for (File f : files) {
+			try (InputStream fin = new FileInputStream(f)) {
+				JournalHeader h = new JournalHeader(new DataInputStream(fin));
+				if (Arrays.equals(h.base, fingerprint) && h.uuids.length == base.getArticleCount()) {
+					journal = f;
+					header = h;
+				}
+			} catch (IOException e) {
+				Log.log(8, "(MirrorJournal.recover) ignoring journal " + f.getName() + ": " + e);
+			}
+		}
+		if (journal == null) {
+			Log.log(5, "(MirrorJournal.recover) no journal matches the mirror of document "
+					+ base.getUUID().toHexString());
+			return base;
+		}
+
+		// restore the article UUIDs of the base to which the journal refers
+		try {
+			for (int i = 0; i < header.uuids.length; i++) {
+				base.getArticle(i).setUUID(header.uuids[i]);
+			}
+		} catch (RuntimeException e) {
+			Log.log(5, "(MirrorJournal.recover) unable to restore article identities: " + e);
+			return base;
+		}
+
+		Map<UUID, ArticleState> states = new HashMap<>();
+		List<UUID> order = null;
+		List<Integer> depths = null;
+		int frames = 0;
+		byte[] key = null;
+		try (InputStream fin = new FileInputStream(journal)) {
+			DataInputStream in = new DataInputStream(fin);
+			new JournalHeader(in);
+
+			while (true) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					if (length < 1 || length > MAX_FRAME_LENGTH)
+						throw new IOException("illegal frame length: " + length);
+					byte[] frame = new byte[length];
+					in.readFully(frame);
+					if (frame[0] == 1 && key == null) {
+						byte[] docKey = base.getPassphrase();
+						if (docKey == null)
+							throw new IOException("encrypted journal frame but no document key");
+						key = CryptoIO.deriveKey(docKey, header.salt, header.iterations);
+					}
+					payload = decodeFrame(frame, key);
+				} catch (EOFException e) {
+					break;
+				}
+				DataInputStream rin = new DataInputStream(new ByteArrayInputStream(payload));
+				int type;
+				while ((type = rin.read()) != -1) {
+					UUID uuid;
+					switch (type) {
+					case ARTICLE_RECORD:
+						uuid = readUUID(rin);
+						String title = CryptoIO.readText(rin);
+						states.put(uuid, new ArticleState(title, CryptoIO.readText(rin)));
+						break;
+					case DELTA_RECORD:
+						uuid = readUUID(rin);
+						title = CryptoIO.readText(rin);
+						int prefix = rin.readInt();
+						int suffix = rin.readInt();
+						String insert = CryptoIO.readText(rin);
+						ArticleState old = states.get(uuid);
+						if (old == null) {
+							PadArticle a = base.getArticle(uuid);
+							if (a == null) throw new IOException("delta for unknown article: " + uuid);
+							old = new ArticleState(a.getTitle(), a.getContent());
+						}
+						String text = old.text.substring(0, prefix) + insert
+								+ old.text.substring(old.text.length() - suffix);
+						states.put(uuid, new ArticleState(title, text));
+						break;
+					case ORDER_RECORD:
+						int count = rin.readInt();
+						order = new ArrayList<>(count);
+						depths = new ArrayList<>(count);
+						for (int i = 0; i < count; i++) {
+							order.add(readUUID(rin));
+							depths.add(rin.readInt());
+						}
+						break;
+					default: throw new IOException("unknown journal record: " + type);
+					}
+				}
+				frames++;
+			}
+		} catch (IOException | RuntimeException e) {
+			// a damaged or incomplete frame ends the replay
+			Log.log(5, "(MirrorJournal.recover) journal replay stopped at " + journal.getName() + ": " + e);
+		} finally {
+			if (key != null) {
+				Arrays.fill(key, (byte) 0);
+			}
+		}
+		if (frames == 0) return base;
+
+		PadDocument doc = null;
+		if (order != null) {
+			try {
+				doc = rebuild(base, states, order, depths);
+			} catch (RuntimeException e) {
+				Log.log(5, "(MirrorJournal.recover) unable to rebuild article order: " + e);
+			}
+		}
+		if (doc == null) {
+			// apply article states to the base document
+			for (Map.Entry<UUID, ArticleState> e : states.entrySet()) {
+				PadArticle a = base.getArticle(e.getKey());
+				if (a != null) {
+					e.getValue().applyTo(a);
+				}
+			}
+			doc = base;
+		}
+		Log.log(3, "(MirrorJournal.recover) replayed " + frames + " journal frames for document "
+				+ base.getUUID().toHexString());
+		return doc;
+	}
+
+	/** Builds a new document in the given article order from journaled
+	 * article states and the articles of the base document. Returns null if
+	 * the order cannot be realised.
+	 */
+	private static PadDocument rebuild (PadDocument base, Map<UUID, ArticleState> states,
+			List<UUID> order, List<Integer> depths) {
+		PadDocument doc = new DefaultPadDocument(DocumentType.TreePad, base.getUUID());
+		doc.setEncoding(base.getEncoding());
+		List<PadArticle> stack = new ArrayList<>();
+		PadArticle[] articles = new PadArticle[order.size()];
+		for (int i = 0; i < order.size(); i++) {
+			UUID uuid = order.get(i);
+			int depth = depths.get(i);
+			if (depth < 0 || depth > stack.size() || (depth == 0 && i > 0)) return null;
+			ArticleState state = states.get(uuid);
+			PadArticle old = base.getArticle(uuid);
+			if (state == null && old == null) return null;
+
+			while (stack.size() > depth) {
+				stack.remove(stack.size() - 1);
+			}
+			PadArticle parent = depth == 0 ? null : stack.get(depth - 1);
+			PadArticle article = doc.createArticle(parent);
+			article.setUUID(uuid);
+			if (old != null) {
+				article.setTitle(old.getTitle());
+				article.setContent(old.getContent());
+				String serial = old.getPropertySerial();
+				if (serial != null) {
+					article.putPropertySerial(serial);
+				}
+			}
+			if (state != null) {
+				state.applyTo(article);
+			}
+			stack.add(article);
+			articles[i] = article;
+		}
+		try {
+			doc.appendArticles(articles);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		doc.setEncrypted(base.getPassphrase());
+		return doc;
+	}
+
+	/** Decodes a journal frame.
+	 *
+	 * @param frame byte[] frame data
+	 * @param key byte[] derived frame key, may be null for CRC frames
+	 */
+	private static byte[] decodeFrame (byte[] frame, byte[] key) throws IOException {
+		int length = frame.length;
+		if (frame[0] == 1) {
+			byte[] nonce = Arrays.copyOfRange(frame, 1, 1 + CryptoIO.NONCE_LENGTH);
+			return CryptoIO.crypt(Cipher.DECRYPT_MODE, key, nonce, Arrays.copyOfRange(frame, 1 + CryptoIO.NONCE_LENGTH, length));
+		}
+		byte[] payload = Arrays.copyOfRange(frame, 5, length);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		int value = (frame[1] & 0xff) << 24 | (frame[2] & 0xff) << 16 | (frame[3] & 0xff) << 8 | (frame[4] & 0xff);
+		if (value != (int) crc.getValue())
+			throw new IOException("journal frame CRC error");
+		return payload;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** The header of a journal file. */
+	private static class JournalHeader {
+		private byte[] salt = new byte[SALT_LENGTH];
+		private int iterations;
+		private byte[] base = new byte[FINGERPRINT_LENGTH];
+		private UUID[] uuids;
+
+		/** Reads the header from the start of a journal file.
+		 *
+		 * @throws IOException if the file is not a journal of this format
+		 */
+		JournalHeader (DataInputStream in) throws IOException {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("not a journal file of this format");
+			in.readFully(salt);
+			iterations = in.readInt();
+			if (iterations < 1)
+				throw new IOException("illegal key iterations: " + iterations);
+			in.readFully(base);
+			int count = in.readInt();
+			if (count < 0 || count > MAX_FRAME_LENGTH / 16)
+				throw new IOException("illegal article count: " + count);
+			uuids = new UUID[count];
+			for (int i = 0; i < count; i++) {
+				uuids[i] = readUUID(in);
+			}
+		}
+	}
+
+	/** Title and text of an article as recorded in the journal. */
+	private static class ArticleState {
+		private String title;
+		private String text;
+
+		ArticleState (String title, String text) {
+			this.title = title == null ? "" : title;
+			this.text = text == null ? "" : text;
+		}
+
+		void applyTo (PadArticle article) {
+			if (!title.equals(article.getTitle())) {
+				article.setTitle(title);
+			}
+			if (!text.equals(article.getContent())) {
+				article.setContent(text);
+			}
+		}
+
+		@Override
+		public boolean equals (Object obj) {
+			if (!(obj instanceof ArticleState)) return false;
+			ArticleState s = (ArticleState) obj;
+			return title.equals(s.title) && text.equals(s.text);
+		}
+
+		@Override
+		public int hashCode () {
+			return title.hashCode() ^ text.hashCode();
+		}
+	}
+
+	/** Collects the articles modified in the document. */
+	private class DocumentListener implements PropertyChangeListener {
+
+		@Override
+		public void propertyChange (PropertyChangeEvent evt) {
+			String key = evt.getPropertyName();
+			if (key == "articleAdded" || key == "articleModified" || key == "articleTitleChanged"
+				|| key == "articleUuidChanged") {
+				PadArticle article = (PadArticle) evt.getNewValue();
+				synchronized (dirty) {
+					dirty.add(article.getUUID());
+				}
+			} else if (key == "encryptionChanged") {
+				// frames must be readable with the key of the base mirror
+				keyChanged = true;
+			}
+		}
+	}
+}
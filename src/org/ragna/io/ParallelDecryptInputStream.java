@@ -0,0 +1,409 @@
+/*
+*  File: ParallelDecryptInputStream.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jpws.pwslib.crypto.PwsCipher;
+import org.jpws.pwslib.crypto.TwofishCipher;
+
+import kse.com.fhash.main.FHL_FileInfo;
+import kse.utilclass.misc.Log;
+
+/** An input stream of the cleartext content of an encrypted document file
+ * which decrypts the file's cipher blocks in parallel.
+ *
+ * <p>The file is a PWS3 container (Twofish in CBC mode) holding the FHL data
+ * header in its header fields, followed by the content blocks. In CBC mode
+ * each cleartext block depends only on its own and the preceding cipher
+ * block; the content is therefore split into segments which are decrypted
+ * on a thread pool, each segment using the last cipher block of its
+ * predecessor as initialisation vector. Segments are delivered in file
+ * order. The HMAC of the container is calculated over the delivered data
+ * and verified before the final segment is released to the reader.
+ *
+ * <p>Instances are obtained with {@code open()}, which returns null for
+ * files of a different layout, so that the caller can use the sequential
+ * {@code CipherInputFile}.
+ */
+public class ParallelDecryptInputStream extends InputStream {
+
+	/** Size of a segment of cipher data decrypted by one task. */
+	public static final int SEGMENT_SIZE = 1024 * 1024;
+
+	private static final int BLOCK_SIZE = 16;
+	/** Offset of the encrypted key blocks B1..B4 in the file. */
+	private static final int KEY_BLOCKS_OFFSET = CipherFileHeader.HEADER_LENGTH;
+	/** Offset of the cipher data (after B1..B4 and IV) in the file. */
+	private static final int DATA_OFFSET = KEY_BLOCKS_OFFSET + 4 * BLOCK_SIZE + BLOCK_SIZE;
+	/** Length of the file trailer (EOF marker and HMAC). */
+	private static final int TRAILER_LENGTH = BLOCK_SIZE + 32;
+	/** Maximum length of cipher data searched for the header fields. */
+	private static final int MAX_HEADER_LENGTH = 256 * 1024;
+	private static final byte[] EOF_MARKER = "PWS3-EOFPWS3-EOF".getBytes();
+	private static final int END_OF_HEADER_FIELD = 0xff;
+	private static final int FHL_HEADER_FIELD = 21;
+
+	private static ExecutorService executor;
+
+	private FileChannel channel;
+	private byte[] dataKey;
+	private Mac mac;
+	private byte[] hmac;
+	private Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private long nextSegment;
+	private long contentEnd;
+	private long remaining;
+	private int maxPending;
+	private byte[] segment;
+	private int pos;
+	private boolean closed;
+
+	/** Opens a parallel decrypting stream on the content of the given file.
+	 * Returns null if the key material cannot be confirmed by the cipher
+	 * header or the file is not of the supported container layout. On success
+	 * the given file info receives the data header of the file.
+	 *
+	 * @param file File encrypted document file
+	 * @param header {@code CipherFileHeader} cipher header of the file
+	 * @param key byte[] machine-near passphrase
+	 * @param info {@code FHL_FileInfo} receives the file information
+	 * @return {@code ParallelDecryptInputStream} or null
+	 * @throws IOException
+	 */
+	public static ParallelDecryptInputStream open (File file, CipherFileHeader header, byte[] key,
+			FHL_FileInfo info) throws IOException {
+		Objects.requireNonNull(file, "file is null");
+		Objects.requireNonNull(header, "header is null");
+		Objects.requireNonNull(key, "key is null");
+		Objects.requireNonNull(info, "info is null");
+
+		byte[] stretched = header.stretchKey(key);
+		if (stretched == null) return null;
+
+		ParallelDecryptInputStream stream = new ParallelDecryptInputStream();
+		boolean ok = false;
+		try {
+			ok = stream.init(file, stretched, info);
+			if (ok) {
+				header.setFileInfo(info);
+			}
+			return ok ? stream : null;
+		} finally {
+			Arrays.fill(stretched, (byte) 0);
+			if (!ok) {
+				stream.close();
+			}
+		}
+	}
+
+	private ParallelDecryptInputStream () {
+		maxPending = getThreadCount() * 2;
+	}
+
+	/** Returns the number of decryption threads available.
+	 *
+	 * @return int
+	 */
+	public static int getThreadCount () {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static synchronized ExecutorService getExecutor () {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory() {
+				private int counter;
+
+				@Override
+				public Thread newThread (Runnable r) {
+					Thread t = new Thread(r, "Ragna-Decrypt-" + ++counter);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/** Reads the container keys and header fields and prepares decryption
+	 * of the content.
+	 *
+	 * @return boolean false if the file layout is not supported
+	 */
+	private boolean init (File file, byte[] stretched, FHL_FileInfo info) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		long length = channel.size();
+		if (length < DATA_OFFSET + BLOCK_SIZE + TRAILER_LENGTH
+			|| (length - DATA_OFFSET - TRAILER_LENGTH) % BLOCK_SIZE != 0) {
+			return false;
+		}
+
+		// obtain data key K and HMAC key L from B1..B4
+		byte[] keyBlocks = read(KEY_BLOCKS_OFFSET, 4 * BLOCK_SIZE + BLOCK_SIZE);
+		PwsCipher ecb = new TwofishCipher(stretched);
+		dataKey = ecb.decrypt(keyBlocks, 0, 2 * BLOCK_SIZE);
+		byte[] macKey = ecb.decrypt(keyBlocks, 2 * BLOCK_SIZE, 2 * BLOCK_SIZE);
+		byte[] iv = Arrays.copyOfRange(keyBlocks, 4 * BLOCK_SIZE, keyBlocks.length);
+		try {
+			mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+		} catch (GeneralSecurityException e) {
+			throw new IOException("HMAC not available", e);
+		} finally {
+			Arrays.fill(macKey, (byte) 0);
+		}
+
+		// verify the trailer
+		contentEnd = length - TRAILER_LENGTH;
+		byte[] trailer = read(contentEnd, TRAILER_LENGTH);
+		if (!Arrays.equals(Arrays.copyOf(trailer, BLOCK_SIZE), EOF_MARKER)) {
+			return false;
+		}
+		hmac = Arrays.copyOfRange(trailer, BLOCK_SIZE, TRAILER_LENGTH);
+
+		// decrypt the header fields sequentially
+		int len = (int) Math.min(MAX_HEADER_LENGTH, contentEnd - DATA_OFFSET);
+		byte[] cipher = read(DATA_OFFSET, len);
+		byte[] plain = decryptSegment(dataKey, iv, cipher);
+		byte[] dataHeader = null;
+		int hpos = 0;
+		while (true) {
+			if (hpos + 5 > plain.length) return false;
+			int flen = (plain[hpos] & 0xff) | (plain[hpos + 1] & 0xff) << 8
+					| (plain[hpos + 2] & 0xff) << 16 | (plain[hpos + 3] & 0xff) << 24;
+			int type = plain[hpos + 4] & 0xff;
+			int blocks = Math.max(1, (5 + flen + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			if (flen < 0 || hpos + blocks * BLOCK_SIZE > plain.length) return false;
+			mac.update(plain, hpos + 5, flen);
+			if (type == FHL_HEADER_FIELD) {
+				dataHeader = Arrays.copyOfRange(plain, hpos + 5, hpos + 5 + flen);
+			}
+			hpos += blocks * BLOCK_SIZE;
+			if (type == END_OF_HEADER_FIELD) break;
+		}
+		if (dataHeader == null || !readDataHeader(dataHeader, info)) {
+			return false;
+		}
+
+		// content starts after the header fields; the cleartext length limits
+		// uncompressed content only, compressed content (which is shorter or
+		// longer) is delivered with its padding up to the trailer
+		nextSegment = DATA_OFFSET + hpos;
+		if (info.compression == CompressionCodecs.NONE) {
+			remaining = info.fileLength;
+			if (remaining < 0 || remaining > contentEnd - nextSegment) {
+				return false;
+			}
+		} else {
+			remaining = contentEnd - nextSegment;
+		}
+		Log.log(8, "(ParallelDecryptInputStream.init) opened parallel decryption, content = "
+				+ (contentEnd - nextSegment) + ", threads = " + getThreadCount() + ", file = " + file);
+		return true;
+	}
+
+	/** Reads the FHL data header into the given file info.
+	 *
+	 * @return boolean false if the header version is not supported
+	 */
+	private static boolean readDataHeader (byte[] data, FHL_FileInfo info) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		byte[] magic = new byte[6];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, "FHL000".getBytes()) || in.readShort() != 2) {
+			return false;
+		}
+		info.storeTime = in.readLong();
+		info.fileTime = in.readLong();
+		info.compression = in.readShort();
+		info.fileCrc = in.readInt();
+		info.fileLength = in.readLong();
+		info.fileName = in.readUTF();
+		info.comment = in.readUTF();
+		return true;
+	}
+
+	/** Reads a section of the file. */
+	private byte[] read (long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1)
+				throw new IOException("unexpected end of file");
+		}
+		return buffer.array();
+	}
+
+	/** Decrypts a section of CBC cipher data with the given initialisation
+	 * vector (the preceding cipher block).
+	 *
+	 * @param key byte[] data key
+	 * @param iv byte[] preceding cipher block
+	 * @param cipher byte[] cipher data, multiple of the block size
+	 * @return byte[] cleartext
+	 */
+	private static byte[] decryptSegment (byte[] key, byte[] iv, byte[] cipher) {
+		byte[] plain = new TwofishCipher(key).decrypt(cipher, 0, cipher.length);
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			plain[i] ^= iv[i];
+		}
+		for (int i = BLOCK_SIZE; i < plain.length; i++) {
+			plain[i] ^= cipher[i - BLOCK_SIZE];
+		}
+		return plain;
+	}
+
+	/** Submits decryption tasks up to the maximum of pending segments. */
+	private void submitSegments () {
+		while (pending.size() < maxPending && nextSegment < contentEnd) {
+			long start = nextSegment;
+			int len = (int) Math.min(SEGMENT_SIZE, contentEnd - start);
+			nextSegment += len;
+			pending.add(getExecutor().submit(new SegmentDecryptor(start, len)));
+		}
+	}
+
+	/** Makes the next decrypted segment current. The HMAC is verified before
+	 * the last segment is made available.
+	 *
+	 * @return boolean false if the end of data is reached
+	 */
+	private boolean nextSegment () throws IOException {
+		if (remaining == 0) return false;
+		submitSegments();
+		if (pending.isEmpty()) return false;
+		byte[] data;
+		try {
+			data = pending.removeFirst().get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while decrypting");
+		} catch (ExecutionException e) {
+			throw new IOException("segment decryption failed", e.getCause());
+		}
+
+		mac.update(data);
+		if (pending.isEmpty() && nextSegment >= contentEnd) {
+			if (!MessageDigest.isEqual(mac.doFinal(), hmac))
+				throw new IOException("HMAC verification failed, file data is corrupted");
+		}
+
+		int len = (int) Math.min(data.length, remaining);
+		segment = len == data.length ? data : Arrays.copyOf(data, len);
+		remaining -= len;
+		pos = 0;
+		submitSegments();
+		return true;
+	}
+
+	@Override
+	public int read () throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		while (segment == null || pos == segment.length) {
+			if (!nextSegment()) return -1;
+		}
+		return segment[pos++] & 0xff;
+	}
+
+	@Override
+	public int read (byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		if (len == 0) return 0;
+		while (segment == null || pos == segment.length) {
+			if (!nextSegment()) return -1;
+		}
+		int n = Math.min(len, segment.length - pos);
+		System.arraycopy(segment, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available () throws IOException {
+		return segment == null ? 0 : segment.length - pos;
+	}
+
+	@Override
+	public void close () throws IOException {
+		if (closed) return;
+		closed = true;
+		for (Future<byte[]> f : pending) {
+			f.cancel(true);
+		}
+		pending.clear();
+		if (dataKey != null) {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** Decrypts one segment of content; the cipher block preceding the
+	 * segment is read as its initialisation vector.
+	 */
+	private class SegmentDecryptor implements Callable<byte[]> {
+		private long start;
+		private int length;
+
+		SegmentDecryptor (long start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public byte[] call () throws Exception {
+			// positional read, no mapping which would block a later replace of the file
+			byte[] data = read(start - BLOCK_SIZE, length + BLOCK_SIZE);
+			byte[] iv = Arrays.copyOf(data, BLOCK_SIZE);
+			byte[] cipher = Arrays.copyOfRange(data, BLOCK_SIZE, data.length);
+			return decryptSegment(dataKey, iv, cipher);
+		}
+	}
+}
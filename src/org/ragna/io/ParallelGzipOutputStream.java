@@ -0,0 +1,272 @@
+/*
+*  File: ParallelGzipOutputStream.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/** A GZIP output stream which compresses its data in parallel, following
+ * the scheme of <i>pigz</i>. Input is cut into blocks of fixed size which
+ * are deflated independently on a thread pool. Each block is primed with
+ * the last 32 KB of its predecessor as preset dictionary, so the compression
+ * ratio is close to that of a single stream. Blocks end with a sync-flush
+ * on a byte boundary and are concatenated in their original order into a
+ * single standard GZIP member, readable by {@code GZIPInputStream}.
+ *
+ * <p>The number of blocks in progress is limited, so memory use is bounded
+ * independently of the data size. Closing this stream closes the target.
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+
+	/** Size of an input block for compression. */
+	public static final int BLOCK_SIZE = 128 * 1024;
+	/** Size of the preset dictionary taken from the preceding block. */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private static ExecutorService executor;
+
+	private Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private CRC32 crc = new CRC32();
+	private byte[] block = new byte[BLOCK_SIZE];
+	private byte[] dictionary;
+	private int fill;
+	private long totalSize;
+	private int level;
+	private int maxPending;
+	private boolean closed;
+
+	/** Creates a new parallel GZIP output stream with default compression
+	 * level.
+	 *
+	 * @param out OutputStream target stream
+	 * @throws IOException
+	 */
+	public ParallelGzipOutputStream (OutputStream out) throws IOException {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/** Creates a new parallel GZIP output stream with the given compression
+	 * level.
+	 *
+	 * @param out OutputStream target stream
+	 * @param level int deflater compression level (-1..9)
+	 * @throws IOException
+	 */
+	public ParallelGzipOutputStream (OutputStream out, int level) throws IOException {
+		super(out);
+		if (level < -1 || level > 9)
+			throw new IllegalArgumentException("illegal compression level: " + level);
+		this.level = level;
+		maxPending = getThreadCount() * 2;
+		writeHeader();
+	}
+
+	/** Returns the number of compression threads available.
+	 *
+	 * @return int
+	 */
+	public static int getThreadCount () {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static synchronized ExecutorService getExecutor () {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory() {
+				private int counter;
+
+				@Override
+				public Thread newThread (Runnable r) {
+					Thread t = new Thread(r, "Ragna-Compression-" + ++counter);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private void writeHeader () throws IOException {
+		// magic, method deflate, no flags, no time, no extra flags, OS unknown
+		out.write(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+	}
+
+	private void writeTrailer () throws IOException {
+		writeIntLE((int) crc.getValue());
+		writeIntLE((int) totalSize);
+	}
+
+	private void writeIntLE (int v) throws IOException {
+		out.write(v & 0xff);
+		out.write((v >>> 8) & 0xff);
+		out.write((v >>> 16) & 0xff);
+		out.write((v >>> 24) & 0xff);
+	}
+
+	@Override
+	public void write (int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write (byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		crc.update(b, off, len);
+		totalSize += len;
+		while (len > 0) {
+			int n = Math.min(len, block.length - fill);
+			System.arraycopy(b, off, block, fill, n);
+			fill += n;
+			off += n;
+			len -= n;
+			if (fill == block.length) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/** Hands the current input block to the thread pool and writes finished
+	 * blocks in their order while the number of blocks in progress is at
+	 * maximum.
+	 *
+	 * @param last boolean whether this is the final block of the stream
+	 */
+	private void submitBlock (boolean last) throws IOException {
+		byte[] data = Arrays.copyOf(block, fill);
+		byte[] dict = dictionary;
+		if (fill >= DICTIONARY_SIZE) {
+			dictionary = Arrays.copyOfRange(block, fill - DICTIONARY_SIZE, fill);
+		}
+		fill = 0;
+
+		pending.add(getExecutor().submit(new BlockCompressor(data, dict, level, last)));
+		while (pending.size() >= maxPending) {
+			writeNextBlock();
+		}
+	}
+
+	private void writeNextBlock () throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("block compression failed", e.getCause());
+		}
+	}
+
+	/** Writes all finished blocks to the target stream. The stream remains
+	 * open; data of an incomplete block is not flushed.
+	 */
+	@Override
+	public void flush () throws IOException {
+		while (!pending.isEmpty()) {
+			writeNextBlock();
+		}
+		out.flush();
+	}
+
+	/** Compresses the remaining data, writes the GZIP trailer and closes
+	 * the target stream.
+	 */
+	@Override
+	public void close () throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			submitBlock(true);
+			while (!pending.isEmpty()) {
+				writeNextBlock();
+			}
+			writeTrailer();
+		} finally {
+			for (Future<byte[]> f : pending) {
+				f.cancel(true);
+			}
+			pending.clear();
+			out.close();
+		}
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** Deflates a single block of data into raw deflate format. */
+	private static class BlockCompressor implements Callable<byte[]> {
+		private byte[] data;
+		private byte[] dictionary;
+		private int level;
+		private boolean last;
+
+		BlockCompressor (byte[] data, byte[] dictionary, int level, boolean last) {
+			this.data = data;
+			this.dictionary = dictionary;
+			this.level = level;
+			this.last = last;
+		}
+
+		@Override
+		public byte[] call () throws Exception {
+			Deflater deflater = new Deflater(level, true);
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(data.length / 2 + 64);
+			byte[] buf = new byte[16 * 1024];
+			try {
+				if (dictionary != null) {
+					deflater.setDictionary(dictionary);
+				}
+				deflater.setInput(data);
+				if (last) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						int n = deflater.deflate(buf);
+						bout.write(buf, 0, n);
+					}
+				} else {
+					// sync-flush ends the block on a byte boundary
+					int n;
+					do {
+						n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+						bout.write(buf, 0, n);
+					} while (n == buf.length || !deflater.needsInput());
+				}
+			} finally {
+				deflater.end();
+			}
+			return bout.toByteArray();
+		}
+	}
+}
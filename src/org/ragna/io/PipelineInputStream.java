@@ -0,0 +1,199 @@
+/*
+*  File: PipelineInputStream.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import kse.utilclass.misc.Log;
+
+/** An input stream which reads its source stream on a separate thread.
+ * The stage thread fills data chunks into a bounded queue from which the
+ * consumer reads. Chaining several of these streams makes the processing
+ * steps of a stream pipeline (e.g. decryption, decompression, parsing)
+ * run concurrently, while the queue capacity limits memory use.
+ *
+ * <p>Errors of the source stream are passed on to the consumer at the
+ * position where they occurred. Closing this stream stops the stage
+ * thread and closes the source stream.
+ */
+public class PipelineInputStream extends InputStream {
+
+	/** Size of a data chunk passed through the queue. */
+	public static final int CHUNK_SIZE = 64 * 1024;
+	/** Number of chunks the queue can hold. */
+	public static final int QUEUE_CAPACITY = 8;
+
+	private static final byte[] END_MARKER = new byte[0];
+
+	private InputStream source;
+	private BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private Thread stage;
+	private volatile IOException error;
+	private volatile boolean closed;
+	private byte[] chunk;
+	private int pos;
+	private boolean eof;
+
+	/** Creates a new pipeline stream on the given source and starts its
+	 * stage thread.
+	 *
+	 * @param source InputStream data source, read by the stage thread
+	 * @param name String name of the stage (for thread naming)
+	 */
+	public PipelineInputStream (InputStream source, String name) {
+		Objects.requireNonNull(source, "source is null");
+		this.source = source;
+		stage = new Thread(new StageReader(), "Ragna-Pipeline-" + name);
+		stage.setDaemon(true);
+		stage.start();
+	}
+
+	/** Returns the next data chunk or null if the end of data is reached. */
+	private byte[] nextChunk () throws IOException {
+		if (eof) return null;
+		if (chunk != null && pos < chunk.length) return chunk;
+		try {
+			chunk = queue.take();
+			pos = 0;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while waiting for pipeline data");
+		}
+		if (chunk == END_MARKER) {
+			eof = true;
+			chunk = null;
+			if (error != null) {
+				throw new IOException("pipeline stage failed: " + error, error);
+			}
+			return null;
+		}
+		return chunk;
+	}
+
+	@Override
+	public int read () throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		byte[] c = nextChunk();
+		return c == null ? -1 : c[pos++] & 0xff;
+	}
+
+	@Override
+	public int read (byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		if (len == 0) return 0;
+		byte[] c = nextChunk();
+		if (c == null) return -1;
+		int n = Math.min(len, c.length - pos);
+		System.arraycopy(c, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available () throws IOException {
+		return chunk == null ? 0 : chunk.length - pos;
+	}
+
+	@Override
+	public void close () throws IOException {
+		if (closed) return;
+		closed = true;
+		stage.interrupt();
+		queue.clear();
+		try {
+			stage.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** Reads the source stream into the queue until end of data, error or
+	 * closure of the pipeline stream.
+	 */
+	private class StageReader implements Runnable {
+
+		@Override
+		public void run () {
+			try {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				while (!closed) {
+					// fill a chunk as far as possible
+					int fill = 0, n = 0;
+					while (fill < buffer.length && (n = source.read(buffer, fill, buffer.length - fill)) > -1) {
+						fill += n;
+					}
+					if (fill > 0) {
+						queue.put(fill == buffer.length ? buffer.clone() : Arrays.copyOf(buffer, fill));
+					}
+					if (n == -1) break;
+				}
+			} catch (IOException e) {
+				if (!closed) {
+					Log.log(5, "(PipelineInputStream.StageReader) source stream error in "
+							+ Thread.currentThread().getName() + ": " + e);
+					error = e;
+				}
+			} catch (InterruptedException e) {
+				if (!closed) {
+					error = new InterruptedIOException("pipeline stage interrupted");
+				}
+			} catch (Throwable e) {
+				Log.log(1, "(PipelineInputStream.StageReader) stage failure in "
+						+ Thread.currentThread().getName() + ": " + e);
+				error = new IOException(e);
+			} finally {
+				signalEnd();
+			}
+		}
+
+		/** Puts the end marker into the queue, unless the stream is closed,
+		 * so that a waiting reader always terminates. An interrupt does not
+		 * stop this but is restored afterwards.
+		 */
+		private void signalEnd () {
+			boolean interrupted = false;
+			while (!closed) {
+				try {
+					queue.put(END_MARKER);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,408 @@
+/*
+*  File: SessionSnapshot.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+package org.ragna.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+
+import org.ragna.core.DefaultPadDocument;
+import org.ragna.core.PadArticle;
+import org.ragna.core.PadDocument;
+import org.ragna.core.PadDocument.DocumentType;
+
+import kse.utilclass.misc.Log;
+import kse.utilclass.misc.UUID;
+
+/** A binary image of the documents of a program session which allows to
+ * restore the session without reading and parsing the document files.
+ *
+ * <p>The snapshot is written when the session ends and holds, for each
+ * document, its structure, contents, article properties, selection and
+ * tree expansion state, together with length, modification time and a
+ * SHA-256 digest of the document file. On startup the snapshot is read
+ * into memory and a document is restored from it only if its file is
+ * unchanged; otherwise the document has to be opened in the normal way.
+ * Images of encrypted documents are encrypted with a key derived from the
+ * document's key by PBKDF2.
+ */
+public class SessionSnapshot {
+
+	/** Name of the snapshot file in the application directory. */
+	public static final String FILE_NAME = "session.snap";
+
+	private static final byte[] MAGIC = "RSNS3".getBytes(StandardCharsets.US_ASCII);
+	private static final int SALT_LENGTH = 16;
+	private static final int MAX_HEADER_LENGTH = 1024 * 1024;
+
+	private static SecureRandom random = new SecureRandom();
+
+	private final File file;
+	private final ByteBuffer data;
+	private final byte[] salt;
+	private final int iterations;
+	private final Map<String, Entry> entries;
+
+	private SessionSnapshot (File file, ByteBuffer data, byte[] salt, int iterations, 
+			Map<String, Entry> entries) {
+		this.file = file;
+		this.data = data;
+		this.salt = salt;
+		this.iterations = iterations;
+		this.entries = entries;
+	}
+
+	/** Writes a snapshot of the given documents to the given file. Documents
+	 * without an existing external file are ignored. The file is replaced
+	 * when the snapshot is complete.
+	 *
+	 * @param target File snapshot file
+	 * @param documents {@code List<PadDocument>}
+	 * @return int number of documents written
+	 * @throws IOException
+	 */
+	public static int write (File target, List<PadDocument> documents) throws IOException {
+		Objects.requireNonNull(target, "target is null");
+		long start = System.currentTimeMillis();
+		byte[] salt = new byte[SALT_LENGTH];
+		random.nextBytes(salt);
+
+		ByteArrayOutputStream hout = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(hout);
+		List<byte[]> blobs = new ArrayList<>();
+		long offset = 0;
+
+		for (PadDocument doc : documents) {
+			String path = doc.getExternalPath();
+			if (path == null) continue;
+			File file = new File(path);
+			if (!file.isFile()) continue;
+
+			byte[] key = doc.isEncrypted() ? doc.getPassphrase() : null;
+			byte[] nonce = null;
+			byte[] blob = encodeDocument(doc);
+			if (key != null) {
+				nonce = new byte[CryptoIO.NONCE_LENGTH];
+				random.nextBytes(nonce);
+				byte[] k = CryptoIO.deriveKey(key, salt, CryptoIO.KDF_ITERATIONS);
+				try {
+					blob = CryptoIO.crypt(Cipher.ENCRYPT_MODE, k, nonce, blob);
+				} finally {
+					Arrays.fill(k, (byte) 0);
+					Arrays.fill(key, (byte) 0);
+				}
+			}
+
+			CryptoIO.writeText(header, file.getAbsolutePath());
+			header.writeLong(file.length());
+			header.writeLong(file.lastModified());
+			header.write(digest(file));
+			header.writeBoolean(nonce != null);
+			if (nonce != null) {
+				header.write(nonce);
+			}
+			header.writeLong(offset);
+			header.writeInt(blob.length);
+			blobs.add(blob);
+			offset += blob.length;
+		}
+
+		File temp = new File(target.getAbsolutePath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+			out.write(MAGIC);
+			out.write(salt);
+			out.writeInt(CryptoIO.KDF_ITERATIONS);
+			out.writeInt(blobs.size());
+			out.writeInt(hout.size());
+			hout.writeTo(out);
+			for (byte[] blob : blobs) {
+				out.write(blob);
+			}
+		}
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		Log.log(6, "(SessionSnapshot.write) wrote " + blobs.size() + " documents, size = "
+				+ target.length() + ", " + (System.currentTimeMillis() - start) + " ms");
+		return blobs.size();
+	}
+
+	/** Opens the given snapshot file by reading it into memory.
+	 *
+	 * @param file File snapshot file
+	 * @return {@code SessionSnapshot} or null if the file does not exist or
+	 *         is not a valid snapshot
+	 */
+	public static SessionSnapshot open (File file) {
+		if (!file.isFile()) return null;
+		try {
+			// read into the heap; a mapping would block the replacement of the file on exit
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) return null;
+			byte[] salt = new byte[SALT_LENGTH];
+			buffer.get(salt);
+			int iterations = buffer.getInt();
+			int count = buffer.getInt();
+			int length = buffer.getInt();
+			if (iterations < 1 || count < 0 || length < 0 || length > MAX_HEADER_LENGTH 
+					|| length > buffer.remaining())
+				return null;
+
+			byte[] hbuf = new byte[length];
+			buffer.get(hbuf);
+			DataInputStream header = new DataInputStream(new ByteArrayInputStream(hbuf));
+			Map<String, Entry> entries = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				Entry e = new Entry();
+				String path = CryptoIO.readText(header);
+				e.length = header.readLong();
+				e.time = header.readLong();
+				header.readFully(e.digest);
+				if (header.readBoolean()) {
+					e.nonce = new byte[CryptoIO.NONCE_LENGTH];
+					header.readFully(e.nonce);
+				}
+				e.offset = header.readLong();
+				e.size = header.readInt();
+				entries.put(path, e);
+			}
+
+			ByteBuffer data = buffer.slice();
+			for (Entry e : entries.values()) {
+				if (e.offset < 0 || e.size < 0 || e.offset + e.size > data.capacity()) return null;
+			}
+			Log.log(6, "(SessionSnapshot.open) opened session snapshot with " + count + " documents");
+			return new SessionSnapshot(file, data, salt, iterations, entries);
+
+		} catch (IOException | RuntimeException e) {
+			Log.log(3, "(SessionSnapshot.open) unable to read session snapshot " + file + ": " + e);
+			return null;
+		}
+	}
+
+	/** Returns the snapshot file.
+	 *
+	 * @return File
+	 */
+	public File getFile () {
+		return file;
+	}
+
+	/** Whether this snapshot contains an image of the given document file.
+	 * The validity of the image is not tested.
+	 *
+	 * @param file File document file
+	 * @return boolean
+	 */
+	public boolean contains (File file) {
+		return entries.containsKey(file.getAbsolutePath());
+	}
+
+	/** Restores the document of the given file from this snapshot. The
+	 * document is returned only if the file did not change since the
+	 * snapshot was written. The returned document is unmodified and its
+	 * file's metadata are placed in the {@code FileMetadataCache}.
+	 * This method is thread-safe.
+	 *
+	 * @param file File document file
+	 * @param key byte[] encryption key of the document, may be null
+	 * @return {@code PadDocument} or null if the file is not contained,
+	 *         has changed or the image cannot be decoded
+	 */
+	public PadDocument restore (File file, byte[] key) {
+		Entry e = entries.get(file.getAbsolutePath());
+		if (e == null) return null;
+		if ((e.nonce != null) != (key != null)) return null;
+
+		try {
+			if (file.length() != e.length || file.lastModified() != e.time
+					|| !MessageDigest.isEqual(digest(file), e.digest)) {
+				Log.log(6, "(SessionSnapshot.restore) file has changed: " + file);
+				return null;
+			}
+
+			byte[] blob = new byte[e.size];
+			ByteBuffer buf = data.duplicate();
+			buf.position((int) e.offset);
+			buf.get(blob);
+			if (key != null) {
+				byte[] k = CryptoIO.deriveKey(key, salt, iterations);
+				try {
+					blob = CryptoIO.crypt(Cipher.DECRYPT_MODE, k, e.nonce, blob);
+				} finally {
+					Arrays.fill(k, (byte) 0);
+				}
+			}
+
+			PadDocument doc = decodeDocument(blob);
+			if (doc == null) return null;
+			doc.setEncrypted(key);
+			doc.resetModified();
+			FileMetadataCache.get().putDocumentData(file, doc.getUUID(), doc.getEncoding());
+			Log.log(3, "(SessionSnapshot.restore) restored document " + doc.getUUID().toHexString()
+					+ ", path=" + file.getAbsolutePath());
+			return doc;
+
+		} catch (IOException | RuntimeException ex) {
+			Log.log(3, "(SessionSnapshot.restore) unable to restore " + file + ": " + ex);
+			return null;
+		}
+	}
+
+	/** Returns the serialisation of the given document in compressed form. */
+	private static byte[] encodeDocument (PadDocument doc) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bout))) {
+			CryptoIO.writeText(out, doc.getUUID().toHexString());
+			CryptoIO.writeText(out, doc.getDocType().name());
+			CryptoIO.writeText(out, nonNull(doc.getEncoding()));
+			CryptoIO.writeText(out, nonNull(doc.getTitle()));
+			CryptoIO.writeText(out, nonNull(doc.getShortTitle()));
+			CryptoIO.writeText(out, nonNull(doc.getOptions().getOption("tree-expansion-info")));
+			out.writeInt(doc.getSelectedIndex());
+			out.writeInt(doc.getArticleCount());
+			for (PadArticle article : doc) {
+				out.writeInt(article.getOrderDepth());
+				CryptoIO.writeText(out, nonNull(article.getTitle()));
+				CryptoIO.writeText(out, nonNull(article.getContent()));
+				CryptoIO.writeText(out, nonNull(article.getPropertySerial()));
+			}
+		}
+		return bout.toByteArray();
+	}
+
+	/** Creates a document from its compressed serialisation or returns null
+	 * if the article structure is invalid.
+	 */
+	private static PadDocument decodeDocument (byte[] blob) throws IOException {
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(blob)));
+		UUID uuid = new UUID(CryptoIO.readText(in));
+		DocumentType type = DocumentType.valueOf(CryptoIO.readText(in));
+		String encoding = CryptoIO.readText(in);
+		String title = CryptoIO.readText(in);
+		String shortTitle = CryptoIO.readText(in);
+		String expansion = CryptoIO.readText(in);
+		int selected = in.readInt();
+		int count = in.readInt();
+		if (count < 0) return null;
+
+		PadDocument doc = new DefaultPadDocument(type, uuid);
+		if (!encoding.isEmpty()) {
+			doc.setEncoding(encoding);
+		}
+		List<PadArticle> stack = new ArrayList<>();
+		PadArticle[] articles = new PadArticle[count];
+		for (int i = 0; i < count; i++) {
+			int depth = in.readInt();
+			if (depth < 0 || depth > stack.size() || (depth == 0 && i > 0)) return null;
+			while (stack.size() > depth) {
+				stack.remove(stack.size() - 1);
+			}
+			PadArticle parent = depth == 0 ? null : stack.get(depth - 1);
+			PadArticle article = doc.createArticle(parent);
+			article.setTitle(CryptoIO.readText(in));
+			article.setContent(CryptoIO.readText(in));
+			String serial = CryptoIO.readText(in);
+			if (!serial.isEmpty()) {
+				article.putPropertySerial(serial);
+			}
+			stack.add(article);
+			articles[i] = article;
+		}
+		try {
+			doc.appendArticles(articles);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		if (!title.isEmpty()) {
+			doc.setTitle(title);
+		}
+		if (!shortTitle.isEmpty()) {
+			doc.setShortTitle(shortTitle);
+		}
+		if (!expansion.isEmpty()) {
+			doc.getOptions().setOption("tree-expansion-info", expansion);
+		}
+		if (selected >= 0 && selected < count) {
+			doc.setSelectedIndex(selected);
+		}
+		return doc;
+	}
+
+	/** Returns the SHA-256 digest of the given file's content. */
+	private static byte[] digest (File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] buf = new byte[64 * 1024];
+			int len;
+			while ((len = in.read(buf)) > -1) {
+				md.update(buf, 0, len);
+			}
+			return md.digest();
+		} catch (GeneralSecurityException e) {
+			throw new IOException("digest failure: " + e, e);
+		}
+	}
+
+	private static String nonNull (String text) {
+		return text == null ? "" : text;
+	}
+
+//  *********  INNER CLASSES  *********
+
+	/** Header entry of a document image. */
+	private static class Entry {
+		long length;
+		long time;
+		byte[] digest = new byte[32];
+		byte[] nonce;
+		long offset;
+		int size;
+	}
+}
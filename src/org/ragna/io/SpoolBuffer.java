@@ -0,0 +1,194 @@
+/*
+*  File: SpoolBuffer.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+
+package org.ragna.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import kse.utilclass.misc.Log;
+
+/** An output stream which keeps the data written in memory up to a given
+ * limit and spools the rest into a temporary file. The data can be read
+ * back as often as required after the stream is closed.
+ *
+ * <p>The temporary file is encrypted with AES-CTR under a random key which
+ * exists only in this object, so that cleartext of encrypted documents does
+ * not reach the disk. The file is deleted by {@code dispose()}.
+ */
+final class SpoolBuffer extends OutputStream {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final long memoryLimit;
+	private List<byte[]> chunks = new ArrayList<>();
+	private byte[] chunk;
+	private int fill;
+	private long memoryLength;
+	private long length;
+
+	private File file;
+	private OutputStream fileOut;
+	private byte[] fileKey, fileIv;
+	private boolean closed;
+
+	/** Creates a new spool buffer.
+	 *
+	 * @param memoryLimit long number of bytes kept in memory
+	 */
+	SpoolBuffer (long memoryLimit) {
+		if (memoryLimit < 0)
+			throw new IllegalArgumentException("negative memory limit");
+		this.memoryLimit = memoryLimit;
+	}
+
+	@Override
+	public void write (int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write (byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		length += len;
+		while (len > 0 && memoryLength < memoryLimit) {
+			if (chunk == null || fill == chunk.length) {
+				chunk = new byte[(int) Math.min(CHUNK_SIZE, memoryLimit - memoryLength)];
+				chunks.add(chunk);
+				fill = 0;
+			}
+			int n = Math.min(len, chunk.length - fill);
+			System.arraycopy(b, off, chunk, fill, n);
+			fill += n;
+			memoryLength += n;
+			off += n;
+			len -= n;
+		}
+		if (len > 0) {
+			if (fileOut == null) {
+				openFile();
+			}
+			fileOut.write(b, off, len);
+		}
+	}
+
+	private void openFile () throws IOException {
+		fileKey = new byte[16];
+		fileIv = new byte[16];
+		RANDOM.nextBytes(fileKey);
+		RANDOM.nextBytes(fileIv);
+		file = File.createTempFile("ragna-spool-", ".tmp");
+		file.deleteOnExit();
+		fileOut = new CipherOutputStream(new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE),
+				fileCipher(Cipher.ENCRYPT_MODE));
+		Log.log(8, "(SpoolBuffer.openFile) spooling beyond " + memoryLimit + " bytes to " + file);
+	}
+
+	private Cipher fileCipher (int mode) throws IOException {
+		try {
+			Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+			cipher.init(mode, new SecretKeySpec(fileKey, "AES"), new IvParameterSpec(fileIv));
+			return cipher;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("spool cipher failure: " + e, e);
+		}
+	}
+
+	/** Returns the number of bytes written.
+	 *
+	 * @return long
+	 */
+	public long getLength () {return length;}
+
+	@Override
+	public void close () throws IOException {
+		if (closed) return;
+		closed = true;
+		if (fileOut != null) {
+			fileOut.close();
+		}
+	}
+
+	/** Returns a new input stream over all data written. The stream must be
+	 * closed before.
+	 *
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	public InputStream getInputStream () throws IOException {
+		if (!closed)
+			throw new IllegalStateException("stream not closed");
+		List<InputStream> list = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); i++) {
+			byte[] c = chunks.get(i);
+			int len = i == chunks.size() - 1 ? fill : c.length;
+			list.add(new ByteArrayInputStream(c, 0, len));
+		}
+		if (file != null) {
+			list.add(new CipherInputStream(new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE),
+					fileCipher(Cipher.DECRYPT_MODE)));
+		}
+		return new SequenceInputStream(Collections.enumeration(list));
+	}
+
+	/** Releases the memory and deletes the temporary file of this buffer. */
+	public void dispose () {
+		try {
+			close();
+		} catch (IOException e) {
+			Log.log(3, "(SpoolBuffer.dispose) closing spool file: " + e);
+		}
+		chunks.clear();
+		chunk = null;
+		if (file != null && !file.delete()) {
+			Log.log(3, "(SpoolBuffer.dispose) unable to delete spool file: " + file);
+		}
+		file = null;
+		if (fileKey != null) {
+			Arrays.fill(fileKey, (byte) 0);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+*  File: Test_ParallelDecrypt.java
+*
+*  Project Ragna Scribe
+*  @author Wolfgang Keller
+*  Created
+*
+*  Copyright (c) 2024 by Wolfgang Keller, Munich, Germany
+*
+This program is not public domain software but copyright protected to the
+author(s) stated above. However, you can use, redistribute and/or modify it
+under the terms of the The GNU General Public License (GPL) as published by
+the Free Software Foundation, version 2.0 of the License.
+
+This program is distributed in the hope that it will be useful, but WITHOUT
+ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the License along with this program; if not,
+write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA, or go to http://www.gnu.org/copyleft/gpl.html.
+*/
+
+
+package org.ragna.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import kse.com.fhash.main.FHL_FileInfo;
+
+/**
+ *  Test_ParallelDecrypt in org.ragna.io
+ *  
+ *  <p>Writes encrypted files of compressible and incompressible content
+ *  with each compression codec and reads them back through the parallel
+ *  decryption path.
+ */
+public class Test_ParallelDecrypt {
+
+	private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes();
+
+	private int failures;
+
+	private void test_files () throws IOException {
+		// compressible text and random (incompressible) data over several segments
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 3 * ParallelDecryptInputStream.SEGMENT_SIZE + 777; i++) {
+			sb.append("Article ").append(i).append(" of a compressible document text.\n");
+		}
+		byte[] text = sb.toString().getBytes("UTF-8");
+		byte[] random = new byte[3 * ParallelDecryptInputStream.SEGMENT_SIZE + 333];
+		new Random(42).nextBytes(random);
+
+		for (int codec : new int[] {CompressionCodecs.NONE, CompressionCodecs.DEFLATE, CompressionCodecs.LZ}) {
+			test_file("text", text, codec);
+			test_file("random", random, codec);
+		}
+		System.out.println(failures == 0 ? "*** all tests passed" : "*** FAILURES: " + failures);
+	}
+
+	private void test_file (String name, byte[] data, int codecID) throws IOException {
+		CompressionCodec codec = CompressionCodecs.forID(codecID);
+		File file = File.createTempFile("ragna-pdt-", ".fhl");
+		try {
+			// write the encrypted file as IO_Manager does
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			FHL_FileInfo info = new FHL_FileInfo();
+			info.fileName = name;
+			info.storeTime = System.currentTimeMillis();
+			info.fileTime = info.storeTime;
+			info.fileLength = data.length;
+			info.fileCrc = (int) crc.getValue();
+			info.compression = (short) codecID;
+			info.comment = "";
+			try (OutputStream fout = new FileOutputStream(file)) {
+				CipherStreamWriter cout = new CipherStreamWriter(fout, info, KEY);
+				OutputStream out = codec.getOutputStream(cout, data.length);
+				out.write(data);
+				out.close();
+				cout.close();
+			}
+
+			// read it through the parallel decryption stream
+			FHL_FileInfo info2 = new FHL_FileInfo();
+			InputStream in = ParallelDecryptInputStream.open(file, CipherFileHeader.get(file), KEY, info2);
+			String label = name + ", " + codec.getName() + ", file " + file.length();
+			if (in == null) {
+				report(label, "parallel decryption refused");
+				return;
+			}
+			if (info2.compression != CompressionCodecs.NONE) {
+				in = CompressionCodecs.forID(info2.compression).getInputStream(in);
+			}
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(data.length);
+			try {
+				byte[] buf = new byte[8192];
+				int len;
+				while ((len = in.read(buf)) > -1) {
+					bout.write(buf, 0, len);
+				}
+			} finally {
+				in.close();
+			}
+			report(label, Arrays.equals(bout.toByteArray(), data) ? null : "content differs");
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void report (String label, String error) {
+		if (error != null) {
+			failures++;
+		}
+		System.out.println((error == null ? "ok      " : "FAILED  ") + label
+				+ (error == null ? "" : ": " + error));
+	}
+
+	public static void main (String[] args) {
+		try {
+			new Test_ParallelDecrypt().test_files();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+}
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.Reader;
 import java.io.StreamCorruptedException;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
@@ -144,7 +145,21 @@ public class TreepadReader implements DocumentReader {
      * @throws IOException
      */
     public PadDocument read (InputStream in) throws IOException {
-        LineNumberReader reader = new LineNumberReader(new InputStreamReader(in, encoding));
+        return read(new InputStreamReader(in, encoding));
+    }
+
+    /** Reads a pad-document from a character reader which is formatted as
+     * a TREEPAD 2.7 document file. The reader has to decode with the 
+     * encoding of this Treepad reader. Does not close the reader.
+     * 
+     * @param in Reader
+     * @return <code>PadDocument</code>
+     * @throws UnknownFileFormatException if the format could not be recognised initially
+     * @throws StreamCorruptedException if the stream contained false formatting
+     * @throws IOException
+     */
+    public PadDocument read (Reader in) throws IOException {
+        LineNumberReader reader = new LineNumberReader(in);
         Stack<PadArticle> stack = new Stack<PadArticle>();
         
         // check first line for TREEPAD file format